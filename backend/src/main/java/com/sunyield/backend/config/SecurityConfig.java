@@ -1,6 +1,9 @@
 package com.sunyield.backend.config;
 
+import com.sunyield.backend.security.IdempotencyFilter;
 import com.sunyield.backend.security.JwtFilter;
+import com.sunyield.backend.security.RateLimitFilter;
+import com.sunyield.backend.security.RouteRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -19,32 +22,27 @@ public class SecurityConfig {
     @Autowired
     private JwtFilter jwtFilter;
 
+    @Autowired
+    private RateLimitFilter rateLimitFilter;
+
+    @Autowired
+    private IdempotencyFilter idempotencyFilter;
+
+    @Autowired
+    private RouteRegistry routeRegistry;
+
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         http
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
                 .csrf(csrf -> csrf.disable())
                 .authorizeHttpRequests(auth -> auth
-                        .requestMatchers(
-                                "/auth/**",
-                                "/api/auth/**",
-                                "/admin/login",
-                                "/admin/generate-hash",
-                                "/admin/test-auth",
-                                "/api/energy/record",
-                                "/api/projects/active",
-                                "/api/projects/debug",
-                                "/api/projects/test",
-                                "/api/projects/health",
-                                "/api/projects/images/**",
-                                "/swagger-ui.html",
-                                "/swagger-ui/**",
-                                "/v3/api-docs",
-                                "/v3/api-docs/**"
-                        ).permitAll()
+                        .requestMatchers(request -> routeRegistry.classify(request.getRequestURI()).permitsAnonymous()).permitAll()
                         .anyRequest().authenticated()
                 )
-                .addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class);
+                .addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class)
+                .addFilterAfter(rateLimitFilter, JwtFilter.class)
+                .addFilterAfter(idempotencyFilter, RateLimitFilter.class);
         return http.build();
     }
 
@@ -64,6 +62,8 @@ public class SecurityConfig {
         configuration.addAllowedHeader("*"); // Allow all headers
         configuration.addExposedHeader("Authorization"); // Expose Authorization header
         configuration.addExposedHeader("Content-Type"); // Expose Content-Type header
+        configuration.addExposedHeader(JwtFilter.REFRESHED_TOKEN_HEADER); // Re-issued token after role/KYC changes
+        configuration.addExposedHeader(IdempotencyFilter.REPLAYED_HEADER); // Response served from the idempotency store
         configuration.setAllowCredentials(true); // Allow credentials (cookies, authorization headers)
         configuration.setMaxAge(3600L); // Cache preflight response for 1 hour
         
@@ -2,21 +2,41 @@ package com.sunyield.backend.controller;
 
 import com.sunyield.backend.entity.*;
 import com.sunyield.backend.repository.*;
+import com.sunyield.backend.security.TokenVersionRegistry;
 import com.sunyield.backend.util.JwtUtil;
 import com.sunyield.backend.service.NotificationService;
 import com.sunyield.backend.service.EmailService;
+import com.sunyield.backend.service.AutoReinvestExecutor;
+import com.sunyield.backend.service.BulkCreditService;
 import com.sunyield.backend.service.CouponService;
+import com.sunyield.backend.service.EnergyAnomalyDetector;
+import com.sunyield.backend.service.GatewayFaultInjector;
+import com.sunyield.backend.service.GenerationSeriesService;
+import com.sunyield.backend.service.GreenCreditsService;
+import com.sunyield.backend.service.LeaderboardService;
+import com.sunyield.backend.service.LedgerReconciler;
+import com.sunyield.backend.service.PasswordHashingService;
+import com.sunyield.backend.service.NotificationChannelPool;
+import com.sunyield.backend.service.PayoutDispatcher;
+import com.sunyield.backend.service.ProjectBroadcastService;
+import com.sunyield.backend.service.ProjectCapacityService;
+import com.sunyield.backend.service.WalletAuditService;
+import com.sunyield.backend.service.WalletService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 
 @RestController
@@ -50,47 +70,62 @@ public class AdminController {
     @Autowired
     private SystemConfigRepository systemConfigRepository;
     
+    @Autowired
+    private WithdrawalRequestRepository withdrawalRequestRepository;
+    
     @Autowired
     private JwtUtil jwtUtil;
     
+    @Autowired
+    private TokenVersionRegistry tokenVersionRegistry;
+    
     @Autowired
     private CouponService couponService;
     
-    private BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    @Autowired
+    private GenerationSeriesService generationSeriesService;
     
-    // Helper: get user's available credits (same logic as UserWalletController)
-    private BigDecimal getUserAvailableCredits(User user) {
-        BigDecimal balance = BigDecimal.ZERO;
-        
-        // Add rewards (earnings) - use user-specific query
-        List<RewardHistory> rewards = rewardHistoryRepository.findByUser(user);
-        for (RewardHistory reward : rewards) {
-            if ("SUCCESS".equals(reward.getStatus())) {
-                if (reward.getRewardAmount() != null) {
-                    balance = balance.add(reward.getRewardAmount());
-                }
-            }
-        }
-        
-        // Add incoming transfers (admin credits, etc.)
-        List<CreditTransferLog> incomingTransfers = creditTransferLogRepository.findByToUserId(user.getId());
-        for (CreditTransferLog transfer : incomingTransfers) {
-            if ("ADMIN_CREDIT".equals(transfer.getType()) || "ADD_FUNDS".equals(transfer.getType())) {
-                balance = balance.add(transfer.getAmount());
-            }
-        }
-        
-        // Subtract outflows (investments, withdrawals)
-        List<CreditTransferLog> outflows = creditTransferLogRepository.findByFromUserId(user.getId());
-        for (CreditTransferLog outflow : outflows) {
-            if ("INVESTMENT".equals(outflow.getType()) || "SUBSCRIPTION".equals(outflow.getType()) || 
-                "WITHDRAWAL".equals(outflow.getType())) {
-                balance = balance.subtract(outflow.getAmount());
-            }
-        }
-        
-        return balance;
-    }
+    @Autowired
+    private EnergyAnomalyDetector energyAnomalyDetector;
+    
+    @Autowired
+    private GreenCreditsService greenCreditsService;
+    
+    @Autowired
+    private LeaderboardService leaderboardService;
+    
+    @Autowired
+    private AutoReinvestExecutor autoReinvestExecutor;
+    
+    @Autowired
+    private PasswordHashingService passwordHashingService;
+
+    @Autowired
+    private GatewayFaultInjector gatewayFaultInjector;
+    
+    @Autowired
+    private PayoutDispatcher payoutDispatcher;
+    
+    @Autowired
+    private LedgerReconciler ledgerReconciler;
+    
+    @Autowired
+    private WalletAuditService walletAuditService;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @Autowired
+    private ProjectCapacityService projectCapacityService;
+    
+    @Autowired
+    private WalletService walletService;
+    
+    @Autowired
+    private BulkCreditService bulkCreditService;
+    
+    @Autowired
+    private ProjectBroadcastService projectBroadcastService;
     
     // ==================== ADMIN AUTHENTICATION ====================
     
@@ -114,15 +149,14 @@ public class AdminController {
         // Debug: Log the password comparison
         System.out.println("[DEBUG] Admin login attempt for: " + email);
         System.out.println("[DEBUG] Stored password hash: " + user.getPassword());
-        System.out.println("[DEBUG] Password matches: " + passwordEncoder.matches(password, user.getPassword()));
         
         // Verify password
-        if (!passwordEncoder.matches(password, user.getPassword())) {
+        if (!passwordHashingService.matches(password, user.getPassword())) {
             return ResponseEntity.badRequest().body("Invalid credentials");
         }
         
         // Generate admin token
-        String token = jwtUtil.generateToken(email);
+        String token = jwtUtil.generateToken(user);
         Map<String, String> response = new HashMap<>();
         response.put("token", token);
         response.put("role", "ADMIN");
@@ -159,7 +193,7 @@ public class AdminController {
     // Temporary endpoint to generate password hash (remove in production)
     @GetMapping("/generate-hash")
     public ResponseEntity<?> generateHash(@RequestParam String password) {
-        String hash = passwordEncoder.encode(password);
+        String hash = passwordHashingService.encode(password);
         Map<String, String> response = new HashMap<>();
         response.put("password", password);
         response.put("hash", hash);
@@ -201,6 +235,7 @@ public class AdminController {
             Role role = Role.valueOf(newRole.toUpperCase());
             user.setRole(role);
             userRepository.save(user);
+            tokenVersionRegistry.bump(user.getId());
             return ResponseEntity.ok("User role updated successfully");
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body("Invalid role. Use USER or ADMIN");
@@ -215,6 +250,7 @@ public class AdminController {
         }
         
         userRepository.deleteById(id);
+        tokenVersionRegistry.revoke(id);
         return ResponseEntity.ok("User deleted successfully");
     }
     
@@ -254,6 +290,9 @@ public class AdminController {
         existingProject.setStatus(project.getStatus());
         
         Project savedProject = projectRepository.save(existingProject);
+        // Capacity or efficiency may have changed, so the learned baseline no longer applies
+        energyAnomalyDetector.forgetProject(id);
+        projectCapacityService.invalidate(id);
         return ResponseEntity.ok(savedProject);
     }
     
@@ -357,16 +396,8 @@ public class AdminController {
         String notes = (String) req.get("notes");
         User user = userOpt.get();
         
-        // Create credit transfer log
-        CreditTransferLog transfer = new CreditTransferLog();
-        transfer.setFromUser(null); // System/admin transfer
-        transfer.setToUser(user);
-        transfer.setAmount(amount);
-        transfer.setType("ADMIN_CREDIT");
-        transfer.setDate(LocalDateTime.now());
-        transfer.setNotes(notes);
-        
-        creditTransferLogRepository.save(transfer);
+        // Create credit transfer log and credit the wallet
+        walletService.credit(user, amount, "ADMIN_CREDIT", notes, null);
         
         // Send email notification to user
         String emailSubject = "Funds Added to Your Wallet";
@@ -392,6 +423,111 @@ public class AdminController {
         return ResponseEntity.ok("Credits added successfully and email notification sent to user");
     }
     
+    // Bulk credit campaign, processed in the background. Body is either
+    // {"selector": "ALL_KYC_APPROVED", "amount": 50, "notes": "..."} or
+    // {"entries": [{"userId": 7, "amount": 100}, {"email": "a@example.com"}], "amount": 50, "notes": "..."}
+    // where "amount" is the default for entries without one.
+    @PostMapping("/credits/bulk")
+    public ResponseEntity<?> bulkCredit(@RequestBody Map<String, Object> req) {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        try {
+            BigDecimal amount = req.get("amount") != null ? new BigDecimal(req.get("amount").toString()) : null;
+            String notes = (String) req.get("notes");
+            CreditCampaign campaign;
+            if (req.get("selector") != null) {
+                campaign = bulkCreditService.submitSelector(req.get("selector").toString(), amount, notes);
+            } else if (req.get("entries") instanceof List && !((List<?>) req.get("entries")).isEmpty()) {
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> entries = (List<Map<String, Object>>) req.get("entries");
+                campaign = bulkCreditService.submitList(entries, amount, notes);
+            } else {
+                return ResponseEntity.badRequest().body("Either selector or a non-empty entries list is required");
+            }
+            System.out.println("[DEBUG] Bulk credit campaign " + campaign.getId() + " queued (" + campaign.getSource() + ")");
+            return ResponseEntity.accepted().body(campaign);
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().body("Invalid amount: " + req.get("amount"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    // CSV upload: one "user,amount" line per recipient, user being an id or an email
+    @PostMapping("/credits/bulk/csv")
+    public ResponseEntity<?> bulkCreditCsv(@RequestParam("file") org.springframework.web.multipart.MultipartFile file,
+                                           @RequestParam(required = false) BigDecimal amount,
+                                           @RequestParam(required = false) String notes) {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        if (file.isEmpty()) {
+            return ResponseEntity.badRequest().body("CSV file is empty");
+        }
+        try {
+            CreditCampaign campaign = bulkCreditService.submitCsv(file.getInputStream(), amount, notes);
+            System.out.println("[DEBUG] Bulk credit campaign " + campaign.getId() + " queued from " + file.getOriginalFilename());
+            return ResponseEntity.accepted().body(campaign);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (java.io.IOException e) {
+            return ResponseEntity.status(500).body("Could not read CSV: " + e.getMessage());
+        }
+    }
+    
+    @GetMapping("/credits/bulk")
+    public ResponseEntity<?> getBulkCreditCampaigns() {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        return ResponseEntity.ok(bulkCreditService.recent());
+    }
+    
+    // Progress: totalEntries, invalidEntries, creditedEntries, creditedAmount, notificationsSent, notificationsFailed
+    @GetMapping("/credits/bulk/{id}")
+    public ResponseEntity<?> getBulkCreditCampaign(@PathVariable Long id) {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        CreditCampaign campaign = bulkCreditService.get(id);
+        if (campaign == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(campaign);
+    }
+    
+    @GetMapping("/credits/bulk/{id}/invalid")
+    public ResponseEntity<?> getBulkCreditInvalidEntries(@PathVariable Long id, @RequestParam(defaultValue = "100") int limit) {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        return ResponseEntity.ok(bulkCreditService.invalidEntries(id, Math.min(limit, 1000)));
+    }
+    
+    // Continues a failed or interrupted campaign; entries already credited are skipped
+    @PostMapping("/credits/bulk/{id}/resume")
+    public ResponseEntity<?> resumeBulkCreditCampaign(@PathVariable Long id) {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        try {
+            return ResponseEntity.accepted().body(bulkCreditService.resume(id));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(e.getMessage());
+        }
+    }
+    
+    // Nothing under /admin checks the role on its own; endpoints that move money, rewrite ledgers or
+    // message many users check it explicitly. The role comes from the JWT principal.
+    private static boolean isAdmin() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.getPrincipal() instanceof User
+                && ((User) authentication.getPrincipal()).getRole() == Role.ADMIN;
+    }
+    
     // ==================== ENERGY DATA MANAGEMENT ====================
     
     @PostMapping("/projects/{id}/add-energy")
@@ -431,28 +567,26 @@ public class AdminController {
             System.out.println("[WARNING] Date parsing failed for: " + dateStr + ", using current date");
         }
         
-        // Energy entries are now allowed without any duplicate checking
-        // Admins can add energy data freely for any date and amount
-        
-        // Add debugging to see what date is being processed
-        System.out.println("[DEBUG] Processing energy data for date: " + parsedDate);
-        System.out.println("[DEBUG] Formatted date: " + formattedDate);
-        System.out.println("[DEBUG] Month: " + parsedDate.getMonthValue() + ", Year: " + parsedDate.getYear());
-        
-        // Check if energy data for this project and date has already been processed
-        // This prevents accidental duplicate submissions
-        List<RewardHistory> existingRewards = rewardHistoryRepository.findByProjectAndMonthAndYear(project, parsedDate.getMonthValue(), parsedDate.getYear());
-        if (!existingRewards.isEmpty()) {
-            // Check if any existing reward has the same energy amount (likely a duplicate)
-            for (RewardHistory existing : existingRewards) {
-                if (Math.abs(existing.getKWh() - energyProduced) < 0.01) {
-                    return ResponseEntity.badRequest().body("Energy data for " + project.getName() + " with " + energyProduced + " kWh for " + formattedDate + " has already been processed. Please check if this is a duplicate submission.");
-                }
-            }
+        // Score the reading against the project's rolling statistics and expected output.
+        // Outliers and repeated submissions are held back unless the admin resubmits with "force": true.
+        boolean force = req.get("force") != null && Boolean.parseBoolean(req.get("force").toString());
+        EnergyAnomalyDetector.Score score = energyAnomalyDetector.evaluate(
+            project, ProjectGeneration.Granularity.DAY, parsedDate.atStartOfDay(), energyProduced);
+        boolean overridden = force && score.getVerdict() != EnergyAnomalyDetector.Verdict.INVALID;
+        if (score.getVerdict().isHeld() && !overridden) {
+            Map<String, Object> heldResponse = score.toMap();
+            heldResponse.put("message", "Energy data for " + project.getName() + " on " + formattedDate + " was held for review: " + score.getReason() + ". Resubmit with \"force\": true to distribute anyway.");
+            return ResponseEntity.badRequest().body(heldResponse);
+        }
+        // The detector only remembers the latest reading; whether this date was already distributed
+        // is answered by the reward rows, so re-entering any earlier date cannot pay out twice
+        if (!overridden && rewardHistoryRepository.existsByProjectAndDate(project, parsedDate)) {
+            return ResponseEntity.badRequest().body("Energy data for " + project.getName() + " on " + formattedDate + " has already been processed. Resubmit with \"force\": true to distribute it again.");
         }
         
         int usersRewarded = 0;
         BigDecimal totalRewardsDistributed = BigDecimal.ZERO;
+        List<RewardHistory> savedRewards = new ArrayList<>();
         
         System.out.println("[DEBUG] Processing energy rewards for project: " + project.getName() + " - " + energyProduced + " kWh on " + formattedDate);
         
@@ -495,6 +629,7 @@ public class AdminController {
                 reward.setUser(sub.getUser());
                 reward.setProject(project);
                 reward.setKWh(userEnergyShare.doubleValue());
+                reward.setProjectKwh(energyProduced);
                 reward.setRewardAmount(rewardAmount);
                 reward.setStatus("SUCCESS");
                 reward.setReason("Energy production reward for " + project.getName());
@@ -509,7 +644,8 @@ public class AdminController {
                 System.out.println("[DEBUG] Setting month to: " + parsedDate.getMonthValue());
                 System.out.println("[DEBUG] Setting year to: " + parsedDate.getYear());
                 
-                rewardHistoryRepository.save(reward);
+                walletService.recordRewards(List.of(reward));
+                savedRewards.add(reward);
                 
                 // Debug: Print what was saved
                 System.out.println("[DEBUG] Saved reward with ID: " + reward.getId());
@@ -541,6 +677,17 @@ public class AdminController {
                 System.out.println("[DEBUG] Energy reward sent to user " + sub.getUser().getEmail() + ": ₹" + rewardAmount + " for " + userEnergyShare.doubleValue() + " kWh (share of " + energyProduced + " kWh total, ₹5/kWh rate) on " + formattedDate);
         }
         
+        // Running green credit / CO2 totals for the rewarded users and the project
+        greenCreditsService.recordRewards(savedRewards);
+        leaderboardService.recordRewards(savedRewards);
+        // New rewards may push wallets over their auto-reinvest thresholds
+        autoReinvestExecutor.requestRun();
+        
+        // Project-level generation series for charts (sum of all subscriber shares)
+        generationSeriesService.record(project.getId(), parsedDate.atStartOfDay(), energyProduced, ProjectGeneration.Granularity.DAY);
+        // Only now that the rewards are written does the reading count towards the rolling statistics
+        energyAnomalyDetector.accept(project, ProjectGeneration.Granularity.DAY, parsedDate.atStartOfDay(), energyProduced);
+        
         String responseMessage = String.format(
             "Energy data added successfully!\n" +
             "- Project: %s\n" +
@@ -548,17 +695,258 @@ public class AdminController {
             "- Users Rewarded: %d\n" +
             "- Total Rewards Distributed: ₹%.2f (₹5/kWh rate)\n" +
             "- Email notifications sent to all users\n" +
-            "- Date: %s",
+            "- Date: %s%s",
             project.getName(),
             energyProduced,
             usersRewarded,
             totalRewardsDistributed.doubleValue(),
-            formattedDate
+            formattedDate,
+            score.getVerdict() == EnergyAnomalyDetector.Verdict.UNDERPERFORMING ? "\n- Note: " + score.getReason() : ""
         );
         
         return ResponseEntity.ok(responseMessage);
     }
     
+    // Rebuild a project's daily/weekly/monthly generation series from its reward history
+    @PostMapping("/projects/{id}/generation/rebuild")
+    public ResponseEntity<?> rebuildGenerationSeries(@PathVariable Long id) {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        if (!projectRepository.existsById(id)) {
+            return ResponseEntity.badRequest().body("Project not found");
+        }
+        int days = generationSeriesService.rebuildFromRewards(id);
+        return ResponseEntity.ok(Map.of("projectId", id, "daysRebuilt", days));
+    }
+    
+    // Starts an auto-reinvest pass in the background (it also runs after every reward run and nightly)
+    @PostMapping("/auto-reinvest/run")
+    public ResponseEntity<?> runAutoReinvest() {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        boolean alreadyRunning = autoReinvestExecutor.isRunning();
+        autoReinvestExecutor.requestRun();
+        return ResponseEntity.accepted().body(alreadyRunning
+            ? "Auto-reinvest pass already running; another pass has been queued"
+            : "Auto-reinvest pass started");
+    }
+    
+    // Recomputes all-time and current-month leaderboards from the ledger and reward history
+    @PostMapping("/leaderboards/rebuild")
+    public ResponseEntity<?> rebuildLeaderboards() {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        return ResponseEntity.ok(leaderboardService.rebuild());
+    }
+    
+    // Recomputes all green credit totals from reward history (e.g. after changing the emission factor)
+    @PostMapping("/green-credits/rebuild")
+    public ResponseEntity<?> rebuildGreenCredits() {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        return ResponseEntity.ok(greenCreditsService.rebuildFromRewards());
+    }
+    
+    // ==================== PAYMENT GATEWAY MOCK FAULT PROFILES ====================
+    
+    @GetMapping("/gateway-faults")
+    public ResponseEntity<?> getGatewayFaultProfiles() {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        return ResponseEntity.ok(gatewayFaultInjector.describe());
+    }
+    
+    // Body: any of latency, errorRate, timeoutRate, timeoutMs, successRate, duplicateRate, settleDelayMs
+    @PutMapping("/gateway-faults/{endpoint}")
+    public ResponseEntity<?> updateGatewayFaultProfile(@PathVariable String endpoint, @RequestBody Map<String, Object> changes) {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        try {
+            GatewayFaultInjector.Endpoint target = GatewayFaultInjector.Endpoint.fromKey(endpoint);
+            return ResponseEntity.ok(gatewayFaultInjector.update(target, changes).toMap());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    // Restores the profiles from application properties
+    @PostMapping("/gateway-faults/reset")
+    public ResponseEntity<?> resetGatewayFaultProfiles() {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        gatewayFaultInjector.reset();
+        return ResponseEntity.ok(gatewayFaultInjector.describe());
+    }
+    
+    // ==================== PAYOUTS ====================
+    
+    // Runs a dispatch pass now instead of waiting for the schedule
+    @PostMapping("/payouts/dispatch")
+    public ResponseEntity<?> dispatchPayouts() {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        return ResponseEntity.ok(payoutDispatcher.dispatch());
+    }
+    
+    // Payouts the gateway lost track of; their funds stay reserved until resolved below
+    @GetMapping("/payouts/review")
+    public ResponseEntity<?> getPayoutsInReview() {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        return ResponseEntity.ok(withdrawalRequestRepository.findByStatus("REVIEW"));
+    }
+    
+    // paid=true once the gateway confirms the money went out, paid=false to fail and refund it
+    @PostMapping("/payouts/{id}/resolve")
+    public ResponseEntity<?> resolvePayout(@PathVariable Long id, @RequestParam boolean paid) {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        if (!payoutDispatcher.resolveReview(id, paid)) {
+            return ResponseEntity.status(409).body("Withdrawal not found or not in review");
+        }
+        return ResponseEntity.ok(paid ? "Withdrawal marked as paid" : "Withdrawal failed and refunded");
+    }
+    
+    // ==================== LEDGER RECONCILIATION ====================
+    
+    // Last reconciliation report (null until the first pass finishes)
+    @GetMapping("/reconciliation")
+    public ResponseEntity<?> getReconciliationReport() {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("running", ledgerReconciler.isRunning());
+        response.put("report", ledgerReconciler.getLastReport());
+        return ResponseEntity.ok(response);
+    }
+    
+    // Starts a pass in the background; repair=true also fixes what can be fixed automatically
+    @PostMapping("/reconciliation/run")
+    public ResponseEntity<?> runReconciliation(@RequestParam(defaultValue = "false") boolean repair) {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        if (!ledgerReconciler.start(repair)) {
+            return ResponseEntity.status(409).body("A reconciliation pass is already running");
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("started", true);
+        response.put("repair", repair);
+        return ResponseEntity.accepted().body(response);
+    }
+    
+    // ==================== WALLET BALANCE AUDIT ====================
+    
+    @GetMapping("/wallet-audit")
+    public ResponseEntity<?> getWalletAuditReport() {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("running", walletAuditService.isRunning());
+        response.put("report", walletAuditService.getLastReport());
+        return ResponseEntity.ok(response);
+    }
+    
+    // Starts an audit in the background; repair=true rewrites drifted wallet_account rows from the ledger
+    @PostMapping("/wallet-audit/run")
+    public ResponseEntity<?> runWalletAudit(@RequestParam(defaultValue = "false") boolean repair) {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        if (!walletAuditService.start(repair)) {
+            return ResponseEntity.status(409).body("A wallet audit is already running");
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("started", true);
+        response.put("repair", repair);
+        return ResponseEntity.accepted().body(response);
+    }
+    
+    // ==================== PROJECT BROADCASTS ====================
+    
+    // Body: {"subject": "Maintenance at {{project}}", "message": "Dear {{name}}, ...", "channels": ["EMAIL", "SMS"]}
+    // Placeholders: {{name}}, {{email}}, {{project}}, {{location}}. Sent in the background to every subscriber.
+    @PostMapping("/projects/{id}/broadcasts")
+    public ResponseEntity<?> broadcastToProject(@PathVariable Long id, @RequestBody Map<String, Object> req) {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        try {
+            Set<NotificationChannelPool.Channel> channels = EnumSet.noneOf(NotificationChannelPool.Channel.class);
+            if (req.get("channels") instanceof List) {
+                for (Object channel : (List<?>) req.get("channels")) {
+                    channels.add(NotificationChannelPool.Channel.valueOf(channel.toString().toUpperCase()));
+                }
+            } else {
+                channels.add(NotificationChannelPool.Channel.EMAIL);
+            }
+            ProjectBroadcast broadcast = projectBroadcastService.submit(id, (String) req.get("subject"), (String) req.get("message"), channels);
+            System.out.println("[DEBUG] Broadcast " + broadcast.getId() + " queued for project " + id + " via " + channels);
+            return ResponseEntity.accepted().body(broadcast);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    @GetMapping("/broadcasts")
+    public ResponseEntity<?> getBroadcasts(@RequestParam(required = false) Long projectId) {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        return ResponseEntity.ok(projectBroadcastService.recent(projectId));
+    }
+    
+    // Progress: totalRecipients, processedRecipients, sent / failed per channel, skipped
+    @GetMapping("/broadcasts/{id}")
+    public ResponseEntity<?> getBroadcast(@PathVariable Long id) {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        ProjectBroadcast broadcast = projectBroadcastService.get(id);
+        if (broadcast == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(broadcast);
+    }
+    
+    @PostMapping("/broadcasts/{id}/cancel")
+    public ResponseEntity<?> cancelBroadcast(@PathVariable Long id) {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        if (!projectBroadcastService.cancel(id)) {
+            return ResponseEntity.status(409).body("Broadcast not found or already finished");
+        }
+        return ResponseEntity.ok("Broadcast cancellation requested");
+    }
+    
+    // Continues after the last recipient handed to the channels
+    @PostMapping("/broadcasts/{id}/resume")
+    public ResponseEntity<?> resumeBroadcast(@PathVariable Long id) {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        try {
+            return ResponseEntity.accepted().body(projectBroadcastService.resume(id));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(e.getMessage());
+        }
+    }
+    
     // ==================== SYSTEM CONFIGURATION MANAGEMENT ====================
     
     @GetMapping("/config")
@@ -681,18 +1069,26 @@ public class AdminController {
     
     @PostMapping("/subscriptions/{orderId}/reject")
     public ResponseEntity<?> rejectSubscription(@PathVariable String orderId) {
-        Optional<Subscription> subscriptionOpt = subscriptionRepository.findAll().stream()
-                .filter(s -> orderId.equals(s.getPaymentOrderId()))
-                .findFirst();
+        // Locked like the payment webhook, so the capacity is given back at most once
+        Boolean found = transactionTemplate.execute(tx -> {
+            Optional<Subscription> subscriptionOpt = subscriptionRepository.lockByPaymentOrderId(orderId);
+            if (subscriptionOpt.isEmpty()) {
+                return false;
+            }
+            Subscription subscription = subscriptionOpt.get();
+            // FAILED and EXPIRED subscriptions have already given their capacity back
+            boolean held = "PENDING".equals(subscription.getPaymentStatus()) || "SUCCESS".equals(subscription.getPaymentStatus());
+            subscription.setPaymentStatus("FAILED");
+            subscriptionRepository.save(subscription);
+            if (held && subscription.getProject() != null) {
+                projectCapacityService.release(subscription.getProject().getId(), subscription.getReservedCapacity());
+            }
+            return true;
+        });
         
-        if (subscriptionOpt.isEmpty()) {
+        if (!Boolean.TRUE.equals(found)) {
             return ResponseEntity.badRequest().body("Subscription not found");
         }
-        
-        Subscription subscription = subscriptionOpt.get();
-        subscription.setPaymentStatus("FAILED");
-        subscriptionRepository.save(subscription);
-        
         return ResponseEntity.ok("Subscription rejected successfully");
     }
     
@@ -753,4 +1149,10 @@ public class AdminController {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
-} 
\ No newline at end of file
+
+    // Password hashing pool is saturated (login/signup storm): shed load instead of queueing on Tomcat threads
+    @ExceptionHandler(PasswordHashingService.SaturatedException.class)
+    public ResponseEntity<?> handleHashingSaturated(PasswordHashingService.SaturatedException e) {
+        return ResponseEntity.status(429).header("Retry-After", "1").body(e.getMessage());
+    }
+}
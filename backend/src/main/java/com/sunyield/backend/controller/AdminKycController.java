@@ -5,6 +5,7 @@ import com.sunyield.backend.entity.KYCStatus;
 import com.sunyield.backend.entity.User;
 import com.sunyield.backend.repository.KYCRepository;
 import com.sunyield.backend.repository.UserRepository;
+import com.sunyield.backend.security.TokenVersionRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -18,6 +19,8 @@ public class AdminKycController {
     private KYCRepository kycRepository;
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private TokenVersionRegistry tokenVersionRegistry;
 
     @PostMapping("/{id}/approve")
     public ResponseEntity<?> approveKyc(@PathVariable Long id) {
@@ -33,6 +36,7 @@ public class AdminKycController {
         User user = kyc.getUser();
         user.setKycStatus(KYCStatus.APPROVED);
         userRepository.save(user);
+        tokenVersionRegistry.bump(user.getId());
 
         return ResponseEntity.ok("KYC approved.");
     }
@@ -51,6 +55,7 @@ public class AdminKycController {
         User user = kyc.getUser();
         user.setKycStatus(KYCStatus.REJECTED);
         userRepository.save(user);
+        tokenVersionRegistry.bump(user.getId());
 
         return ResponseEntity.ok("KYC rejected.");
     }
@@ -3,14 +3,15 @@ package com.sunyield.backend.controller;
 import com.sunyield.backend.entity.User;
 import com.sunyield.backend.repository.UserRepository;
 import com.sunyield.backend.service.EmailService;
+import com.sunyield.backend.service.OtpStore;
+import com.sunyield.backend.service.PasswordHashingService;
+import com.sunyield.backend.security.TokenVersionRegistry;
 import com.sunyield.backend.util.JwtUtil;
 import com.sunyield.backend.util.OtpUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -30,12 +31,17 @@ public class AuthController {
     @Autowired
     private JwtUtil jwtUtil;
     @Autowired
+    private TokenVersionRegistry tokenVersionRegistry;
+    @Autowired
     private SubscriptionRepository subscriptionRepository;
     @Autowired
     private RewardHistoryRepository rewardHistoryRepository;
     @Autowired
     private CreditTransferLogRepository creditTransferLogRepository;
-    private BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    @Autowired
+    private PasswordHashingService passwordHashingService;
+    @Autowired
+    private OtpStore otpStore;
 
     // Registration endpoint
     @PostMapping("/register")
@@ -52,14 +58,13 @@ public class AuthController {
         }
         User user = new User();
         user.setEmail(email);
-        user.setPassword(passwordEncoder.encode(password));
+        user.setPassword(passwordHashingService.encode(password));
         user.setFullName(fullName);
         user.setContact(contact);
         user.setVerified(false);
-        String otp = OtpUtil.generateOtp(6);
-        user.setOtp(otp);
-        user.setOtpGeneratedTime(Instant.now().toEpochMilli());
         userRepository.save(user);
+        String otp = OtpUtil.generateOtp(6);
+        otpStore.put(OtpStore.Purpose.REGISTRATION, email, otp);
         
         System.out.println("[DEBUG] User saved - ID: " + user.getId() + ", Email: " + user.getEmail() + ", FullName: " + user.getFullName() + ", Contact: " + user.getContact());
         
@@ -77,18 +82,15 @@ public class AuthController {
             return ResponseEntity.badRequest().body("User not found");
         }
         User user = userOpt.get();
-        // OTP valid for 10 minutes
-        long now = Instant.now().toEpochMilli();
-        if (user.getOtp() == null || !user.getOtp().equals(otp) || now - user.getOtpGeneratedTime() > 10 * 60 * 1000) {
-            return ResponseEntity.badRequest().body("Invalid or expired OTP");
+        OtpStore.Result result = otpStore.verify(OtpStore.Purpose.REGISTRATION, email, otp, true);
+        if (result != OtpStore.Result.VALID) {
+            return otpFailure(result);
         }
         user.setVerified(true);
-        user.setOtp(null);
-        user.setOtpGeneratedTime(null);
         userRepository.save(user);
         
         // Generate token and return user data
-        String token = jwtUtil.generateToken(email);
+        String token = jwtUtil.generateToken(user);
         
         Map<String, Object> resp = new HashMap<>();
         resp.put("token", token);
@@ -122,9 +124,7 @@ public class AuthController {
         
         // Generate new OTP
         String otp = OtpUtil.generateOtp(6);
-        user.setOtp(otp);
-        user.setOtpGeneratedTime(Instant.now().toEpochMilli());
-        userRepository.save(user);
+        otpStore.put(OtpStore.Purpose.REGISTRATION, email, otp);
         
         // Send new OTP via email
         emailService.sendOtpEmail(email, otp);
@@ -145,10 +145,10 @@ public class AuthController {
         if (!user.isVerified()) {
             return ResponseEntity.badRequest().body("User not verified. Please verify OTP.");
         }
-        if (!passwordEncoder.matches(password, user.getPassword())) {
+        if (!passwordHashingService.matches(password, user.getPassword())) {
             return ResponseEntity.badRequest().body("Invalid credentials");
         }
-        String token = jwtUtil.generateToken(email);
+        String token = jwtUtil.generateToken(user);
         
         Map<String, Object> resp = new HashMap<>();
         resp.put("token", token);
@@ -212,9 +212,7 @@ public class AuthController {
         
         // Generate reset OTP
         String resetOtp = OtpUtil.generateOtp(6);
-        user.setOtp(resetOtp);
-        user.setOtpGeneratedTime(Instant.now().toEpochMilli());
-        userRepository.save(user);
+        otpStore.put(OtpStore.Purpose.PASSWORD_RESET, email, resetOtp);
         
         // Send reset OTP via email
         emailService.sendPasswordResetEmail(email, resetOtp);
@@ -235,10 +233,10 @@ public class AuthController {
         
         User user = userOpt.get();
         
-        // Verify OTP (valid for 10 minutes)
-        long now = Instant.now().toEpochMilli();
-        if (user.getOtp() == null || !user.getOtp().equals(otp) || now - user.getOtpGeneratedTime() > 10 * 60 * 1000) {
-            return ResponseEntity.badRequest().body("Invalid or expired OTP");
+        // Verify OTP (kept for the reset step that follows)
+        OtpStore.Result result = otpStore.verify(OtpStore.Purpose.PASSWORD_RESET, email, otp, false);
+        if (result != OtpStore.Result.VALID) {
+            return otpFailure(result);
         }
         
         // OTP is valid - return success
@@ -270,17 +268,16 @@ public class AuthController {
         
         User user = userOpt.get();
         
-        // Verify OTP again (valid for 10 minutes)
-        long now = Instant.now().toEpochMilli();
-        if (user.getOtp() == null || !user.getOtp().equals(otp) || now - user.getOtpGeneratedTime() > 10 * 60 * 1000) {
-            return ResponseEntity.badRequest().body("Invalid or expired OTP");
+        // Verify OTP again and consume it
+        OtpStore.Result result = otpStore.verify(OtpStore.Purpose.PASSWORD_RESET, email, otp, true);
+        if (result != OtpStore.Result.VALID) {
+            return otpFailure(result);
         }
         
         // Update password
-        user.setPassword(passwordEncoder.encode(newPassword));
-        user.setOtp(null);
-        user.setOtpGeneratedTime(null);
+        user.setPassword(passwordHashingService.encode(newPassword));
         userRepository.save(user);
+        tokenVersionRegistry.bump(user.getId());
         
         return ResponseEntity.ok("Password reset successful. You can now login with your new password.");
     }
@@ -348,4 +345,22 @@ public class AuthController {
             return ResponseEntity.status(500).body("Error in debug endpoint: " + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+
+    private ResponseEntity<?> otpFailure(OtpStore.Result result) {
+        switch (result) {
+            case TOO_MANY_ATTEMPTS:
+                return ResponseEntity.status(429).body("Too many incorrect attempts. Please request a new OTP.");
+            case EXPIRED:
+            case NOT_FOUND:
+                return ResponseEntity.badRequest().body("OTP expired. Please request a new OTP.");
+            default:
+                return ResponseEntity.badRequest().body("Invalid or expired OTP");
+        }
+    }
+
+    // Password hashing pool is saturated (login/signup storm): shed load instead of queueing on Tomcat threads
+    @ExceptionHandler(PasswordHashingService.SaturatedException.class)
+    public ResponseEntity<?> handleHashingSaturated(PasswordHashingService.SaturatedException e) {
+        return ResponseEntity.status(429).header("Retry-After", "1").body(e.getMessage());
+    }
+}
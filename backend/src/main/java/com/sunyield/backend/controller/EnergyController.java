@@ -1,6 +1,7 @@
 package com.sunyield.backend.controller;
 
 import com.sunyield.backend.entity.Project;
+import com.sunyield.backend.entity.Role;
 import com.sunyield.backend.entity.Subscription;
 import com.sunyield.backend.entity.User;
 import com.sunyield.backend.entity.RewardHistory;
@@ -8,6 +9,14 @@ import com.sunyield.backend.repository.ProjectRepository;
 import com.sunyield.backend.repository.SubscriptionRepository;
 import com.sunyield.backend.repository.UserRepository;
 import com.sunyield.backend.repository.RewardHistoryRepository;
+import com.sunyield.backend.entity.ProjectGeneration;
+import com.sunyield.backend.service.AutoReinvestExecutor;
+import com.sunyield.backend.service.EnergyAnomalyDetector;
+import com.sunyield.backend.service.GenerationSeriesService;
+import com.sunyield.backend.service.GreenCreditsService;
+import com.sunyield.backend.service.LeaderboardService;
+import com.sunyield.backend.service.WalletService;
+import com.sunyield.backend.util.SeriesDownsampler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -15,7 +24,11 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -29,19 +42,47 @@ public class EnergyController {
     private UserRepository userRepository;
     @Autowired
     private RewardHistoryRepository rewardHistoryRepository;
+    @Autowired
+    private GenerationSeriesService generationSeriesService;
+    @Autowired
+    private EnergyAnomalyDetector energyAnomalyDetector;
+    @Autowired
+    private GreenCreditsService greenCreditsService;
+    @Autowired
+    private LeaderboardService leaderboardService;
+    @Autowired
+    private AutoReinvestExecutor autoReinvestExecutor;
+    @Autowired
+    private WalletService walletService;
 
     // Admin: Record monthly kWh for a project and calculate rewards
     @PostMapping("/record")
-    public ResponseEntity<?> recordMonthlyKwh(@RequestParam Long projectId, @RequestParam int month, @RequestParam int year, @RequestParam double kWh) {
+    public ResponseEntity<?> recordMonthlyKwh(@RequestParam Long projectId, @RequestParam int month, @RequestParam int year, @RequestParam double kWh,
+                                              @RequestParam(defaultValue = "false") boolean force) {
+        // Overriding the detector or re-distributing a month is an admin decision
+        if (force && !isAdmin()) {
+            return ResponseEntity.status(403).body("force=true requires an admin user");
+        }
         Optional<Project> projectOpt = projectRepository.findById(projectId);
         if (projectOpt.isEmpty()) return ResponseEntity.badRequest().body("Project not found");
         Project project = projectOpt.get();
 
+        if (!force && rewardHistoryRepository.existsByProjectAndDate(project, LocalDate.of(year, month, 1))) {
+            return ResponseEntity.badRequest().body("Energy data for " + project.getName() + " for " + month + "/" + year + " has already been processed. An admin can resubmit with force=true to distribute it again.");
+        }
+
+        // Score the reading before anything is distributed; held readings need an explicit force=true
+        EnergyAnomalyDetector.Score score = energyAnomalyDetector.evaluate(
+                project, ProjectGeneration.Granularity.MONTH, LocalDate.of(year, month, 1).atStartOfDay(), kWh);
+        if (score.getVerdict().isHeld() && !(force && score.getVerdict() != EnergyAnomalyDetector.Verdict.INVALID)) {
+            return ResponseEntity.badRequest().body(score.toMap());
+        }
+
         // Find all users subscribed to this project
         List<Subscription> subscriptions = subscriptionRepository.findAll();
         double rewardRate = 1.5; // INR per kWh
-        double underperformanceThreshold = 10.0; // Example threshold
         double rewardCap = 1000.0; // Example cap in INR
+        List<RewardHistory> savedRewards = new java.util.ArrayList<>();
 
         for (Subscription sub : subscriptions) {
             if (!sub.getProject().getId().equals(projectId) || !"SUCCESS".equals(sub.getPaymentStatus())) continue;
@@ -53,12 +94,13 @@ public class EnergyController {
             rh.setYear(year);
             rh.setDate(java.time.LocalDate.of(year, month, 1)); // Set date to first day of the month
             rh.setKWh(kWh);
+            rh.setProjectKwh(kWh);
             BigDecimal reward = BigDecimal.valueOf(kWh * rewardRate);
             rh.setRewardAmount(reward);
             rh.setStatus("SUCCESS");
             rh.setReason(null);
-            // Underperformance logic
-            if (kWh < underperformanceThreshold) {
+            // Underperformance logic (below expected output for the project's capacity and efficiency)
+            if (score.getVerdict() == EnergyAnomalyDetector.Verdict.UNDERPERFORMING) {
                 rh.setStatus("DECLINED");
                 rh.setReason("Project underperformed");
             }
@@ -68,11 +110,81 @@ public class EnergyController {
                 rh.setStatus("CAPPED");
                 rh.setReason("Reward capped at max limit");
             }
-            rewardHistoryRepository.save(rh);
+            savedRewards.add(rh);
         }
+        // Saves the rows and credits SUCCESS rewards to the wallets in one transaction
+        walletService.recordRewards(savedRewards);
+        greenCreditsService.recordRewards(savedRewards);
+        leaderboardService.recordRewards(savedRewards);
+        // New rewards may push wallets over their auto-reinvest thresholds
+        autoReinvestExecutor.requestRun();
+        generationSeriesService.record(projectId, LocalDate.of(year, month, 1).atStartOfDay(), kWh, ProjectGeneration.Granularity.MONTH);
+        energyAnomalyDetector.accept(project, ProjectGeneration.Granularity.MONTH, LocalDate.of(year, month, 1).atStartOfDay(), kWh);
         return ResponseEntity.ok("Rewards calculated and logged for all subscribed users.");
     }
 
+    // Telemetry: ingest hourly readings for a project (admin only). The whole batch is parsed before
+    // anything is recorded, so a malformed reading rejects the request without side effects. Every
+    // reading is then scored; accepted readings go into the generation series, held ones are reported
+    // back and skipped.
+    // Body: {"timestamp": "2025-08-12T13:00:00", "kWh": 42.5} or {"readings": [ ... ]}
+    @PostMapping("/projects/{projectId}/readings")
+    public ResponseEntity<?> ingestReadings(@PathVariable Long projectId, @RequestBody Map<String, Object> body) {
+        if (!isAdmin()) {
+            return ResponseEntity.status(403).body("Not an admin user");
+        }
+        Optional<Project> projectOpt = projectRepository.findById(projectId);
+        if (projectOpt.isEmpty()) return ResponseEntity.badRequest().body("Project not found");
+        Project project = projectOpt.get();
+
+        List<?> raw = body.get("readings") instanceof List ? (List<?>) body.get("readings") : List.of(body);
+        List<LocalDateTime> timestamps = new java.util.ArrayList<>(raw.size());
+        List<Double> values = new java.util.ArrayList<>(raw.size());
+        for (Object reading : raw) {
+            try {
+                Map<?, ?> fields = (Map<?, ?>) reading;
+                timestamps.add(LocalDateTime.parse(fields.get("timestamp").toString()));
+                values.add(Double.parseDouble(fields.get("kWh").toString()));
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().body("Each reading needs an ISO timestamp and a numeric kWh: " + reading);
+            }
+        }
+
+        int accepted = 0;
+        int underperforming = 0;
+        List<Map<String, Object>> held = new java.util.ArrayList<>();
+        for (int i = 0; i < timestamps.size(); i++) {
+            LocalDateTime timestamp = timestamps.get(i);
+            double kWh = values.get(i);
+            EnergyAnomalyDetector.Score score = energyAnomalyDetector.evaluate(
+                    project, ProjectGeneration.Granularity.HOUR, timestamp, kWh);
+            if (score.getVerdict().isHeld()) {
+                Map<String, Object> entry = score.toMap();
+                entry.put("timestamp", timestamp);
+                held.add(entry);
+                continue;
+            }
+            if (score.getVerdict() == EnergyAnomalyDetector.Verdict.UNDERPERFORMING) {
+                underperforming++;
+            }
+            generationSeriesService.record(projectId, timestamp, kWh, ProjectGeneration.Granularity.HOUR);
+            energyAnomalyDetector.accept(project, ProjectGeneration.Granularity.HOUR, timestamp, kWh);
+            accepted++;
+        }
+
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("projectId", projectId);
+        resp.put("accepted", accepted);
+        resp.put("underperforming", underperforming);
+        resp.put("held", held);
+        return ResponseEntity.ok(resp);
+    }
+
+    private static boolean isAdmin() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth != null && auth.getPrincipal() instanceof User && ((User) auth.getPrincipal()).getRole() == Role.ADMIN;
+    }
+
     // User: View reward history
     @GetMapping("/rewards/history")
     public ResponseEntity<?> getRewardHistory() {
@@ -91,4 +203,52 @@ public class EnergyController {
         rewards.removeIf(rh -> !rh.getUser().getId().equals(userOpt.get().getId()));
         return ResponseEntity.ok(rewards);
     }
-} 
\ No newline at end of file
+
+    // Chart data: project generation over a date range, downsampled to at most `points` points.
+    // granularity=AUTO picks the finest rollup that fits the range; method is LTTB or MINMAX.
+    @GetMapping("/projects/{projectId}/chart")
+    public ResponseEntity<?> getGenerationChart(@PathVariable Long projectId,
+                                                @RequestParam(required = false) String from,
+                                                @RequestParam(required = false) String to,
+                                                @RequestParam(defaultValue = "500") int points,
+                                                @RequestParam(defaultValue = "AUTO") String granularity,
+                                                @RequestParam(defaultValue = "LTTB") String method) {
+        if (!projectRepository.existsById(projectId)) return ResponseEntity.badRequest().body("Project not found");
+        if (points < 3 || points > 5000) return ResponseEntity.badRequest().body("points must be between 3 and 5000");
+
+        LocalDateTime end;
+        LocalDateTime start;
+        try {
+            end = to != null ? LocalDate.parse(to).atTime(23, 59, 59) : LocalDateTime.now();
+            start = from != null ? LocalDate.parse(from).atStartOfDay() : end.toLocalDate().minusYears(1).atStartOfDay();
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Dates must be in yyyy-MM-dd format");
+        }
+        if (start.isAfter(end)) return ResponseEntity.badRequest().body("from must be before to");
+
+        ProjectGeneration.Granularity resolved;
+        if ("AUTO".equalsIgnoreCase(granularity)) {
+            resolved = generationSeriesService.chooseGranularity(projectId, start, end);
+        } else {
+            try {
+                resolved = ProjectGeneration.Granularity.valueOf(granularity.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body("Invalid granularity. Use AUTO, HOUR, DAY, WEEK or MONTH");
+            }
+        }
+
+        SeriesDownsampler.Series source = generationSeriesService.getSeries(projectId, resolved, start, end);
+        SeriesDownsampler.Series series = generationSeriesService.downsample(source, points, method);
+
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("projectId", projectId);
+        resp.put("granularity", resolved);
+        resp.put("method", "MINMAX".equalsIgnoreCase(method) ? "MINMAX" : "LTTB");
+        resp.put("from", start);
+        resp.put("to", end);
+        resp.put("sourcePoints", source.size());
+        resp.put("timestamps", series.getTimestamps());
+        resp.put("values", series.getValues());
+        return ResponseEntity.ok(resp);
+    }
+}
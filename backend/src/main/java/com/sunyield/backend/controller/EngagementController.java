@@ -3,6 +3,10 @@ package com.sunyield.backend.controller;
 import com.sunyield.backend.entity.*;
 import com.sunyield.backend.repository.*;
 import com.sunyield.backend.service.EmailService;
+import com.sunyield.backend.service.LeaderboardService;
+import com.sunyield.backend.service.NotificationChannelPool;
+import com.sunyield.backend.service.WalletService;
+import com.sunyield.backend.util.BusinessIdGenerator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -12,7 +16,9 @@ import org.springframework.web.bind.annotation.*;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -30,6 +36,18 @@ public class EngagementController {
     private RewardHistoryRepository rewardHistoryRepository;
     @Autowired
     private EmailService emailService;
+    @Autowired
+    private LeaderboardService leaderboardService;
+    @Autowired
+    private NotificationChannelPool notificationChannelPool;
+    @Autowired
+    private AutoReinvestRuleRepository autoReinvestRuleRepository;
+    @Autowired
+    private WalletService walletService;
+    @Autowired
+    private BusinessIdGenerator businessIdGenerator;
+
+    private static final int MAX_BULK_GIFT_RECIPIENTS = 1000;
 
     // Helper: get current authenticated user
     private User getCurrentUser() {
@@ -40,41 +58,6 @@ public class EngagementController {
         return (User) authentication.getPrincipal();
     }
 
-    // Helper: get user's available credits (same logic as UserWalletController)
-    private BigDecimal getUserAvailableCredits(User user) {
-        BigDecimal balance = BigDecimal.ZERO;
-        
-        // Add rewards (earnings) - use user-specific query
-        List<RewardHistory> rewards = rewardHistoryRepository.findByUser(user);
-        for (RewardHistory reward : rewards) {
-            if ("SUCCESS".equals(reward.getStatus())) {
-                if (reward.getRewardAmount() != null) {
-                    balance = balance.add(reward.getRewardAmount());
-                }
-            }
-        }
-        
-        // Add incoming transfers (admin credits, etc.)
-        List<CreditTransferLog> incomingTransfers = creditTransferLogRepository.findByToUserId(user.getId());
-        for (CreditTransferLog transfer : incomingTransfers) {
-            if ("ADMIN_CREDIT".equals(transfer.getType()) || "ADD_FUNDS".equals(transfer.getType()) || "GIFT".equals(transfer.getType())) {
-                balance = balance.add(transfer.getAmount());
-            }
-        }
-        
-        // Subtract outflows (investments, withdrawals, engagement activities)
-        List<CreditTransferLog> outflows = creditTransferLogRepository.findByFromUserId(user.getId());
-        for (CreditTransferLog outflow : outflows) {
-            if ("INVESTMENT".equals(outflow.getType()) || "SUBSCRIPTION".equals(outflow.getType()) || 
-                "WITHDRAWAL".equals(outflow.getType()) || "REINVEST".equals(outflow.getType()) || 
-                "DONATE".equals(outflow.getType()) || "GIFT".equals(outflow.getType())) {
-                balance = balance.subtract(outflow.getAmount());
-            }
-        }
-        
-        return balance;
-    }
-
     // GET /api/engagement/stats
     @GetMapping("/stats")
     public ResponseEntity<?> getEngagementStats() {
@@ -110,7 +93,7 @@ public class EngagementController {
             stats.put("totalDonated", totalDonated.doubleValue());
             stats.put("totalGifted", totalGifted.doubleValue());
             stats.put("totalReceived", totalReceived.doubleValue());
-            stats.put("availableCredits", getUserAvailableCredits(user).doubleValue());
+            stats.put("availableCredits", walletService.balanceOf(user.getId()).doubleValue());
             stats.put("totalTransactions", outgoingTransactions.size() + incomingTransactions.size());
             
             return ResponseEntity.ok(stats);
@@ -135,21 +118,14 @@ public class EngagementController {
             }
             
             Project project = projectOpt.get();
-            BigDecimal availableCredits = getUserAvailableCredits(user);
-            
-            if (availableCredits.compareTo(amount) < 0) {
-                return ResponseEntity.badRequest().body("Insufficient credits. Available: ₹" + availableCredits + ", Requested: ₹" + amount);
-            }
-            
             // Log transfer
-            CreditTransferLog log = new CreditTransferLog();
-            log.setFromUser(user);
-            log.setProject(project);
-            log.setAmount(amount);
-            log.setType("REINVEST");
-            log.setDate(LocalDateTime.now());
-            log.setNotes("Reinvested in project " + project.getName());
-            creditTransferLogRepository.save(log);
+            CreditTransferLog log;
+            try {
+                log = walletService.debit(user, amount, "REINVEST", project, "Reinvested in project " + project.getName(), null, true);
+            } catch (WalletService.InsufficientFundsException e) {
+                return ResponseEntity.badRequest().body("Insufficient credits. Available: ₹" + e.getAvailable() + ", Requested: ₹" + amount);
+            }
+            leaderboardService.recordTransfer(LeaderboardService.Board.REINVEST, user, amount, log.getDate());
             
             // Send email notification
             String emailSubject = "Reinvestment Successful - " + project.getName();
@@ -198,21 +174,14 @@ public class EngagementController {
             }
             
             Project project = projectOpt.get();
-            BigDecimal availableCredits = getUserAvailableCredits(user);
-            
-            if (availableCredits.compareTo(amount) < 0) {
-                return ResponseEntity.badRequest().body("Insufficient credits. Available: ₹" + availableCredits + ", Requested: ₹" + amount);
-            }
-            
             // Log transfer (from donor)
-            CreditTransferLog log = new CreditTransferLog();
-            log.setFromUser(user);
-            log.setProject(project);
-            log.setAmount(amount);
-            log.setType("DONATE");
-            log.setDate(LocalDateTime.now());
-            log.setNotes("Donated to project " + project.getName());
-            creditTransferLogRepository.save(log);
+            CreditTransferLog log;
+            try {
+                log = walletService.debit(user, amount, "DONATE", project, "Donated to project " + project.getName(), null, true);
+            } catch (WalletService.InsufficientFundsException e) {
+                return ResponseEntity.badRequest().body("Insufficient credits. Available: ₹" + e.getAvailable() + ", Requested: ₹" + amount);
+            }
+            leaderboardService.recordTransfer(LeaderboardService.Board.DONATE, user, amount, log.getDate());
             
             // Send email notification to donor
             String emailSubject = "Donation Successful - " + project.getName();
@@ -267,21 +236,19 @@ public class EngagementController {
             }
             
             User recipient = recipientOpt.get();
-            BigDecimal availableCredits = getUserAvailableCredits(user);
-            
-            if (availableCredits.compareTo(amount) < 0) {
-                return ResponseEntity.badRequest().body("Insufficient credits. Available: ₹" + availableCredits + ", Requested: ₹" + amount);
+            if (recipient.getId().equals(user.getId())) {
+                return ResponseEntity.badRequest().body("You cannot send a gift to yourself");
             }
             
             // Log transfer (single entry representing the gift transaction)
-            CreditTransferLog log = new CreditTransferLog();
-            log.setFromUser(user);
-            log.setToUser(recipient);
-            log.setAmount(amount);
-            log.setType("GIFT");
-            log.setDate(LocalDateTime.now());
-            log.setNotes("Gift transaction between " + user.getEmail() + " and " + recipient.getEmail());
-            creditTransferLogRepository.save(log);
+            CreditTransferLog log;
+            try {
+                log = walletService.transfer(user, recipient, amount, "GIFT",
+                        "Gift transaction between " + user.getEmail() + " and " + recipient.getEmail());
+            } catch (WalletService.InsufficientFundsException e) {
+                return ResponseEntity.badRequest().body("Insufficient credits. Available: ₹" + e.getAvailable() + ", Requested: ₹" + amount);
+            }
+            leaderboardService.recordTransfer(LeaderboardService.Board.GIFT, user, amount, log.getDate());
             
             // Send email notification to sender
             String senderEmailSubject = "Gift Sent Successfully";
@@ -336,6 +303,146 @@ public class EngagementController {
         }
     }
 
+    // POST /api/engagement/gift/bulk
+    // Body: {"amount": 100, "recipients": [{"email": "a@example.com"}, {"email": "b@example.com", "amount": 250}]}
+    // All or nothing: every recipient must exist and the sender must cover the total.
+    @PostMapping("/gift/bulk")
+    public ResponseEntity<?> bulkGift(@RequestBody Map<String, Object> request) {
+        try {
+            User user = getCurrentUser();
+            
+            // Check KYC status (required for gifts)
+            if (user.getKycStatus() == null || !"APPROVED".equalsIgnoreCase(user.getKycStatus().name())) {
+                return ResponseEntity.badRequest().body("KYC approval required for sending gifts. Current status: " + user.getKycStatus());
+            }
+            if (!(request.get("recipients") instanceof List) || ((List<?>) request.get("recipients")).isEmpty()) {
+                return ResponseEntity.badRequest().body("recipients must be a non-empty list");
+            }
+            List<?> entries = (List<?>) request.get("recipients");
+            if (entries.size() > MAX_BULK_GIFT_RECIPIENTS) {
+                return ResponseEntity.badRequest().body("At most " + MAX_BULK_GIFT_RECIPIENTS + " recipients per request");
+            }
+            BigDecimal defaultAmount = request.get("amount") != null ? new BigDecimal(request.get("amount").toString()) : null;
+            
+            // Amount per recipient email; repeated emails are added up
+            Map<String, BigDecimal> amountsByEmail = new LinkedHashMap<>();
+            for (Object entry : entries) {
+                if (!(entry instanceof Map) || ((Map<?, ?>) entry).get("email") == null) {
+                    return ResponseEntity.badRequest().body("Each recipient needs an email");
+                }
+                Map<?, ?> recipient = (Map<?, ?>) entry;
+                String email = recipient.get("email").toString().trim().toLowerCase();
+                BigDecimal amount = recipient.get("amount") != null ? new BigDecimal(recipient.get("amount").toString()) : defaultAmount;
+                if (amount == null || amount.signum() <= 0) {
+                    return ResponseEntity.badRequest().body("Gift amount for " + email + " must be positive");
+                }
+                if (email.equalsIgnoreCase(user.getEmail())) {
+                    return ResponseEntity.badRequest().body("You cannot send a gift to yourself");
+                }
+                amountsByEmail.merge(email, amount, BigDecimal::add);
+            }
+            
+            // Resolve every recipient in one query
+            Map<String, User> usersByEmail = new HashMap<>();
+            for (User recipient : userRepository.findByEmailIn(amountsByEmail.keySet())) {
+                usersByEmail.put(recipient.getEmail().toLowerCase(), recipient);
+            }
+            List<String> unknown = new ArrayList<>();
+            Map<User, BigDecimal> amounts = new LinkedHashMap<>();
+            for (Map.Entry<String, BigDecimal> entry : amountsByEmail.entrySet()) {
+                User recipient = usersByEmail.get(entry.getKey());
+                if (recipient == null) {
+                    unknown.add(entry.getKey());
+                } else {
+                    amounts.put(recipient, entry.getValue());
+                }
+            }
+            if (!unknown.isEmpty()) {
+                Map<String, Object> error = new HashMap<>();
+                error.put("message", "Recipients not found");
+                error.put("unknownRecipients", unknown);
+                return ResponseEntity.badRequest().body(error);
+            }
+            
+            String batchId = businessIdGenerator.nextId("GIFT");
+            BigDecimal total;
+            try {
+                total = walletService.transferToMany(user, amounts, "GIFT",
+                        "Bulk gift from " + user.getEmail() + " (" + batchId + ")", "GIFT:" + batchId);
+            } catch (WalletService.InsufficientFundsException e) {
+                return ResponseEntity.badRequest().body("Insufficient credits. Available: ₹" + e.getAvailable() + ", Requested: ₹" + e.getRequired());
+            }
+            leaderboardService.recordTransfer(LeaderboardService.Board.GIFT, user, total, LocalDateTime.now());
+            
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd MMMM yyyy 'at' hh:mm a");
+            String formattedDate = LocalDateTime.now().format(formatter);
+            
+            // One summary for the sender; recipients are notified in the background
+            String senderEmailBody = String.format(
+                "Dear %s,\n\n" +
+                "Your bulk gift has been sent successfully!\n\n" +
+                "Gift Details:\n" +
+                "- Recipients: %d\n" +
+                "- Total Amount: ₹%s\n" +
+                "- Reference: %s\n" +
+                "- Date: %s\n\n" +
+                "Every recipient is being notified of your gift.\n\n" +
+                "Thank you for spreading solar energy!\n\n" +
+                "Best regards,\nSunYield Team",
+                user.getFullName(),
+                amounts.size(),
+                total.toString(),
+                batchId,
+                formattedDate
+            );
+            emailService.sendEmail(user.getEmail(), "Bulk Gift Sent Successfully", senderEmailBody);
+            
+            // Recipient mail goes through the bounded, rate-limited email lane without blocking this
+            // request; when the lane is full the rest are skipped (the gift itself is already in every wallet)
+            int notQueued = 0;
+            for (Map.Entry<User, BigDecimal> entry : amounts.entrySet()) {
+                User recipient = entry.getKey();
+                String recipientEmailBody = String.format(
+                    "Dear %s,\n\n" +
+                    "You have received a gift!\n\n" +
+                    "Gift Details:\n" +
+                    "- From: %s\n" +
+                    "- Amount: ₹%s\n" +
+                    "- Date: %s\n\n" +
+                    "The amount has been added to your wallet balance. You can use these funds to invest in solar projects or withdraw them.\n\n" +
+                    "Thank you for being part of the solar energy community!\n\n" +
+                    "Best regards,\nSunYield Team",
+                    recipient.getFullName(),
+                    user.getFullName(),
+                    entry.getValue().toString(),
+                    formattedDate
+                );
+                if (!notificationChannelPool.offer(NotificationChannelPool.Channel.EMAIL, recipient.getEmail(),
+                        "Gift Received - SunYield", recipientEmailBody, delivered -> { })) {
+                    notQueued++;
+                }
+            }
+            if (notQueued > 0) {
+                System.err.println("[ERROR] Email queue full: " + notQueued + " gift notifications for " + batchId + " were not sent");
+            }
+            
+            System.out.println("[DEBUG] User " + user.getEmail() + " gifted ₹" + total + " to " + amounts.size() + " recipients (" + batchId + ")");
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("batchId", batchId);
+            response.put("recipients", amounts.size());
+            response.put("totalAmount", total);
+            return ResponseEntity.ok(response);
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().body("Invalid amount: " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("[ERROR] Exception in bulkGift: " + e.getMessage());
+            e.printStackTrace();
+            return ResponseEntity.status(500).body("Error processing bulk gift: " + e.getMessage());
+        }
+    }
+
     // GET /api/engagement/history
     @GetMapping("/history")
     public ResponseEntity<?> getEngagementHistory() {
@@ -408,4 +515,77 @@ public class EngagementController {
             return ResponseEntity.status(500).body("Error fetching engagement history: " + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+
+    // GET /api/engagement/auto-reinvest
+    @GetMapping("/auto-reinvest")
+    public ResponseEntity<?> getAutoReinvestRule() {
+        try {
+            User user = getCurrentUser();
+            Optional<AutoReinvestRule> rule = autoReinvestRuleRepository.findByUserId(user.getId());
+            if (rule.isEmpty()) {
+                return ResponseEntity.ok(Map.of("enabled", false));
+            }
+            return ResponseEntity.ok(rule.get());
+        } catch (Exception e) {
+            System.err.println("[ERROR] Exception in getAutoReinvestRule: " + e.getMessage());
+            return ResponseEntity.status(500).body("Error fetching auto-reinvest rule: " + e.getMessage());
+        }
+    }
+
+    // PUT /api/engagement/auto-reinvest
+    // Body: {"projectId": 3, "thresholdAmount": 500, "reinvestPercent": 50, "active": true}
+    @PutMapping("/auto-reinvest")
+    public ResponseEntity<?> saveAutoReinvestRule(@RequestBody Map<String, Object> request) {
+        try {
+            User user = getCurrentUser();
+            Long projectId = Long.valueOf(request.get("projectId").toString());
+            BigDecimal thresholdAmount = new BigDecimal(request.get("thresholdAmount").toString());
+            int reinvestPercent = request.get("reinvestPercent") != null
+                ? Integer.parseInt(request.get("reinvestPercent").toString()) : 100;
+            boolean active = request.get("active") == null || Boolean.parseBoolean(request.get("active").toString());
+
+            Optional<Project> projectOpt = projectRepository.findById(projectId);
+            if (projectOpt.isEmpty()) {
+                return ResponseEntity.badRequest().body("Project not found");
+            }
+            if (thresholdAmount.signum() < 0) {
+                return ResponseEntity.badRequest().body("Threshold amount cannot be negative");
+            }
+            if (reinvestPercent < 1 || reinvestPercent > 100) {
+                return ResponseEntity.badRequest().body("Reinvest percent must be between 1 and 100");
+            }
+
+            AutoReinvestRule rule = autoReinvestRuleRepository.findByUserId(user.getId()).orElseGet(() -> {
+                AutoReinvestRule created = new AutoReinvestRule();
+                created.setUserId(user.getId());
+                created.setCreatedAt(LocalDateTime.now());
+                return created;
+            });
+            rule.setProjectId(projectId);
+            rule.setThresholdAmount(thresholdAmount);
+            rule.setReinvestPercent(reinvestPercent);
+            rule.setActive(active);
+            rule.setUpdatedAt(LocalDateTime.now());
+            autoReinvestRuleRepository.save(rule);
+
+            System.out.println("[DEBUG] User " + user.getEmail() + " set auto-reinvest: " + reinvestPercent + "% above ₹" + thresholdAmount + " into project " + projectOpt.get().getName());
+            return ResponseEntity.ok(rule);
+        } catch (Exception e) {
+            System.err.println("[ERROR] Exception in saveAutoReinvestRule: " + e.getMessage());
+            return ResponseEntity.status(500).body("Error saving auto-reinvest rule: " + e.getMessage());
+        }
+    }
+
+    // DELETE /api/engagement/auto-reinvest
+    @DeleteMapping("/auto-reinvest")
+    public ResponseEntity<?> deleteAutoReinvestRule() {
+        try {
+            User user = getCurrentUser();
+            autoReinvestRuleRepository.findByUserId(user.getId()).ifPresent(autoReinvestRuleRepository::delete);
+            return ResponseEntity.ok("Auto-reinvest disabled");
+        } catch (Exception e) {
+            System.err.println("[ERROR] Exception in deleteAutoReinvestRule: " + e.getMessage());
+            return ResponseEntity.status(500).body("Error deleting auto-reinvest rule: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.sunyield.backend.controller;
+
+import com.sunyield.backend.entity.User;
+import com.sunyield.backend.service.GreenCreditsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/green-credits")
+public class GreenCreditsController {
+
+    @Autowired
+    private GreenCreditsService greenCreditsService;
+
+    // Current user's green credits, kWh and CO2 avoided
+    @GetMapping("/me")
+    public ResponseEntity<?> getMyImpact() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof User)) {
+            return ResponseEntity.status(401).body("User not authenticated");
+        }
+        User user = (User) authentication.getPrincipal();
+        return ResponseEntity.ok(greenCreditsService.getUserImpact(user.getId()));
+    }
+
+    @GetMapping("/projects/{projectId}")
+    public ResponseEntity<?> getProjectImpact(@PathVariable Long projectId) {
+        return ResponseEntity.ok(greenCreditsService.getProjectImpact(projectId));
+    }
+
+    @GetMapping("/platform")
+    public ResponseEntity<?> getPlatformImpact() {
+        return ResponseEntity.ok(greenCreditsService.getPlatformImpact());
+    }
+}
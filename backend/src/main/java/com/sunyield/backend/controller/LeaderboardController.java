@@ -0,0 +1,40 @@
+package com.sunyield.backend.controller;
+
+import com.sunyield.backend.service.LeaderboardService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/leaderboards")
+public class LeaderboardController {
+
+    @Autowired
+    private LeaderboardService leaderboardService;
+
+    // GET /api/leaderboards/{board}?period=ALL_TIME|MONTHLY&limit=10
+    // board: REINVEST, DONATE, GIFT or KWH
+    @GetMapping("/{board}")
+    public ResponseEntity<?> getLeaderboard(@PathVariable String board,
+                                            @RequestParam(defaultValue = "ALL_TIME") String period,
+                                            @RequestParam(defaultValue = "10") int limit) {
+        LeaderboardService.Board parsedBoard;
+        LeaderboardService.Period parsedPeriod;
+        try {
+            parsedBoard = LeaderboardService.Board.valueOf(board.toUpperCase());
+            parsedPeriod = LeaderboardService.Period.valueOf(period.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Unknown leaderboard or period: " + board + " / " + period);
+        }
+
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("board", parsedBoard);
+        resp.put("period", parsedPeriod);
+        resp.put("unit", leaderboardService.unitOf(parsedBoard));
+        resp.put("entries", leaderboardService.top(parsedBoard, parsedPeriod, limit));
+        return ResponseEntity.ok(resp);
+    }
+}
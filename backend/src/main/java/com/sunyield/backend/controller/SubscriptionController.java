@@ -4,7 +4,6 @@ import com.sunyield.backend.entity.Project;
 import com.sunyield.backend.entity.Subscription;
 import com.sunyield.backend.entity.User;
 import com.sunyield.backend.entity.CreditTransferLog;
-import com.sunyield.backend.entity.RewardHistory;
 import com.sunyield.backend.entity.Coupon;
 import com.sunyield.backend.repository.ProjectRepository;
 import com.sunyield.backend.repository.SubscriptionRepository;
@@ -14,14 +13,19 @@ import com.sunyield.backend.repository.RewardHistoryRepository;
 import com.sunyield.backend.repository.CouponRepository;
 import com.sunyield.backend.service.EmailService;
 import com.sunyield.backend.service.CashfreeMockService;
+import com.sunyield.backend.service.ProjectCapacityService;
+import com.sunyield.backend.service.WalletService;
+import com.sunyield.backend.util.BusinessIdGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.context.annotation.Profile;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -52,6 +56,14 @@ public class SubscriptionController {
     private CashfreeMockService cashfreeMockService;
     @Autowired
     private CouponRepository couponRepository;
+    @Autowired
+    private BusinessIdGenerator businessIdGenerator;
+    @Autowired
+    private ProjectCapacityService projectCapacityService;
+    @Autowired
+    private WalletService walletService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
     // Request body class for subscription
     public static class SubscriptionRequest {
@@ -122,11 +134,9 @@ public class SubscriptionController {
         Project project = projectOpt.get();
         
         // Check if user already has an active subscription for this project
-        List<Subscription> existingSubscriptions = subscriptionRepository.findByUser(user);
-        boolean alreadySubscribed = existingSubscriptions.stream()
-            .anyMatch(sub -> sub.getProject() != null && 
-                           sub.getProject().getId().equals(projectId) && 
-                           "SUCCESS".equals(sub.getPaymentStatus()));
+        // (the unique active-subscription key closes the race between two concurrent requests)
+        boolean alreadySubscribed = subscriptionRepository.existsByUserIdAndProjectIdAndPaymentStatus(
+            user.getId(), projectId, "SUCCESS");
         
         if (alreadySubscribed) {
             return ResponseEntity.badRequest().body("You have already subscribed to this project");
@@ -176,11 +186,12 @@ public class SubscriptionController {
             }
         }
         
-        // Check wallet balance
-        BigDecimal userBalance = getUserAvailableCredits(user);
-        
-        if (userBalance.compareTo(finalPrice) < 0) {
-            return ResponseEntity.badRequest().body("Insufficient wallet balance. Available: ₹" + userBalance + ", Required: ₹" + finalPrice);
+        // Calculate reserved capacity based on contribution amount
+        // Base rate: ₹50 per watt (more realistic for solar projects)
+        BigDecimal reservedCapacity = finalPrice.divide(new BigDecimal("50"), 2, java.math.RoundingMode.HALF_UP);
+        if (!projectCapacityService.reserve(projectId, reservedCapacity)) {
+            BigDecimal remainingWatts = projectCapacityService.remainingWatts(projectId);
+            return ResponseEntity.badRequest().body("This project is fully reserved. Remaining capacity: " + remainingWatts + " W, requested: " + reservedCapacity + " W");
         }
         
         // Auto-approve subscription
@@ -189,34 +200,31 @@ public class SubscriptionController {
         sub.setProject(project);
         sub.setContributionAmount(finalPrice);
         sub.setSubscriptionType(subscriptionType);
-        
-        // Calculate reserved capacity based on contribution amount
-        // Base rate: ₹50 per watt (more realistic for solar projects)
-        BigDecimal reservedCapacity = finalPrice.divide(new BigDecimal("50"), 2, java.math.RoundingMode.HALF_UP);
         sub.setReservedCapacity(reservedCapacity);
         
-        // Generate a more readable order ID: SOLAR_YYYYMMDD_HHMMSS_XXX
-        String timestamp = LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-        String randomSuffix = String.format("%03d", (int)(Math.random() * 1000));
-        sub.setPaymentOrderId("SOLAR_" + timestamp + "_" + randomSuffix);
+        // Order ID: SOLAR_<time-ordered unique id>
+        sub.setPaymentOrderId(businessIdGenerator.nextId("SOLAR"));
         sub.setPaymentStatus("SUCCESS");
         sub.setSubscribedAt(LocalDateTime.now());
-        subscriptionRepository.save(sub);
-        
-        // Deduct from wallet and create transaction log
-        CreditTransferLog investment = new CreditTransferLog();
-        investment.setFromUser(user);
-        investment.setToUser(null); // System/Project
-        investment.setProject(project);
-        investment.setAmount(finalPrice);
-        investment.setType("SUBSCRIPTION");
-        investment.setDate(LocalDateTime.now());
         String notes = "Auto-approved investment in " + project.getName();
         if (appliedCouponCode != null) {
             notes += " (Coupon applied: " + appliedCouponCode + ", Discount: ₹" + discountAmount + ")";
         }
-        investment.setNotes(notes);
-        creditTransferLogRepository.save(investment);
+        
+        // Save the subscription and deduct from the wallet in one transaction
+        try {
+            walletService.subscribe(sub, notes);
+        } catch (WalletService.InsufficientFundsException e) {
+            projectCapacityService.release(projectId, reservedCapacity);
+            return ResponseEntity.badRequest().body("Insufficient wallet balance. Available: ₹" + e.getAvailable() + ", Required: ₹" + finalPrice);
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent request for the same user and project won
+            projectCapacityService.release(projectId, reservedCapacity);
+            return ResponseEntity.badRequest().body("You have already subscribed to this project");
+        } catch (RuntimeException e) {
+            projectCapacityService.release(projectId, reservedCapacity);
+            throw e;
+        }
         
         // Send email notification to user
         String emailSubject = "🎉 Solar Project Contribution Successful - Energy Rewards Activated!";
@@ -276,7 +284,7 @@ public class SubscriptionController {
         resp.put("efficiency", project.getEfficiency());
         resp.put("discountAmount", discountAmount);
         resp.put("appliedCoupon", appliedCouponCode);
-        resp.put("newBalance", userBalance.subtract(finalPrice));
+        resp.put("newBalance", walletService.balanceOf(user.getId()));
         return ResponseEntity.ok(resp);
         } catch (Exception e) {
             logger.error("Exception in subscribeToProject for project {}: {}", projectId, e.getMessage(), e);
@@ -284,41 +292,6 @@ public class SubscriptionController {
         }
     }
     
-    // Helper method to calculate user's available credits
-    private BigDecimal getUserAvailableCredits(User user) {
-        BigDecimal balance = BigDecimal.ZERO;
-        
-        // Add rewards (earnings) - use user-specific query
-        List<RewardHistory> rewards = rewardHistoryRepository.findByUser(user);
-        for (RewardHistory reward : rewards) {
-            if ("SUCCESS".equals(reward.getStatus())) {
-                if (reward.getRewardAmount() != null) {
-                    balance = balance.add(reward.getRewardAmount());
-                }
-            }
-        }
-        
-        // Add incoming transfers (admin credits, etc.)
-        List<CreditTransferLog> incomingTransfers = creditTransferLogRepository.findByToUserId(user.getId());
-        for (CreditTransferLog transfer : incomingTransfers) {
-            if ("ADMIN_CREDIT".equals(transfer.getType()) || "ADD_FUNDS".equals(transfer.getType()) || "GIFT".equals(transfer.getType())) {
-                balance = balance.add(transfer.getAmount());
-            }
-        }
-        
-        // Subtract outflows (investments, withdrawals, engagement activities)
-        List<CreditTransferLog> outflows = creditTransferLogRepository.findByFromUserId(user.getId());
-        for (CreditTransferLog outflow : outflows) {
-            if ("INVESTMENT".equals(outflow.getType()) || "SUBSCRIPTION".equals(outflow.getType()) || 
-                "WITHDRAWAL".equals(outflow.getType()) || "REINVEST".equals(outflow.getType()) || 
-                "DONATE".equals(outflow.getType()) || "GIFT".equals(outflow.getType())) {
-                balance = balance.subtract(outflow.getAmount());
-            }
-        }
-        
-        return balance;
-    }
-
     // 2. Create Cashfree payment order
     @PostMapping("/create-payment-order")
     public ResponseEntity<?> createPaymentOrder(@RequestParam Long projectId, @RequestHeader(value = "Authorization", required = false) String authHeader) {
@@ -341,6 +314,17 @@ public class SubscriptionController {
         Project project = projectOpt.get();
         BigDecimal projectPrice = project.getSubscriptionPrice();
         
+        // One unpaid order per user and project (also enforced by uk_subscription_pending)
+        if (subscriptionRepository.existsByUserIdAndProjectIdAndPaymentStatus(user.getId(), projectId, "PENDING")) {
+            return ResponseEntity.status(409).body("A payment for this project is already pending. Complete it or wait for it to expire.");
+        }
+        
+        // Hold the capacity while the payment is pending; a FAILED webhook or the order TTL gives it back
+        BigDecimal reservedCapacity = projectPrice.divide(new BigDecimal("50"), 2, java.math.RoundingMode.HALF_UP);
+        if (!projectCapacityService.reserve(projectId, reservedCapacity)) {
+            return ResponseEntity.badRequest().body("This project is fully reserved. Remaining capacity: " + projectCapacityService.remainingWatts(projectId) + " W");
+        }
+        
         // Create Cashfree order request
         Map<String, Object> orderRequest = new HashMap<>();
         orderRequest.put("orderAmount", projectPrice);
@@ -354,6 +338,7 @@ public class SubscriptionController {
             Map<String, Object> cashfreeResponse = cashfreeMockService.createOrder(orderRequest);
             
             if (cashfreeResponse.containsKey("status") && "ERROR".equals(cashfreeResponse.get("status"))) {
+                projectCapacityService.release(projectId, reservedCapacity);
                 return ResponseEntity.badRequest().body(cashfreeResponse);
             }
             
@@ -364,7 +349,15 @@ public class SubscriptionController {
             sub.setPaymentOrderId((String) cashfreeResponse.get("orderId"));
             sub.setPaymentStatus("PENDING");
             sub.setSubscribedAt(null); // Will be set when payment is successful
-            subscriptionRepository.save(sub);
+            sub.setReservedCapacity(reservedCapacity);
+            sub.setOrderCreatedAt(LocalDateTime.now());
+            try {
+                subscriptionRepository.save(sub);
+            } catch (DataIntegrityViolationException e) {
+                // A concurrent request created the pending order first
+                projectCapacityService.release(projectId, reservedCapacity);
+                return ResponseEntity.status(409).body("A payment for this project is already pending. Complete it or wait for it to expire.");
+            }
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -378,6 +371,7 @@ public class SubscriptionController {
             return ResponseEntity.ok(response);
             
         } catch (Exception e) {
+            projectCapacityService.release(projectId, reservedCapacity);
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("success", false);
             errorResponse.put("message", "Failed to create payment order: " + e.getMessage());
@@ -388,29 +382,64 @@ public class SubscriptionController {
     // 3. Webhook endpoint to handle payment status (mocked)
     @PostMapping("/webhook")
     public ResponseEntity<?> handleWebhook(@RequestParam String orderId, @RequestParam String status) {
-        // status: "SUCCESS" or "FAILED"
-        Optional<Subscription> subOpt = subscriptionRepository.findAll().stream()
-                .filter(s -> orderId.equals(s.getPaymentOrderId()))
-                .findFirst();
-        if (subOpt.isEmpty()) return ResponseEntity.badRequest().body("Subscription not found");
-        Subscription sub = subOpt.get();
-        sub.setPaymentStatus(status);
-        if ("SUCCESS".equals(status)) {
-            sub.setSubscribedAt(LocalDateTime.now());
-            
-            // Create investment transaction record
-            CreditTransferLog investment = new CreditTransferLog();
-            investment.setFromUser(sub.getUser());
-            investment.setToUser(null); // System/Project
-            investment.setProject(sub.getProject());
-            investment.setAmount(sub.getProject().getSubscriptionPrice());
-            investment.setType("SUBSCRIPTION");
-            investment.setDate(LocalDateTime.now());
-            investment.setNotes("Investment in " + sub.getProject().getName());
-            creditTransferLogRepository.save(investment);
+        // status: "SUCCESS" or "FAILED". The subscription row stays locked until the status, the ledger
+        // row and the capacity have all moved, so the pending-order expiry cannot interleave.
+        String result;
+        try {
+            result = transactionTemplate.execute(tx -> {
+                Optional<Subscription> subOpt = subscriptionRepository.lockByPaymentOrderId(orderId);
+                if (subOpt.isEmpty()) return null;
+                Subscription sub = subOpt.get();
+                String previousStatus = sub.getPaymentStatus();
+                // PENDING and SUCCESS hold capacity; FAILED and EXPIRED have given it back
+                boolean held = "PENDING".equals(previousStatus) || "SUCCESS".equals(previousStatus);
+                sub.setPaymentStatus(status);
+                String reference = CreditTransferLog.reference("SUBSCRIPTION", orderId);
+                // Gateways redeliver webhooks; only the first SUCCESS delivery writes the ledger row
+                boolean firstSuccess = "SUCCESS".equals(status) && creditTransferLogRepository.findByExternalReference(reference).isEmpty();
+                if (firstSuccess) {
+                    sub.setSubscribedAt(LocalDateTime.now());
+                }
+                subscriptionRepository.saveAndFlush(sub);
+                if (firstSuccess) {
+                    // Create investment transaction record; the gateway already collected the money
+                    walletService.debit(sub.getUser(), sub.getProject().getSubscriptionPrice(), "SUBSCRIPTION",
+                            sub.getProject(), "Investment in " + sub.getProject().getName(), reference, false);
+                }
+                if ("SUCCESS".equals(status) && !held) {
+                    // Paid after a FAILED webhook or after the order expired: the capacity was released
+                    projectCapacityService.reserveCollected(sub.getProject().getId(), sub.getReservedCapacity());
+                } else if ("FAILED".equals(status) && held) {
+                    projectCapacityService.release(sub.getProject().getId(), sub.getReservedCapacity());
+                }
+                return "Webhook processed";
+            });
+        } catch (DataIntegrityViolationException e) {
+            return ResponseEntity.status(409).body("User already has an active subscription to this project");
+        }
+        if (result == null) return ResponseEntity.badRequest().body("Subscription not found");
+        return ResponseEntity.ok(result);
+    }
+
+    // Pays a mock order at the gateway and delivers its webhook(s) to handleWebhook the way the gateway
+    // would, including the duplicate deliveries injected by the webhook fault profile
+    @PostMapping("/simulate-payment")
+    public ResponseEntity<?> simulatePayment(@RequestParam String orderId, @RequestParam(defaultValue = "UPI") String paymentMethod) {
+        Map<String, Object> payment = cashfreeMockService.processPayment(orderId, paymentMethod, new HashMap<>());
+        if ("ERROR".equals(payment.get("status"))) {
+            return ResponseEntity.badRequest().body(payment.get("message"));
+        }
+        List<Map<String, Object>> deliveries = cashfreeMockService.generateWebhookDeliveries(orderId);
+        ResponseEntity<?> last = ResponseEntity.ok().build();
+        for (Map<String, Object> delivery : deliveries) {
+            last = handleWebhook(orderId, (String) delivery.get("orderStatus"));
         }
-        subscriptionRepository.save(sub);
-        return ResponseEntity.ok("Webhook processed");
+        Map<String, Object> response = new HashMap<>();
+        response.put("orderId", orderId);
+        response.put("paymentStatus", payment.get("orderStatus"));
+        response.put("webhookDeliveries", deliveries.size());
+        response.put("webhookResult", last.getBody());
+        return ResponseEntity.status(last.getStatusCode()).body(response);
     }
 
     // 3. Get user's subscription for a specific project
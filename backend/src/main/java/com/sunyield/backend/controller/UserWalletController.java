@@ -21,6 +21,8 @@ import java.util.Map;
 import com.sunyield.backend.service.EmailService;
 import java.util.Optional;
 import com.sunyield.backend.service.CashfreeMockService;
+import com.sunyield.backend.service.WalletService;
+import org.springframework.dao.DataIntegrityViolationException;
 
 @RestController
 @RequestMapping("/api/wallet")
@@ -44,6 +46,9 @@ public class UserWalletController {
     @Autowired
     private CashfreeMockService cashfreeMockService;
     
+    @Autowired
+    private WalletService walletService;
+    
     // Helper method to get current user from authentication context
     private User getCurrentUser() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -175,19 +180,32 @@ public class UserWalletController {
             }
             
             if ("SUCCESS".equals(paymentStatus)) {
+                // A repeated callback for an order that was already credited must not credit it again
+                String reference = CreditTransferLog.reference("ADD_FUNDS", orderId);
+                if (creditTransferLogRepository.findByExternalReference(reference).isPresent()) {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("success", true);
+                    response.put("message", "Funds already added to your wallet for this order");
+                    response.put("amount", amount);
+                    response.put("orderId", orderId);
+                    return ResponseEntity.ok(response);
+                }
+                
                 // Get current user
                 User user = getCurrentUser();
                 
-                // Create credit transfer log
-                CreditTransferLog transfer = new CreditTransferLog();
-                transfer.setFromUser(null); // System/admin transfer
-                transfer.setToUser(user);
-                transfer.setAmount(amount);
-                transfer.setType("ADD_FUNDS");
-                transfer.setDate(java.time.LocalDateTime.now());
-                transfer.setNotes("Funds added via payment gateway. Order: " + orderId);
-                
-                creditTransferLogRepository.save(transfer);
+                // Credit the wallet and create the transfer log in one transaction
+                try {
+                    walletService.credit(user, amount, "ADD_FUNDS", "Funds added via payment gateway. Order: " + orderId, reference);
+                } catch (DataIntegrityViolationException e) {
+                    // A concurrent callback for the same order credited it first
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("success", true);
+                    response.put("message", "Funds already added to your wallet for this order");
+                    response.put("amount", amount);
+                    response.put("orderId", orderId);
+                    return ResponseEntity.ok(response);
+                }
                 
                 // Send email notification to user
                 String emailSubject = "Funds Added to Your Wallet";
@@ -240,11 +258,12 @@ public class UserWalletController {
     
     // Debug endpoint to check orders
     @GetMapping("/debug/orders")
-    public ResponseEntity<?> debugOrders() {
+    public ResponseEntity<?> debugOrders(@RequestParam(defaultValue = "100") int limit) {
         try {
-            List<CashfreeMockService.PaymentOrder> orders = cashfreeMockService.getAllOrders();
+            List<CashfreeMockService.PaymentOrder> orders = cashfreeMockService.getRecentOrders(Math.max(1, Math.min(limit, 1000)));
             Map<String, Object> response = new HashMap<>();
-            response.put("totalOrders", orders.size());
+            response.put("totalOrders", cashfreeMockService.getOrderCount());
+            response.put("returnedOrders", orders.size());
             response.put("orders", orders.stream().map(order -> {
                 Map<String, Object> orderInfo = new HashMap<>();
                 orderInfo.put("orderId", order.getOrderId());
@@ -369,37 +388,7 @@ public class UserWalletController {
     }
     
     private BigDecimal calculateBalance(User user) {
-        BigDecimal balance = BigDecimal.ZERO;
-        
-        // Add rewards (earnings) - use user-specific query
-        List<RewardHistory> rewards = rewardHistoryRepository.findByUser(user);
-        for (RewardHistory reward : rewards) {
-            if ("SUCCESS".equals(reward.getStatus())) {
-                if (reward.getRewardAmount() != null) {
-                    balance = balance.add(reward.getRewardAmount());
-                }
-            }
-        }
-        
-        // Add incoming transfers (admin credits, etc.)
-        List<CreditTransferLog> incomingTransfers = creditTransferLogRepository.findByToUserId(user.getId());
-        for (CreditTransferLog transfer : incomingTransfers) {
-            if ("ADMIN_CREDIT".equals(transfer.getType()) || "ADD_FUNDS".equals(transfer.getType()) || "GIFT".equals(transfer.getType())) {
-                balance = balance.add(transfer.getAmount());
-            }
-        }
-        
-        // Subtract outflows (investments, withdrawals, engagement activities)
-        List<CreditTransferLog> outflows = creditTransferLogRepository.findByFromUserId(user.getId());
-        for (CreditTransferLog outflow : outflows) {
-            if ("INVESTMENT".equals(outflow.getType()) || "SUBSCRIPTION".equals(outflow.getType()) || 
-                "WITHDRAWAL".equals(outflow.getType()) || "REINVEST".equals(outflow.getType()) || 
-                "DONATE".equals(outflow.getType()) || "GIFT".equals(outflow.getType())) {
-                balance = balance.subtract(outflow.getAmount());
-            }
-        }
-        
-        return balance;
+        return walletService.balanceOf(user.getId());
     }
     
     private BigDecimal calculateTotalEarnings(User user) {
@@ -18,7 +18,6 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
-import java.time.LocalDateTime;
 import java.time.YearMonth;
 import java.util.List;
 import java.util.Optional;
@@ -27,6 +26,8 @@ import com.sunyield.backend.entity.RewardHistory;
 import com.sunyield.backend.entity.SystemConfig;
 import com.sunyield.backend.entity.KYCStatus;
 import com.sunyield.backend.service.CashfreeMockService;
+import com.sunyield.backend.service.PayoutDispatcher;
+import com.sunyield.backend.service.WalletService;
 import java.util.HashMap;
 
 @RestController
@@ -52,6 +53,10 @@ public class WithdrawalController {
     private SystemConfigRepository systemConfigRepository;
     @Autowired
     private CashfreeMockService cashfreeMockService; // To be implemented
+    @Autowired
+    private PayoutDispatcher payoutDispatcher;
+    @Autowired
+    private WalletService walletService;
 
     // Helper: get monthly withdrawal cap from database
     private BigDecimal getMonthlyWithdrawalCap() {
@@ -88,11 +93,7 @@ public class WithdrawalController {
             
             // Calculate total withdrawals for this month
             YearMonth now = YearMonth.now();
-            LocalDateTime start = now.atDay(1).atStartOfDay();
-            LocalDateTime end = now.atEndOfMonth().atTime(23,59,59);
-            List<WithdrawalRequest> monthlyWithdrawals = withdrawalRequestRepository.findByUserIdAndStatusAndRequestDateBetween(
-                user.getId(), "PAID", start, end);
-            BigDecimal totalThisMonth = monthlyWithdrawals.stream().map(WithdrawalRequest::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+            BigDecimal totalThisMonth = walletService.withdrawnThisMonth(user.getId());
             
             // Calculate remaining amount
             BigDecimal remainingAmount = monthlyCap.subtract(totalThisMonth);
@@ -115,47 +116,6 @@ public class WithdrawalController {
         }
     }
 
-    // Helper: get user's available credits (same logic as UserWalletController)
-    private BigDecimal getUserAvailableCredits(User user) {
-        BigDecimal balance = BigDecimal.ZERO;
-        
-        // Add rewards (earnings)
-        List<RewardHistory> rewards = rewardHistoryRepository.findAll();
-        for (RewardHistory reward : rewards) {
-            if (reward.getUser().getId().equals(user.getId()) && "SUCCESS".equals(reward.getStatus())) {
-                if (reward.getRewardAmount() != null) {
-                    balance = balance.add(reward.getRewardAmount());
-                }
-            }
-        }
-        
-        // Add incoming transfers (admin credits, etc.)
-        List<CreditTransferLog> incomingTransfers = creditTransferLogRepository.findByToUserId(user.getId());
-        for (CreditTransferLog transfer : incomingTransfers) {
-            if ("ADMIN_CREDIT".equals(transfer.getType()) || "ADD_FUNDS".equals(transfer.getType()) || "GIFT".equals(transfer.getType())) {
-                balance = balance.add(transfer.getAmount());
-            }
-        }
-        
-        // Subtract outflows (investments, withdrawals, engagement activities)
-        List<CreditTransferLog> outflows = creditTransferLogRepository.findByFromUserId(user.getId());
-        for (CreditTransferLog outflow : outflows) {
-            if ("INVESTMENT".equals(outflow.getType()) || "SUBSCRIPTION".equals(outflow.getType()) || 
-                "WITHDRAWAL".equals(outflow.getType()) || "REINVEST".equals(outflow.getType()) || 
-                "DONATE".equals(outflow.getType()) || "GIFT".equals(outflow.getType())) {
-                balance = balance.subtract(outflow.getAmount());
-            }
-        }
-        
-        System.out.println("[DEBUG] Balance calculation for user " + user.getEmail() + ":");
-        System.out.println("  - Rewards: " + rewards.stream().filter(r -> r.getUser().getId().equals(user.getId()) && "SUCCESS".equals(r.getStatus())).mapToDouble(r -> r.getRewardAmount() != null ? r.getRewardAmount().doubleValue() : 0).sum());
-        System.out.println("  - Incoming transfers: " + incomingTransfers.stream().filter(t -> "ADMIN_CREDIT".equals(t.getType()) || "ADD_FUNDS".equals(t.getType()) || "GIFT".equals(t.getType())).mapToDouble(t -> t.getAmount().doubleValue()).sum());
-        System.out.println("  - Outflows: " + outflows.stream().filter(o -> "INVESTMENT".equals(o.getType()) || "SUBSCRIPTION".equals(o.getType()) || "WITHDRAWAL".equals(o.getType()) || "REINVEST".equals(o.getType()) || "DONATE".equals(o.getType()) || "GIFT".equals(o.getType())).mapToDouble(o -> o.getAmount().doubleValue()).sum());
-        System.out.println("  - Final balance: " + balance);
-        
-        return balance;
-    }
-
     @PostMapping("/request")
     public ResponseEntity<?> requestWithdrawal(@RequestBody Map<String, Object> request) {
         try {
@@ -184,147 +144,32 @@ public class WithdrawalController {
                 return ResponseEntity.badRequest().body("Minimum withdrawal amount is ₹" + minWithdrawal);
             }
             
-            // Calculate total withdrawals for this month
-            YearMonth now = YearMonth.now();
-            LocalDateTime start = now.atDay(1).atStartOfDay();
-            LocalDateTime end = now.atEndOfMonth().atTime(23,59,59);
-            List<WithdrawalRequest> monthlyWithdrawals = withdrawalRequestRepository.findByUserIdAndStatusAndRequestDateBetween(
-                user.getId(), "PAID", start, end);
-            BigDecimal totalThisMonth = monthlyWithdrawals.stream().map(WithdrawalRequest::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
-            
-            System.out.println("[DEBUG] Monthly withdrawals: " + totalThisMonth + ", Requested: " + amount + ", Cap: " + getMonthlyWithdrawalCap());
-            
-            if (totalThisMonth.add(amount).compareTo(getMonthlyWithdrawalCap()) > 0) {
-                return ResponseEntity.badRequest().body("Monthly withdrawal cap exceeded. Monthly limit: ₹" + getMonthlyWithdrawalCap() + ", Already withdrawn: ₹" + totalThisMonth);
+            // Check the monthly cap and reserve the amount against the locked wallet balance, then
+            // queue the payout; PayoutDispatcher sends it in the next batch
+            WithdrawalRequest queued;
+            try {
+                queued = walletService.withdraw(
+                    user,
+                    amount,
+                    getMonthlyWithdrawalCap(),
+                    (String) request.getOrDefault("payoutMethod", "UPI"),
+                    (String) request.getOrDefault("upiId", user.getEmail() + "@upi"));
+            } catch (WalletService.MonthlyCapExceededException e) {
+                return ResponseEntity.badRequest().body(e.getMessage());
+            } catch (WalletService.InsufficientFundsException e) {
+                return ResponseEntity.badRequest().body("Insufficient wallet balance. Available: ₹" + e.getAvailable() + ", Requested: ₹" + amount);
             }
             
-            // Check wallet balance
-            BigDecimal availableCredits = getUserAvailableCredits(user);
-            System.out.println("[DEBUG] Available credits: " + availableCredits + ", Requested: " + amount);
+            System.out.println("[DEBUG] Withdrawal queued: #" + queued.getId());
             
-            if (availableCredits.compareTo(amount) < 0) {
-                return ResponseEntity.badRequest().body("Insufficient wallet balance. Available: ₹" + availableCredits + ", Requested: ₹" + amount);
-            }
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "Withdrawal request accepted. Amount: ₹" + amount + " will be paid out shortly.");
+            response.put("withdrawalId", queued.getId());
+            response.put("amount", amount);
+            response.put("status", "QUEUED");
             
-            // Create Cashfree payout order
-            Map<String, Object> payoutRequest = new HashMap<>();
-            payoutRequest.put("orderAmount", amount);
-            payoutRequest.put("orderCurrency", "INR");
-            payoutRequest.put("customerName", user.getFullName());
-            payoutRequest.put("customerEmail", user.getEmail());
-            payoutRequest.put("customerPhone", user.getContact() != null ? user.getContact() : "9999999999");
-            payoutRequest.put("orderNote", "Withdrawal payout - " + user.getEmail());
-            payoutRequest.put("payoutMethod", request.getOrDefault("payoutMethod", "UPI"));
-            payoutRequest.put("upiId", request.getOrDefault("upiId", user.getEmail() + "@upi"));
-            
-            try {
-                // Create payout order
-                Map<String, Object> cashfreeResponse = cashfreeMockService.createPayoutOrder(payoutRequest);
-                
-                if (cashfreeResponse.containsKey("status") && "ERROR".equals(cashfreeResponse.get("status"))) {
-                    return ResponseEntity.badRequest().body(cashfreeResponse);
-                }
-                
-                String orderId = (String) cashfreeResponse.get("orderId");
-                
-                // Process payout immediately (like add funds)
-                Map<String, Object> payoutStatus = cashfreeMockService.getPayoutStatus(orderId);
-                String status = (String) payoutStatus.get("orderStatus");
-                
-                // Create withdrawal request
-                WithdrawalRequest req = new WithdrawalRequest();
-                req.setUser(user);
-                req.setAmount(amount);
-                req.setRequestDate(LocalDateTime.now());
-                req.setStatus("SUCCESS".equals(status) ? "PAID" : "FAILED");
-                req.setPayoutMethod((String) request.getOrDefault("payoutMethod", "UPI"));
-                req.setUpiId((String) request.getOrDefault("upiId", user.getEmail() + "@upi"));
-                req.setPaymentReferenceId(orderId);
-                
-                WithdrawalRequest saved = withdrawalRequestRepository.save(req);
-                
-                if ("SUCCESS".equals(status)) {
-                    // Deduct from wallet
-                    CreditTransferLog log = new CreditTransferLog();
-                    log.setFromUser(user);
-                    log.setAmount(amount);
-                    log.setType("WITHDRAWAL");
-                    log.setDate(LocalDateTime.now());
-                    log.setNotes("Withdrawal processed successfully. Order: " + orderId + " - Status: PAID");
-                    creditTransferLogRepository.save(log);
-                    
-                    // Send success email
-                    String emailSubject = "Withdrawal Processed Successfully";
-                    String emailBody = String.format(
-                        "Dear %s,\n\n" +
-                        "Your withdrawal has been processed successfully!\n\n" +
-                        "Payout Details:\n" +
-                        "- Amount: ₹%s\n" +
-                        "- Payment Method: %s\n" +
-                        "- Order ID: %s\n" +
-                        "- Date: %s\n" +
-                        "- Status: PAID\n\n" +
-                        "The amount has been transferred to your account. Please check your bank statement.\n\n" +
-                        "Thank you for using SunYield!\n\n" +
-                        "Best regards,\nSunYield Team",
-                        user.getFullName(),
-                        amount.toString(),
-                        saved.getPayoutMethod(),
-                        orderId,
-                        LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("dd MMM yyyy, HH:mm"))
-                    );
-                    
-                    emailService.sendEmail(user.getEmail(), emailSubject, emailBody);
-                    
-                    System.out.println("[DEBUG] Withdrawal processed successfully: " + orderId);
-                    
-                    Map<String, Object> response = new HashMap<>();
-                    response.put("success", true);
-                    response.put("message", "Withdrawal processed successfully! Amount: ₹" + amount);
-                    response.put("orderId", orderId);
-                    response.put("amount", amount);
-                    response.put("status", "PAID");
-                    
-                    return ResponseEntity.ok(response);
-                    
-                } else {
-                    // Send failure email
-                    String emailSubject = "Withdrawal Failed";
-                    String emailBody = String.format(
-                        "Dear %s,\n\n" +
-                        "Your withdrawal request has failed.\n\n" +
-                        "Details:\n" +
-                        "- Amount: ₹%s\n" +
-                        "- Order ID: %s\n" +
-                        "- Status: FAILED\n\n" +
-                        "No amount has been deducted from your wallet.\n\n" +
-                        "If you continue to face issues, please contact our support team.\n\n" +
-                        "Best regards,\nSunYield Team",
-                        user.getFullName(),
-                        amount.toString(),
-                        orderId
-                    );
-                    
-                    emailService.sendEmail(user.getEmail(), emailSubject, emailBody);
-                    
-                    System.out.println("[DEBUG] Withdrawal failed: " + orderId);
-                    
-                    Map<String, Object> response = new HashMap<>();
-                    response.put("success", false);
-                    response.put("message", "Withdrawal failed. Please try again.");
-                    response.put("orderId", orderId);
-                    response.put("amount", amount);
-                    response.put("status", "FAILED");
-                    
-                    return ResponseEntity.ok(response);
-                }
-                
-            } catch (Exception e) {
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("success", false);
-                errorResponse.put("message", "Failed to create payout order: " + e.getMessage());
-                return ResponseEntity.badRequest().body(errorResponse);
-            }
+            return ResponseEntity.status(202).body(response);
             
         } catch (Exception e) {
             System.err.println("[ERROR] Exception in requestWithdrawal: " + e.getMessage());
@@ -333,65 +178,27 @@ public class WithdrawalController {
         }
     }
 
-    // Process payout (called by webhook or admin)
+    // Process payout (called by webhook or admin); settles one payout without waiting for the dispatcher
     @PostMapping("/process-payout")
     public ResponseEntity<?> processPayout(@RequestParam String orderId) {
         try {
             // Get payout status from Cashfree
-            Map<String, Object> payoutStatus = cashfreeMockService.getPayoutStatus(orderId);
+            String status = cashfreeMockService.getBatchTransferStatus(List.of(orderId)).get(orderId);
             
-            if (payoutStatus.containsKey("status") && "ERROR".equals(payoutStatus.get("status"))) {
+            if ("NOT_FOUND".equals(status)) {
                 return ResponseEntity.badRequest().body("Payout order not found");
             }
             
-            String status = (String) payoutStatus.get("orderStatus");
-            
             // Find withdrawal request by order ID
             List<WithdrawalRequest> withdrawals = withdrawalRequestRepository.findByPaymentReferenceId(orderId);
             if (withdrawals.isEmpty()) {
                 return ResponseEntity.badRequest().body("Withdrawal request not found for order: " + orderId);
             }
             
-            WithdrawalRequest withdrawal = withdrawals.get(0);
+            // Settles (and refunds on failure) only if the dispatcher has not already done so
+            payoutDispatcher.applyResults(Map.of(orderId, status));
             
             if ("SUCCESS".equals(status)) {
-                // Update withdrawal status
-                withdrawal.setStatus("PAID");
-                withdrawalRequestRepository.save(withdrawal);
-                
-                // Update transaction log
-                List<CreditTransferLog> logs = creditTransferLogRepository.findByFromUserIdAndTypeAndNotesContaining(
-                    withdrawal.getUser().getId(), "WITHDRAWAL", orderId);
-                
-                if (!logs.isEmpty()) {
-                    CreditTransferLog log = logs.get(0);
-                    log.setNotes("Withdrawal processed successfully. Order: " + orderId + " - Status: PAID");
-                    creditTransferLogRepository.save(log);
-                }
-                
-                // Send success email
-                String emailSubject = "Withdrawal Processed Successfully";
-                String emailBody = String.format(
-                    "Dear %s,\n\n" +
-                    "Your withdrawal has been processed successfully!\n\n" +
-                    "Payout Details:\n" +
-                    "- Amount: ₹%s\n" +
-                    "- Payment Method: %s\n" +
-                    "- Order ID: %s\n" +
-                    "- Date: %s\n" +
-                    "- Status: PAID\n\n" +
-                    "The amount has been transferred to your account. Please check your bank statement.\n\n" +
-                    "Thank you for using SunYield!\n\n" +
-                    "Best regards,\nSunYield Team",
-                    withdrawal.getUser().getFullName(),
-                    withdrawal.getAmount().toString(),
-                    withdrawal.getPayoutMethod(),
-                    orderId,
-                    LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("dd MMM yyyy, HH:mm"))
-                );
-                
-                emailService.sendEmail(withdrawal.getUser().getEmail(), emailSubject, emailBody);
-                
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", true);
                 response.put("message", "Payout processed successfully");
@@ -401,39 +208,6 @@ public class WithdrawalController {
                 return ResponseEntity.ok(response);
                 
             } else if ("FAILED".equals(status)) {
-                // Update withdrawal status
-                withdrawal.setStatus("FAILED");
-                withdrawalRequestRepository.save(withdrawal);
-                
-                // Refund the amount back to wallet
-                CreditTransferLog refund = new CreditTransferLog();
-                refund.setFromUser(null); // System refund
-                refund.setToUser(withdrawal.getUser());
-                refund.setAmount(withdrawal.getAmount());
-                refund.setType("WITHDRAWAL_REFUND");
-                refund.setDate(LocalDateTime.now());
-                refund.setNotes("Withdrawal failed. Refunded to wallet. Order: " + orderId);
-                creditTransferLogRepository.save(refund);
-                
-                // Send failure email
-                String emailSubject = "Withdrawal Failed";
-                String emailBody = String.format(
-                    "Dear %s,\n\n" +
-                    "Your withdrawal request has failed.\n\n" +
-                    "Details:\n" +
-                    "- Amount: ₹%s\n" +
-                    "- Order ID: %s\n" +
-                    "- Status: FAILED\n\n" +
-                    "The amount has been refunded to your wallet. You can try withdrawing again.\n\n" +
-                    "If you continue to face issues, please contact our support team.\n\n" +
-                    "Best regards,\nSunYield Team",
-                    withdrawal.getUser().getFullName(),
-                    withdrawal.getAmount().toString(),
-                    orderId
-                );
-                
-                emailService.sendEmail(withdrawal.getUser().getEmail(), emailSubject, emailBody);
-                
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", false);
                 response.put("message", "Payout failed. Amount refunded to wallet.");
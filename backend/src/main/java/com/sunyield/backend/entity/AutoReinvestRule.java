@@ -0,0 +1,68 @@
+package com.sunyield.backend.entity;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// One rule per user: whenever the wallet balance is above thresholdAmount, reinvestPercent
+// of the excess is reinvested into projectId by the scheduled executor.
+@Entity
+@Table(name = "auto_reinvest_rule")
+public class AutoReinvestRule {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false, unique = true)
+    private Long userId;
+
+    @Column(name = "project_id", nullable = false)
+    private Long projectId;
+
+    @Column(name = "threshold_amount", nullable = false)
+    private BigDecimal thresholdAmount;
+
+    @Column(name = "reinvest_percent", nullable = false)
+    private int reinvestPercent;
+
+    @Column(name = "active", nullable = false)
+    private boolean active = true;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime lastExecutedAt;
+    private BigDecimal lastAmount;
+
+    public AutoReinvestRule() {}
+
+    // Getters and setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public Long getProjectId() { return projectId; }
+    public void setProjectId(Long projectId) { this.projectId = projectId; }
+
+    public BigDecimal getThresholdAmount() { return thresholdAmount; }
+    public void setThresholdAmount(BigDecimal thresholdAmount) { this.thresholdAmount = thresholdAmount; }
+
+    public int getReinvestPercent() { return reinvestPercent; }
+    public void setReinvestPercent(int reinvestPercent) { this.reinvestPercent = reinvestPercent; }
+
+    public boolean isActive() { return active; }
+    public void setActive(boolean active) { this.active = active; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+
+    public LocalDateTime getLastExecutedAt() { return lastExecutedAt; }
+    public void setLastExecutedAt(LocalDateTime lastExecutedAt) { this.lastExecutedAt = lastExecutedAt; }
+
+    public BigDecimal getLastAmount() { return lastAmount; }
+    public void setLastAmount(BigDecimal lastAmount) { this.lastAmount = lastAmount; }
+}
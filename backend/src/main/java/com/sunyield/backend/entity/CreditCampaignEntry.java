@@ -0,0 +1,70 @@
+package com.sunyield.backend.entity;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+
+// One staged recipient of a CreditCampaign. Only written and read through JDBC batches by
+// BulkCreditService; the entity exists so the table and its indexes are managed with the schema.
+@Entity
+@Table(name = "credit_campaign_entry",
+       indexes = {
+           // Keyset chunks over one campaign's pending / credited entries
+           @Index(name = "idx_credit_campaign_entry_status", columnList = "campaign_id, status, id"),
+           @Index(name = "idx_credit_campaign_entry_user", columnList = "campaign_id, user_id")
+       })
+public class CreditCampaignEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "campaign_id", nullable = false)
+    private Long campaignId;
+
+    // Position in the submitted list or CSV (1-based), for error reports
+    @Column(name = "line_no")
+    private Integer lineNo;
+
+    // As submitted: a user id or an email; user_id is filled in by validation
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "email")
+    private String email;
+
+    @Column(name = "amount", precision = 19, scale = 2)
+    private BigDecimal amount;
+
+    // PENDING, INVALID, CREDITED, NOTIFIED
+    @Column(name = "status", nullable = false, length = 16)
+    private String status;
+
+    @Column(name = "error")
+    private String error;
+
+    public CreditCampaignEntry() {}
+
+    // Getters and setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getCampaignId() { return campaignId; }
+    public void setCampaignId(Long campaignId) { this.campaignId = campaignId; }
+
+    public Integer getLineNo() { return lineNo; }
+    public void setLineNo(Integer lineNo) { this.lineNo = lineNo; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public String getEmail() { return email; }
+    public void setEmail(String email) { this.email = email; }
+
+    public BigDecimal getAmount() { return amount; }
+    public void setAmount(BigDecimal amount) { this.amount = amount; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+}
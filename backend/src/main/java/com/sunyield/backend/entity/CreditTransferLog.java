@@ -5,6 +5,12 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_credit_transfer_log_external_reference", columnNames = {"external_reference"}),
+       indexes = {
+           // Covering indexes for the per-user balance aggregates (WalletBalanceService)
+           @Index(name = "idx_credit_transfer_log_to_user_type", columnList = "to_user_id, type, amount"),
+           @Index(name = "idx_credit_transfer_log_from_user_type", columnList = "from_user_id, type, amount")
+       })
 public class CreditTransferLog {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -24,6 +30,16 @@ public class CreditTransferLog {
     private LocalDateTime date;
     private String notes;
 
+    // The business event that produced this row (see reference()), e.g. WITHDRAWAL:42 or ADD_FUNDS:CF_...;
+    // unique, so callbacks find their row with one indexed lookup and cannot write it twice.
+    // null for entries that have no external counterpart.
+    @Column(name = "external_reference", length = 96)
+    private String externalReference;
+
+    public static String reference(String type, Object id) {
+        return type + ":" + id;
+    }
+
     // Getters and setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -41,4 +57,6 @@ public class CreditTransferLog {
     public void setDate(LocalDateTime date) { this.date = date; }
     public String getNotes() { return notes; }
     public void setNotes(String notes) { this.notes = notes; }
+    public String getExternalReference() { return externalReference; }
+    public void setExternalReference(String externalReference) { this.externalReference = externalReference; }
 } 
\ No newline at end of file
@@ -0,0 +1,55 @@
+package com.sunyield.backend.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Running impact totals for one user, updated in place as rewards are written
+@Entity
+@Table(name = "green_credits_wallet")
+public class GreenCreditsWallet {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false, unique = true)
+    private Long userId;
+
+    @Column(name = "total_kwh", nullable = false)
+    private double totalKwh;
+
+    @Column(name = "green_credits", nullable = false)
+    private double greenCredits;
+
+    @Column(name = "co2_avoided_tonnes", nullable = false)
+    private double co2AvoidedTonnes;
+
+    @Column(name = "reward_count", nullable = false)
+    private long rewardCount;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public GreenCreditsWallet() {}
+
+    // Getters and setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public double getTotalKwh() { return totalKwh; }
+    public void setTotalKwh(double totalKwh) { this.totalKwh = totalKwh; }
+
+    public double getGreenCredits() { return greenCredits; }
+    public void setGreenCredits(double greenCredits) { this.greenCredits = greenCredits; }
+
+    public double getCo2AvoidedTonnes() { return co2AvoidedTonnes; }
+    public void setCo2AvoidedTonnes(double co2AvoidedTonnes) { this.co2AvoidedTonnes = co2AvoidedTonnes; }
+
+    public long getRewardCount() { return rewardCount; }
+    public void setRewardCount(long rewardCount) { this.rewardCount = rewardCount; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -0,0 +1,53 @@
+package com.sunyield.backend.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Persisted copy of one user's leaderboard score. Scores are integers in the board's unit
+// (paise for money boards, Wh for the kWh board); the in-memory rankings are restored from here on startup.
+@Entity
+@Table(name = "leaderboard_entry",
+       uniqueConstraints = @UniqueConstraint(name = "uk_leaderboard_entry",
+                                             columnNames = {"board", "period_key", "user_id"}))
+public class LeaderboardEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "board", nullable = false, length = 16)
+    private String board;
+
+    // "ALL" for all-time, "yyyy-MM" for monthly boards
+    @Column(name = "period_key", nullable = false, length = 7)
+    private String periodKey;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "score", nullable = false)
+    private long score;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public LeaderboardEntry() {}
+
+    // Getters and setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getBoard() { return board; }
+    public void setBoard(String board) { this.board = board; }
+
+    public String getPeriodKey() { return periodKey; }
+    public void setPeriodKey(String periodKey) { this.periodKey = periodKey; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public long getScore() { return score; }
+    public void setScore(long score) { this.score = score; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
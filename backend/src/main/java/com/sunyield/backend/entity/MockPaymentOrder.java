@@ -0,0 +1,90 @@
+package com.sunyield.backend.entity;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Mock gateway orders persisted outside the JVM: the shared store for multi-node deployments,
+// or finished orders spilled from the in-memory store
+@Entity
+@Table(name = "mock_payment_order",
+       uniqueConstraints = @UniqueConstraint(name = "uk_mock_payment_order_order_id", columnNames = {"order_id"}),
+       indexes = @Index(name = "idx_mock_payment_order_updated_at", columnList = "updated_at"))
+public class MockPaymentOrder {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "order_id", nullable = false, length = 64)
+    private String orderId;
+
+    @Column(name = "order_amount", precision = 19, scale = 2)
+    private BigDecimal orderAmount;
+
+    @Column(name = "order_currency", length = 8)
+    private String orderCurrency;
+
+    @Column(name = "customer_name")
+    private String customerName;
+
+    @Column(name = "customer_email")
+    private String customerEmail;
+
+    @Column(name = "customer_phone", length = 32)
+    private String customerPhone;
+
+    @Column(name = "order_note")
+    private String orderNote;
+
+    @Column(name = "status", nullable = false, length = 16)
+    private String status;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+
+    // Bumped on every write; other nodes poll it to invalidate their cached copies
+    @Column(name = "updated_at", columnDefinition = "DATETIME(6)")
+    private LocalDateTime updatedAt;
+
+    public MockPaymentOrder() {}
+
+    // Getters and setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getOrderId() { return orderId; }
+    public void setOrderId(String orderId) { this.orderId = orderId; }
+
+    public BigDecimal getOrderAmount() { return orderAmount; }
+    public void setOrderAmount(BigDecimal orderAmount) { this.orderAmount = orderAmount; }
+
+    public String getOrderCurrency() { return orderCurrency; }
+    public void setOrderCurrency(String orderCurrency) { this.orderCurrency = orderCurrency; }
+
+    public String getCustomerName() { return customerName; }
+    public void setCustomerName(String customerName) { this.customerName = customerName; }
+
+    public String getCustomerEmail() { return customerEmail; }
+    public void setCustomerEmail(String customerEmail) { this.customerEmail = customerEmail; }
+
+    public String getCustomerPhone() { return customerPhone; }
+    public void setCustomerPhone(String customerPhone) { this.customerPhone = customerPhone; }
+
+    public String getOrderNote() { return orderNote; }
+    public void setOrderNote(String orderNote) { this.orderNote = orderNote; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getProcessedAt() { return processedAt; }
+    public void setProcessedAt(LocalDateTime processedAt) { this.processedAt = processedAt; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
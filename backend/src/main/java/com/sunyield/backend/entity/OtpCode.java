@@ -0,0 +1,50 @@
+package com.sunyield.backend.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Backing table for the shared OTP store; codes are stored as SHA-256 digests, never in clear
+@Entity
+@Table(name = "otp_code",
+       uniqueConstraints = @UniqueConstraint(name = "uk_otp_code_purpose_email", columnNames = {"purpose", "email"}))
+public class OtpCode {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "purpose", nullable = false, length = 32)
+    private String purpose;
+
+    @Column(name = "email", nullable = false)
+    private String email;
+
+    @Column(name = "code_hash", nullable = false, length = 64)
+    private String codeHash;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    public OtpCode() {}
+
+    // Getters and setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getPurpose() { return purpose; }
+    public void setPurpose(String purpose) { this.purpose = purpose; }
+
+    public String getEmail() { return email; }
+    public void setEmail(String email) { this.email = email; }
+
+    public String getCodeHash() { return codeHash; }
+    public void setCodeHash(String codeHash) { this.codeHash = codeHash; }
+
+    public LocalDateTime getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(LocalDateTime expiresAt) { this.expiresAt = expiresAt; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+}
@@ -39,6 +39,10 @@ public class Project {
     @Column(name = "operational_validity_year")
     private Integer operationalValidityYear; // Operational validity year
     
+    // Watts reserved by live subscriptions; written only by ProjectCapacityService
+    @Column(name = "reserved_capacity", precision = 19, scale = 2, insertable = false, updatable = false)
+    private BigDecimal reservedCapacity;
+
     // Legacy field - keeping for backward compatibility
     @Column(name = "subscription_price")
     private BigDecimal subscriptionPrice;
@@ -58,6 +62,9 @@ public class Project {
     public Double getEnergyCapacity() { return energyCapacity; }
     public void setEnergyCapacity(Double energyCapacity) { this.energyCapacity = energyCapacity; }
 
+    public BigDecimal getReservedCapacity() { return reservedCapacity; }
+    public void setReservedCapacity(BigDecimal reservedCapacity) { this.reservedCapacity = reservedCapacity; }
+
     public BigDecimal getSubscriptionPrice() { return subscriptionPrice; }
     public void setSubscriptionPrice(BigDecimal subscriptionPrice) { this.subscriptionPrice = subscriptionPrice; }
 
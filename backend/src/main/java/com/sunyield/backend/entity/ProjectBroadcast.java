@@ -0,0 +1,108 @@
+package com.sunyield.backend.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// A message sent to every subscriber of a project (outage, maintenance, milestone). subject and
+// message are templates; the counters and lastRecipientId are flushed by ProjectBroadcastService
+// while it runs, so they show progress and let an interrupted broadcast continue where it stopped.
+@Entity
+@Table(name = "project_broadcast")
+public class ProjectBroadcast {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "project_id", nullable = false)
+    private Long projectId;
+
+    @Column(nullable = false)
+    private String subject;
+
+    @Column(nullable = false, length = 4000)
+    private String message;
+
+    // Comma-separated NotificationChannelPool.Channel names, e.g. EMAIL,SMS
+    @Column(nullable = false, length = 32)
+    private String channels;
+
+    // QUEUED, RUNNING, COMPLETED, CANCELLED, FAILED
+    @Column(nullable = false, length = 16)
+    private String status;
+
+    private long totalRecipients;
+    private long processedRecipients;
+    private long emailSent;
+    private long emailFailed;
+    private long smsSent;
+    private long smsFailed;
+    // Recipients without an address for a channel
+    private long skipped;
+
+    // Every recipient up to this user id has been delivered to (or failed); resume continues after it
+    private Long lastRecipientId;
+
+    @Column(length = 512)
+    private String error;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+
+    public ProjectBroadcast() {}
+
+    // Getters and setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getProjectId() { return projectId; }
+    public void setProjectId(Long projectId) { this.projectId = projectId; }
+
+    public String getSubject() { return subject; }
+    public void setSubject(String subject) { this.subject = subject; }
+
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+
+    public String getChannels() { return channels; }
+    public void setChannels(String channels) { this.channels = channels; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public long getTotalRecipients() { return totalRecipients; }
+    public void setTotalRecipients(long totalRecipients) { this.totalRecipients = totalRecipients; }
+
+    public long getProcessedRecipients() { return processedRecipients; }
+    public void setProcessedRecipients(long processedRecipients) { this.processedRecipients = processedRecipients; }
+
+    public long getEmailSent() { return emailSent; }
+    public void setEmailSent(long emailSent) { this.emailSent = emailSent; }
+
+    public long getEmailFailed() { return emailFailed; }
+    public void setEmailFailed(long emailFailed) { this.emailFailed = emailFailed; }
+
+    public long getSmsSent() { return smsSent; }
+    public void setSmsSent(long smsSent) { this.smsSent = smsSent; }
+
+    public long getSmsFailed() { return smsFailed; }
+    public void setSmsFailed(long smsFailed) { this.smsFailed = smsFailed; }
+
+    public long getSkipped() { return skipped; }
+    public void setSkipped(long skipped) { this.skipped = skipped; }
+
+    public Long getLastRecipientId() { return lastRecipientId; }
+    public void setLastRecipientId(Long lastRecipientId) { this.lastRecipientId = lastRecipientId; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getStartedAt() { return startedAt; }
+    public void setStartedAt(LocalDateTime startedAt) { this.startedAt = startedAt; }
+
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(LocalDateTime finishedAt) { this.finishedAt = finishedAt; }
+}
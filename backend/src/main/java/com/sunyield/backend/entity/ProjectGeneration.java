@@ -0,0 +1,60 @@
+package com.sunyield.backend.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// One row per project, granularity and period: hourly/daily readings are rolled up into
+// day, week and month buckets at write time so charts never scan raw reward rows.
+@Entity
+@Table(name = "project_generation",
+       uniqueConstraints = @UniqueConstraint(name = "uk_project_generation_bucket",
+                                             columnNames = {"project_id", "granularity", "period_start"}))
+public class ProjectGeneration {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "project_id", nullable = false)
+    private Long projectId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "granularity", nullable = false, length = 8)
+    private Granularity granularity;
+
+    @Column(name = "period_start", nullable = false)
+    private LocalDateTime periodStart;
+
+    @Column(name = "kwh", nullable = false)
+    private double kwh;
+
+    @Column(name = "sample_count", nullable = false)
+    private int sampleCount;
+
+    public enum Granularity {
+        HOUR,
+        DAY,
+        WEEK,
+        MONTH
+    }
+
+    public ProjectGeneration() {}
+
+    // Getters and setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getProjectId() { return projectId; }
+    public void setProjectId(Long projectId) { this.projectId = projectId; }
+
+    public Granularity getGranularity() { return granularity; }
+    public void setGranularity(Granularity granularity) { this.granularity = granularity; }
+
+    public LocalDateTime getPeriodStart() { return periodStart; }
+    public void setPeriodStart(LocalDateTime periodStart) { this.periodStart = periodStart; }
+
+    public double getKwh() { return kwh; }
+    public void setKwh(double kwh) { this.kwh = kwh; }
+
+    public int getSampleCount() { return sampleCount; }
+    public void setSampleCount(int sampleCount) { this.sampleCount = sampleCount; }
+}
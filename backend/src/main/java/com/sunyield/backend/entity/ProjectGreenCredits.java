@@ -0,0 +1,55 @@
+package com.sunyield.backend.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Running impact totals for one project: the sum of every investor's credited kWh share
+@Entity
+@Table(name = "project_green_credits")
+public class ProjectGreenCredits {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "project_id", nullable = false, unique = true)
+    private Long projectId;
+
+    @Column(name = "total_kwh", nullable = false)
+    private double totalKwh;
+
+    @Column(name = "green_credits", nullable = false)
+    private double greenCredits;
+
+    @Column(name = "co2_avoided_tonnes", nullable = false)
+    private double co2AvoidedTonnes;
+
+    @Column(name = "reward_count", nullable = false)
+    private long rewardCount;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public ProjectGreenCredits() {}
+
+    // Getters and setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getProjectId() { return projectId; }
+    public void setProjectId(Long projectId) { this.projectId = projectId; }
+
+    public double getTotalKwh() { return totalKwh; }
+    public void setTotalKwh(double totalKwh) { this.totalKwh = totalKwh; }
+
+    public double getGreenCredits() { return greenCredits; }
+    public void setGreenCredits(double greenCredits) { this.greenCredits = greenCredits; }
+
+    public double getCo2AvoidedTonnes() { return co2AvoidedTonnes; }
+    public void setCo2AvoidedTonnes(double co2AvoidedTonnes) { this.co2AvoidedTonnes = co2AvoidedTonnes; }
+
+    public long getRewardCount() { return rewardCount; }
+    public void setRewardCount(long rewardCount) { this.rewardCount = rewardCount; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
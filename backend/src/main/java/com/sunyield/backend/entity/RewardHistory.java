@@ -6,6 +6,10 @@ import java.time.LocalDateTime;
 import java.time.LocalDate;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_reward_history_user_status", columnList = "user_id, status, reward_amount"),
+        @Index(name = "idx_reward_history_project_date", columnList = "project_id, date")
+})
 public class RewardHistory {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -27,6 +31,8 @@ public class RewardHistory {
     private String reason;
     private LocalDateTime createdAt;
     private LocalDate date; // Date when the energy reward was generated
+    // Project-level reading the reward was distributed from (null on rows written before it was stored)
+    private Double projectKwh;
 
     public RewardHistory() {}
 
@@ -63,4 +69,7 @@ public class RewardHistory {
 
     public LocalDate getDate() { return date; }
     public void setDate(LocalDate date) { this.date = date; }
+
+    public Double getProjectKwh() { return projectKwh; }
+    public void setProjectKwh(Double projectKwh) { this.projectKwh = projectKwh; }
 } 
\ No newline at end of file
@@ -5,6 +5,14 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(indexes = {
+           @Index(name = "idx_subscription_user_project_status", columnList = "user_id, project_id, payment_status"),
+           @Index(name = "idx_subscription_payment_order", columnList = "payment_order_id")
+       },
+       uniqueConstraints = {
+           @UniqueConstraint(name = "uk_subscription_active", columnNames = {"active_subscription_key"}),
+           @UniqueConstraint(name = "uk_subscription_pending", columnNames = {"pending_order_key"})
+       })
 public class Subscription {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -19,12 +27,25 @@ public class Subscription {
     private Project project;
 
     private LocalDateTime subscribedAt;
-    private String paymentStatus; // e.g., PENDING, SUCCESS, FAILED
+    private String paymentStatus; // e.g., PENDING, SUCCESS, FAILED, EXPIRED (gateway order unpaid past its TTL)
     private String paymentOrderId;
     private BigDecimal contributionAmount; // User's actual contribution amount
     private BigDecimal reservedCapacity; // Capacity reserved based on contribution
     private String subscriptionType; // FIXED (legacy) or FLEXIBLE (new)
 
+    // "userId:projectId" while the subscription is SUCCESS, null otherwise. The unique constraint
+    // lets only one SUCCESS subscription per user and project exist, even under concurrent requests.
+    @Column(name = "active_subscription_key", length = 64)
+    private String activeSubscriptionKey;
+
+    // "userId:projectId" while a gateway order is PENDING, null otherwise: one unpaid order per user
+    // and project, so capacity cannot be held by creating orders and never paying them
+    @Column(name = "pending_order_key", length = 64)
+    private String pendingOrderKey;
+
+    // When the gateway order was created; PENDING rows older than the order TTL give their capacity back
+    private LocalDateTime orderCreatedAt;
+
     public Subscription() {}
 
     // Getters and setters
@@ -52,6 +73,17 @@ public class Subscription {
     public BigDecimal getReservedCapacity() { return reservedCapacity; }
     public void setReservedCapacity(BigDecimal reservedCapacity) { this.reservedCapacity = reservedCapacity; }
 
+    public LocalDateTime getOrderCreatedAt() { return orderCreatedAt; }
+    public void setOrderCreatedAt(LocalDateTime orderCreatedAt) { this.orderCreatedAt = orderCreatedAt; }
+
     public String getSubscriptionType() { return subscriptionType; }
     public void setSubscriptionType(String subscriptionType) { this.subscriptionType = subscriptionType; }
+
+    @PrePersist
+    @PreUpdate
+    private void updateActiveSubscriptionKey() {
+        String key = user != null && project != null ? user.getId() + ":" + project.getId() : null;
+        activeSubscriptionKey = "SUCCESS".equals(paymentStatus) ? key : null;
+        pendingOrderKey = "PENDING".equals(paymentStatus) ? key : null;
+    }
 } 
\ No newline at end of file
@@ -23,13 +23,13 @@ public class    User {
 
     private boolean isVerified = false;
 
-    private String otp;
-
-    private Long otpGeneratedTime;
-
     @Enumerated(EnumType.STRING)
     private Role role = Role.USER;
 
+    // Bumped whenever claims embedded in issued JWTs go stale (role, KYC, password)
+    @Column(name = "token_version", nullable = false)
+    private int tokenVersion = 0;
+
     // Getters and setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -52,12 +52,9 @@ public class    User {
     public boolean isVerified() { return isVerified; }
     public void setVerified(boolean verified) { isVerified = verified; }
 
-    public String getOtp() { return otp; }
-    public void setOtp(String otp) { this.otp = otp; }
-
-    public Long getOtpGeneratedTime() { return otpGeneratedTime; }
-    public void setOtpGeneratedTime(Long otpGeneratedTime) { this.otpGeneratedTime = otpGeneratedTime; }
-
     public Role getRole() { return role; }
     public void setRole(Role role) { this.role = role; }
+
+    public int getTokenVersion() { return tokenVersion; }
+    public void setTokenVersion(int tokenVersion) { this.tokenVersion = tokenVersion; }
 }
\ No newline at end of file
@@ -5,6 +5,11 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(name = "withdrawal_request", indexes = {
+        @Index(name = "idx_withdrawal_request_status", columnList = "status, id"),
+        @Index(name = "idx_withdrawal_request_batch", columnList = "payout_batch_id"),
+        @Index(name = "idx_withdrawal_request_reference", columnList = "payment_reference_id")
+})
 public class WithdrawalRequest {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -16,7 +21,7 @@ public class WithdrawalRequest {
 
     private BigDecimal amount;
     private LocalDateTime requestDate;
-    private String status; // PENDING, APPROVED, REJECTED, PAID
+    private String status; // QUEUED, PROCESSING, REVIEW, PAID, FAILED (legacy: PENDING, APPROVED, REJECTED)
     private String payoutMethod; // UPI, BANK
     private String upiId;
     private String bankAccountNumber;
@@ -24,6 +29,12 @@ public class WithdrawalRequest {
     private String adminNotes;
     private String paymentReferenceId;
 
+    // Payout batch that claimed this request, and when
+    @Column(name = "payout_batch_id", length = 64)
+    private String payoutBatchId;
+    private LocalDateTime dispatchedAt;
+    private LocalDateTime processedAt;
+
     // Getters and setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -47,4 +58,10 @@ public class WithdrawalRequest {
     public void setAdminNotes(String adminNotes) { this.adminNotes = adminNotes; }
     public String getPaymentReferenceId() { return paymentReferenceId; }
     public void setPaymentReferenceId(String paymentReferenceId) { this.paymentReferenceId = paymentReferenceId; }
+    public String getPayoutBatchId() { return payoutBatchId; }
+    public void setPayoutBatchId(String payoutBatchId) { this.payoutBatchId = payoutBatchId; }
+    public LocalDateTime getDispatchedAt() { return dispatchedAt; }
+    public void setDispatchedAt(LocalDateTime dispatchedAt) { this.dispatchedAt = dispatchedAt; }
+    public LocalDateTime getProcessedAt() { return processedAt; }
+    public void setProcessedAt(LocalDateTime processedAt) { this.processedAt = processedAt; }
 } 
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.sunyield.backend.repository;
+
+import com.sunyield.backend.entity.AutoReinvestRule;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface AutoReinvestRuleRepository extends JpaRepository<AutoReinvestRule, Long> {
+    Optional<AutoReinvestRule> findByUserId(Long userId);
+
+    // Keyset paging for the batch executor: stable and index-only regardless of how far in we are
+    List<AutoReinvestRule> findByActiveTrueAndIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+}
@@ -0,0 +1,10 @@
+package com.sunyield.backend.repository;
+
+import com.sunyield.backend.entity.CreditCampaign;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface CreditCampaignRepository extends JpaRepository<CreditCampaign, Long> {
+    List<CreditCampaign> findTop50ByOrderByIdDesc();
+}
@@ -5,11 +5,12 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface CreditTransferLogRepository extends JpaRepository<CreditTransferLog, Long> {
     List<CreditTransferLog> findByFromUserId(Long userId);
     List<CreditTransferLog> findByToUserId(Long userId);
     List<CreditTransferLog> findByProjectId(Long projectId);
-    List<CreditTransferLog> findByFromUserIdAndTypeAndNotesContaining(Long userId, String type, String notes);
+    Optional<CreditTransferLog> findByExternalReference(String externalReference);
 } 
\ No newline at end of file
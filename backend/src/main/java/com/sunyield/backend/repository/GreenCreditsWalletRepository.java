@@ -0,0 +1,41 @@
+package com.sunyield.backend.repository;
+
+import com.sunyield.backend.entity.GreenCreditsWallet;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface GreenCreditsWalletRepository extends JpaRepository<GreenCreditsWallet, Long> {
+    Optional<GreenCreditsWallet> findByUserId(Long userId);
+
+    @Modifying
+    @Query(value = "INSERT INTO green_credits_wallet (user_id, total_kwh, green_credits, co2_avoided_tonnes, reward_count, updated_at) " +
+                   "VALUES (:userId, :kwh, :credits, :co2, :rewards, NOW()) " +
+                   "ON DUPLICATE KEY UPDATE total_kwh = total_kwh + VALUES(total_kwh), " +
+                   "green_credits = green_credits + VALUES(green_credits), " +
+                   "co2_avoided_tonnes = co2_avoided_tonnes + VALUES(co2_avoided_tonnes), " +
+                   "reward_count = reward_count + VALUES(reward_count), updated_at = NOW()",
+           nativeQuery = true)
+    int addImpact(@Param("userId") Long userId,
+                  @Param("kwh") double kwh,
+                  @Param("credits") double credits,
+                  @Param("co2") double co2,
+                  @Param("rewards") long rewards);
+
+    @Modifying
+    @Query(value = "DELETE FROM green_credits_wallet", nativeQuery = true)
+    int deleteAllRows();
+
+    @Modifying
+    @Query(value = "INSERT INTO green_credits_wallet (user_id, total_kwh, green_credits, co2_avoided_tonnes, reward_count, updated_at) " +
+                   "SELECT r.user_id, SUM(r.k_wh), SUM(r.k_wh) / :kwhPerCredit, SUM(r.k_wh) * :co2TonnesPerKwh, COUNT(*), NOW() " +
+                   "FROM reward_history r WHERE r.user_id IS NOT NULL AND r.k_wh > 0 GROUP BY r.user_id",
+           nativeQuery = true)
+    int rebuildFromRewards(@Param("kwhPerCredit") double kwhPerCredit,
+                           @Param("co2TonnesPerKwh") double co2TonnesPerKwh);
+}
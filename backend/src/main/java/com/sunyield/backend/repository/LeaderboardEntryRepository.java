@@ -0,0 +1,62 @@
+package com.sunyield.backend.repository;
+
+import com.sunyield.backend.entity.LeaderboardEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface LeaderboardEntryRepository extends JpaRepository<LeaderboardEntry, Long> {
+
+    // Only all-time boards and recent months are loaded back into memory
+    List<LeaderboardEntry> findByPeriodKeyIn(List<String> periodKeys);
+
+    @Modifying
+    @Query(value = "INSERT INTO leaderboard_entry (board, period_key, user_id, score, updated_at) " +
+                   "VALUES (:board, :periodKey, :userId, :score, NOW()) " +
+                   "ON DUPLICATE KEY UPDATE score = VALUES(score), updated_at = NOW()",
+           nativeQuery = true)
+    int upsertScore(@Param("board") String board,
+                    @Param("periodKey") String periodKey,
+                    @Param("userId") Long userId,
+                    @Param("score") long score);
+
+    @Modifying
+    @Query(value = "DELETE FROM leaderboard_entry", nativeQuery = true)
+    int deleteAllRows();
+
+    // Full rebuild: money boards in paise, summed per sender and type
+    @Query(value = "SELECT c.type, c.from_user_id, ROUND(SUM(c.amount) * 100) FROM credit_transfer_log c " +
+                   "WHERE c.type IN ('REINVEST', 'DONATE', 'GIFT') AND c.from_user_id IS NOT NULL " +
+                   "GROUP BY c.type, c.from_user_id",
+           nativeQuery = true)
+    List<Object[]> sumTransfersByTypeAndUser();
+
+    // Monthly boards for every month at once; the month is formatted like YearMonth.toString()
+    @Query(value = "SELECT c.type, c.from_user_id, DATE_FORMAT(c.date, '%Y-%m'), ROUND(SUM(c.amount) * 100) " +
+                   "FROM credit_transfer_log c " +
+                   "WHERE c.type IN ('REINVEST', 'DONATE', 'GIFT') AND c.from_user_id IS NOT NULL AND c.date IS NOT NULL " +
+                   "GROUP BY c.type, c.from_user_id, DATE_FORMAT(c.date, '%Y-%m')",
+           nativeQuery = true)
+    List<Object[]> sumTransfersByTypeUserAndMonth();
+
+    // kWh board in Wh, summed per user from reward history. Rows without energy are skipped, as
+    // they are by LeaderboardService.recordRewards().
+    @Query(value = "SELECT r.user_id, ROUND(SUM(r.k_wh) * 1000) FROM reward_history r " +
+                   "WHERE r.user_id IS NOT NULL AND r.k_wh > 0 GROUP BY r.user_id",
+           nativeQuery = true)
+    List<Object[]> sumWhByUser();
+
+    @Query(value = "SELECT r.user_id, r.year, r.month, ROUND(SUM(r.k_wh) * 1000) FROM reward_history r " +
+                   "WHERE r.user_id IS NOT NULL AND r.k_wh > 0 GROUP BY r.user_id, r.year, r.month",
+           nativeQuery = true)
+    List<Object[]> sumWhByUserAndMonth();
+
+    @Query(value = "SELECT u.id, u.full_name FROM user u WHERE u.id IN (:ids)", nativeQuery = true)
+    List<Object[]> findDisplayNames(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,12 @@
+package com.sunyield.backend.repository;
+
+import com.sunyield.backend.entity.ProjectBroadcast;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface ProjectBroadcastRepository extends JpaRepository<ProjectBroadcast, Long> {
+    List<ProjectBroadcast> findTop50ByOrderByIdDesc();
+
+    List<ProjectBroadcast> findTop50ByProjectIdOrderByIdDesc(Long projectId);
+}
@@ -0,0 +1,86 @@
+package com.sunyield.backend.repository;
+
+import com.sunyield.backend.entity.ProjectGeneration;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ProjectGenerationRepository extends JpaRepository<ProjectGeneration, Long> {
+
+    List<ProjectGeneration> findByProjectIdAndGranularityAndPeriodStartBetweenOrderByPeriodStartAsc(
+            Long projectId, ProjectGeneration.Granularity granularity, LocalDateTime from, LocalDateTime to);
+
+    List<ProjectGeneration> findTop30ByProjectIdAndGranularityAndPeriodStartLessThanEqualOrderByPeriodStartDesc(
+            Long projectId, ProjectGeneration.Granularity granularity, LocalDateTime before);
+
+    long countByProjectIdAndGranularityAndPeriodStartBetween(
+            Long projectId, ProjectGeneration.Granularity granularity, LocalDateTime from, LocalDateTime to);
+
+    // Adds a reading to its bucket in a single statement, creating the bucket on first use
+    @Modifying
+    @Query(value = "INSERT INTO project_generation (project_id, granularity, period_start, kwh, sample_count) " +
+                   "VALUES (:projectId, :granularity, :periodStart, :kwh, 1) " +
+                   "ON DUPLICATE KEY UPDATE kwh = kwh + VALUES(kwh), sample_count = sample_count + 1",
+           nativeQuery = true)
+    int addToBucket(@Param("projectId") Long projectId,
+                    @Param("granularity") String granularity,
+                    @Param("periodStart") LocalDateTime periodStart,
+                    @Param("kwh") double kwh);
+
+    @Modifying
+    @Query(value = "DELETE FROM project_generation WHERE project_id = :projectId AND granularity IN ('DAY', 'WEEK', 'MONTH')",
+           nativeQuery = true)
+    int deleteDailyRollups(@Param("projectId") Long projectId);
+
+    // Daily totals of the project's hourly telemetry
+    @Modifying
+    @Query(value = "INSERT INTO project_generation (project_id, granularity, period_start, kwh, sample_count) " +
+                   "SELECT project_id, 'DAY', DATE(period_start), SUM(kwh), SUM(sample_count) " +
+                   "FROM project_generation WHERE project_id = :projectId AND granularity = 'HOUR' " +
+                   "GROUP BY project_id, DATE(period_start)",
+           nativeQuery = true)
+    int rebuildDaysFromHours(@Param("projectId") Long projectId);
+
+    // One project-level reading per distributed date, added into the series at the granularity it
+    // was entered at: admin add-energy readings (reason "Energy production reward for ...") are daily,
+    // /api/energy/record readings are monthly. Every row of a distribution carries the project reading
+    // in project_kwh, whatever its status. Older rows do not; for those the reading is the sum of the
+    // subscribers' shares (daily) or the per-row kWh, which /record set to the project total (monthly).
+    @Modifying
+    @Query(value = "INSERT INTO project_generation (project_id, granularity, period_start, kwh, sample_count) " +
+                   "SELECT t.project_id, t.granularity, t.period_start, " +
+                   "       COALESCE(MAX(t.project_kwh), IF(t.granularity = 'DAY', SUM(t.k_wh), MAX(t.k_wh))), 1 " +
+                   "FROM (SELECT r.project_id, r.k_wh, r.project_kwh, " +
+                   "             IF(r.reason LIKE 'Energy production reward for %', 'DAY', 'MONTH') AS granularity, " +
+                   "             COALESCE(r.date, STR_TO_DATE(CONCAT(r.year, '-', r.month, '-01'), '%Y-%m-%d')) AS period_start " +
+                   "      FROM reward_history r WHERE r.project_id = :projectId) t " +
+                   "WHERE t.granularity = :granularity " +
+                   "GROUP BY t.project_id, t.granularity, t.period_start " +
+                   "ON DUPLICATE KEY UPDATE kwh = kwh + VALUES(kwh), sample_count = sample_count + VALUES(sample_count)",
+           nativeQuery = true)
+    int addReadingsFromRewards(@Param("projectId") Long projectId, @Param("granularity") String granularity);
+
+    @Modifying
+    @Query(value = "INSERT INTO project_generation (project_id, granularity, period_start, kwh, sample_count) " +
+                   "SELECT project_id, 'WEEK', DATE_SUB(DATE(period_start), INTERVAL WEEKDAY(period_start) DAY), " +
+                   "       SUM(kwh), SUM(sample_count) " +
+                   "FROM project_generation WHERE project_id = :projectId AND granularity = 'DAY' " +
+                   "GROUP BY project_id, DATE_SUB(DATE(period_start), INTERVAL WEEKDAY(period_start) DAY)",
+           nativeQuery = true)
+    int rebuildWeeksFromDays(@Param("projectId") Long projectId);
+
+    // Monthly readings are added on top with addReadingsFromRewards(projectId, "MONTH")
+    @Modifying
+    @Query(value = "INSERT INTO project_generation (project_id, granularity, period_start, kwh, sample_count) " +
+                   "SELECT project_id, 'MONTH', DATE_FORMAT(period_start, '%Y-%m-01'), SUM(kwh), SUM(sample_count) " +
+                   "FROM project_generation WHERE project_id = :projectId AND granularity = 'DAY' " +
+                   "GROUP BY project_id, DATE_FORMAT(period_start, '%Y-%m-01')",
+           nativeQuery = true)
+    int rebuildMonthsFromDays(@Param("projectId") Long projectId);
+}
@@ -0,0 +1,48 @@
+package com.sunyield.backend.repository;
+
+import com.sunyield.backend.entity.ProjectGreenCredits;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ProjectGreenCreditsRepository extends JpaRepository<ProjectGreenCredits, Long> {
+    Optional<ProjectGreenCredits> findByProjectId(Long projectId);
+
+    @Modifying
+    @Query(value = "INSERT INTO project_green_credits (project_id, total_kwh, green_credits, co2_avoided_tonnes, reward_count, updated_at) " +
+                   "VALUES (:projectId, :kwh, :credits, :co2, :rewards, NOW()) " +
+                   "ON DUPLICATE KEY UPDATE total_kwh = total_kwh + VALUES(total_kwh), " +
+                   "green_credits = green_credits + VALUES(green_credits), " +
+                   "co2_avoided_tonnes = co2_avoided_tonnes + VALUES(co2_avoided_tonnes), " +
+                   "reward_count = reward_count + VALUES(reward_count), updated_at = NOW()",
+           nativeQuery = true)
+    int addImpact(@Param("projectId") Long projectId,
+                  @Param("kwh") double kwh,
+                  @Param("credits") double credits,
+                  @Param("co2") double co2,
+                  @Param("rewards") long rewards);
+
+    // Platform totals: one row per project, so this stays cheap regardless of reward volume
+    @Query(value = "SELECT COALESCE(SUM(total_kwh), 0), COALESCE(SUM(green_credits), 0), " +
+                   "COALESCE(SUM(co2_avoided_tonnes), 0), COUNT(*) FROM project_green_credits",
+           nativeQuery = true)
+    List<Object[]> sumTotals();
+
+    @Modifying
+    @Query(value = "DELETE FROM project_green_credits", nativeQuery = true)
+    int deleteAllRows();
+
+    @Modifying
+    @Query(value = "INSERT INTO project_green_credits (project_id, total_kwh, green_credits, co2_avoided_tonnes, reward_count, updated_at) " +
+                   "SELECT r.project_id, SUM(r.k_wh), SUM(r.k_wh) / :kwhPerCredit, SUM(r.k_wh) * :co2TonnesPerKwh, COUNT(*), NOW() " +
+                   "FROM reward_history r WHERE r.project_id IS NOT NULL AND r.k_wh > 0 GROUP BY r.project_id",
+           nativeQuery = true)
+    int rebuildFromRewards(@Param("kwhPerCredit") double kwhPerCredit,
+                           @Param("co2TonnesPerKwh") double co2TonnesPerKwh);
+}
@@ -6,10 +6,13 @@ import com.sunyield.backend.entity.Project;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @Repository
 public interface RewardHistoryRepository extends JpaRepository<RewardHistory, Long> {
     List<RewardHistory> findByUser(User user);
     List<RewardHistory> findByProjectAndMonthAndYear(Project project, int month, int year);
+    // Served by idx_reward_history_project_date
+    boolean existsByProjectAndDate(Project project, LocalDate date);
 } 
\ No newline at end of file
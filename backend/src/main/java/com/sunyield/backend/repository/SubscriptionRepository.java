@@ -3,14 +3,27 @@ package com.sunyield.backend.repository;
 import com.sunyield.backend.entity.Subscription;
 import com.sunyield.backend.entity.User;
 import com.sunyield.backend.entity.Project;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface SubscriptionRepository extends JpaRepository<Subscription, Long> {
     List<Subscription> findByUser(User user);
     List<Subscription> findByProject(Project project);
     List<Subscription> findByPaymentStatus(String paymentStatus);
+    boolean existsByUserIdAndProjectIdAndPaymentStatus(Long userId, Long projectId, String paymentStatus);
+    // Gateway callbacks find their subscription through idx_subscription_payment_order
+    Optional<Subscription> findByPaymentOrderId(String paymentOrderId);
+
+    // Same lookup with the row locked, so a webhook and the pending-order expiry cannot both move its capacity
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM Subscription s WHERE s.paymentOrderId = :paymentOrderId")
+    Optional<Subscription> lockByPaymentOrderId(@Param("paymentOrderId") String paymentOrderId);
 } 
\ No newline at end of file
@@ -13,4 +13,7 @@ public interface WithdrawalRequestRepository extends JpaRepository<WithdrawalReq
     List<WithdrawalRequest> findByStatus(String status);
     long countByStatus(String status);
     List<WithdrawalRequest> findByPaymentReferenceId(String paymentReferenceId);
+    List<WithdrawalRequest> findByUserIdAndStatusInAndRequestDateBetween(Long userId, java.util.Collection<String> statuses, java.time.LocalDateTime start, java.time.LocalDateTime end);
+    List<WithdrawalRequest> findByPayoutBatchId(String payoutBatchId);
+    List<WithdrawalRequest> findByIdIn(java.util.Collection<Long> ids);
 } 
\ No newline at end of file
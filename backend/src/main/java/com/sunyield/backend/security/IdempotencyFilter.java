@@ -0,0 +1,194 @@
+package com.sunyield.backend.security;
+
+import com.sunyield.backend.entity.IdempotencyRecord;
+import com.sunyield.backend.entity.User;
+import com.sunyield.backend.service.IdempotencyService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Handles the Idempotency-Key header on idempotent routes (see RouteRegistry). The first request
+// with a key executes normally and its response is stored; retries with the same key and body get
+// that response back without touching the controller. Keys are scoped to the authenticated user.
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+    @Autowired
+    private RouteRegistry routeRegistry;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String key = request.getHeader(IDEMPOTENCY_KEY_HEADER);
+        Long userId = currentUserId();
+        if (key == null || key.isBlank() || userId == null || !"POST".equalsIgnoreCase(request.getMethod())
+                || !routeRegistry.resolve(request.getRequestURI()).isIdempotent()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.setContentType("text/plain;charset=UTF-8");
+            response.getWriter().write(IDEMPOTENCY_KEY_HEADER + " must be at most " + MAX_KEY_LENGTH + " characters");
+            return;
+        }
+
+        CachedBodyRequest cachedRequest = new CachedBodyRequest(request);
+        String recordKey = userId + ":" + key.trim();
+        String requestHash = requestHash(cachedRequest);
+
+        IdempotencyService.Begin begin = idempotencyService.begin(recordKey, requestHash);
+        switch (begin.getOutcome()) {
+            case REPLAY:
+                replay(begin.getRecord(), response);
+                return;
+            case IN_PROGRESS:
+                response.setStatus(HttpServletResponse.SC_CONFLICT);
+                response.setHeader("Retry-After", "1");
+                response.setContentType("text/plain;charset=UTF-8");
+                response.getWriter().write("A request with this " + IDEMPOTENCY_KEY_HEADER + " is still being processed");
+                return;
+            case MISMATCH:
+                response.setStatus(422);
+                response.setContentType("text/plain;charset=UTF-8");
+                response.getWriter().write(IDEMPOTENCY_KEY_HEADER + " was already used for a different request");
+                return;
+            default:
+                break;
+        }
+
+        ContentCachingResponseWrapper cachedResponse = new ContentCachingResponseWrapper(response);
+        try {
+            chain.doFilter(cachedRequest, cachedResponse);
+        } catch (IOException | ServletException | RuntimeException e) {
+            idempotencyService.release(recordKey);
+            throw e;
+        }
+        idempotencyService.complete(recordKey, requestHash, cachedResponse.getStatus(), cachedResponse.getContentType(),
+                new String(cachedResponse.getContentAsByteArray(), StandardCharsets.UTF_8));
+        cachedResponse.copyBodyToResponse();
+    }
+
+    private void replay(IdempotencyRecord record, HttpServletResponse response) throws IOException {
+        response.setStatus(record.getResponseStatus());
+        response.setHeader(REPLAYED_HEADER, "true");
+        if (record.getContentType() != null) {
+            response.setContentType(record.getContentType());
+        }
+        if (record.getResponseBody() != null) {
+            byte[] body = record.getResponseBody().getBytes(StandardCharsets.UTF_8);
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+
+    private String requestHash(CachedBodyRequest request) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(request.getMethod().getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) '\n');
+            sha256.update(request.getRequestURI().getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) '\n');
+            // Query string and form parameters, in a stable order
+            for (Map.Entry<String, String[]> param : new TreeMap<>(request.getParameterMap()).entrySet()) {
+                sha256.update(param.getKey().getBytes(StandardCharsets.UTF_8));
+                sha256.update((byte) '=');
+                sha256.update(String.join(",", param.getValue()).getBytes(StandardCharsets.UTF_8));
+                sha256.update((byte) '&');
+            }
+            sha256.update((byte) '\n');
+            sha256.update(request.body);
+            return HexFormat.of().formatHex(sha256.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private Long currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof User) {
+            return ((User) authentication.getPrincipal()).getId();
+        }
+        return null;
+    }
+
+    // Reads the body once so it can be hashed and still be parsed by the controller
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request) throws IOException {
+            super(request);
+            // Parse form parameters before the stream is drained, or they would be lost
+            request.getParameterMap();
+            this.body = StreamUtils.copyToByteArray(request.getInputStream());
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() { return in.available() == 0; }
+
+                @Override
+                public boolean isReady() { return true; }
+
+                // The whole body is already in memory, so it is all available at once
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    try {
+                        if (!isFinished()) {
+                            listener.onDataAvailable();
+                        }
+                        if (isFinished()) {
+                            listener.onAllDataRead();
+                        }
+                    } catch (IOException e) {
+                        listener.onError(e);
+                    }
+                }
+
+                @Override
+                public int read() { return in.read(); }
+
+                @Override
+                public int read(byte[] b, int off, int len) { return in.read(b, off, len); }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding() != null ? getCharacterEncoding() : StandardCharsets.UTF_8.name();
+            return new BufferedReader(new InputStreamReader(getInputStream(), Charset.forName(encoding)));
+        }
+    }
+}
@@ -25,6 +25,12 @@ public class JwtFilter extends OncePerRequestFilter {
     private JwtUtil jwtUtil;
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private TokenVersionRegistry tokenVersionRegistry;
+    @Autowired
+    private RouteRegistry routeRegistry;
+
+    public static final String REFRESHED_TOKEN_HEADER = "X-Refreshed-Token";
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
@@ -38,35 +44,19 @@ public class JwtFilter extends OncePerRequestFilter {
         }
         
         // Skip JWT filter for public endpoints
-        if (isPublicEndpoint(requestURI)) {
+        if (routeRegistry.classify(requestURI) == RouteRegistry.Access.PUBLIC) {
             chain.doFilter(request, response);
             return;
         }
         
         String authHeader = request.getHeader("Authorization");
-        String token = null;
-        String email = null;
 
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            token = authHeader.substring(7);
+        if (authHeader != null && authHeader.startsWith("Bearer ") && SecurityContextHolder.getContext().getAuthentication() == null) {
             try {
-                email = jwtUtil.extractEmail(token);
-            } catch (Exception e) {
-                System.err.println("[ERROR] Failed to extract email from token: " + e.getMessage());
-                chain.doFilter(request, response);
-                return;
-            }
-        }
-
-        if (email != null && !email.equals("anonymousUser") && SecurityContextHolder.getContext().getAuthentication() == null) {
-            try {
-                Optional<User> userOpt = userRepository.findByEmail(email);
-                boolean tokenValid = jwtUtil.validateToken(token);
-                
-                if (userOpt.isPresent() && tokenValid) {
-                    User user = userOpt.get();
+                User principal = resolvePrincipal(authHeader.substring(7), response);
+                if (principal != null) {
                     UsernamePasswordAuthenticationToken authToken =
-                            new UsernamePasswordAuthenticationToken(user, null, Collections.emptyList());
+                            new UsernamePasswordAuthenticationToken(principal, null, Collections.emptyList());
                     authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                     SecurityContextHolder.getContext().setAuthentication(authToken);
                 }
@@ -79,19 +69,39 @@ public class JwtFilter extends OncePerRequestFilter {
         chain.doFilter(request, response);
     }
     
-    private boolean isPublicEndpoint(String requestURI) {
-        boolean isPublic = requestURI.startsWith("/auth/") || 
-               requestURI.startsWith("/admin/login") ||
-               requestURI.startsWith("/admin/generate-hash") ||
-               requestURI.startsWith("/admin/test-auth") ||
-               requestURI.startsWith("/swagger-ui/") ||
-               requestURI.startsWith("/v3/api-docs") ||
-               requestURI.equals("/swagger-ui.html") ||
-               requestURI.equals("/api/energy/record") ||
-               requestURI.startsWith("/api/projects/") ||
-               requestURI.startsWith("/test/");
-        
-        System.out.println("[DEBUG] Checking URI: " + requestURI + " - Is public: " + isPublic);
-        return isPublic;
+    // The token is parsed once (or served from the verified-token cache). Current tokens become the
+    // principal straight from their claims; only legacy tokens without a user id and tokens behind
+    // the user's token version go to the database, and the latter get a fresh token in X-Refreshed-Token.
+    private User resolvePrincipal(String token, HttpServletResponse response) {
+        JwtUtil.TokenClaims claims = jwtUtil.verify(token);
+        if (claims == null) {
+            return null;
+        }
+
+        if (claims.isLegacy()) {
+            Optional<User> userOpt = userRepository.findByEmail(claims.getEmail());
+            if (userOpt.isEmpty()) {
+                return null;
+            }
+            response.setHeader(REFRESHED_TOKEN_HEADER, jwtUtil.generateToken(userOpt.get()));
+            return userOpt.get();
+        }
+
+        int currentVersion = tokenVersionRegistry.currentVersion(claims.getUserId());
+        if (currentVersion == TokenVersionRegistry.REVOKED) {
+            return null;
+        }
+        if (claims.getTokenVersion() == currentVersion) {
+            return claims.toPrincipal();
+        }
+
+        // Role or KYC changed since the token was issued: trust the database, not the claims
+        Optional<User> userOpt = userRepository.findById(claims.getUserId());
+        if (userOpt.isEmpty()) {
+            tokenVersionRegistry.revoke(claims.getUserId());
+            return null;
+        }
+        response.setHeader(REFRESHED_TOKEN_HEADER, jwtUtil.generateToken(userOpt.get()));
+        return userOpt.get();
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,96 @@
+package com.sunyield.backend.security;
+
+import com.sunyield.backend.entity.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Applies the route's rate-limit class to state-changing requests. Runs after JwtFilter so money
+// endpoints can be limited per user as well as per client IP. Rejections answer 429 with Retry-After.
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private RateLimiter rateLimiter;
+    @Autowired
+    private RouteRegistry routeRegistry;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String method = request.getMethod();
+        if (!rateLimiter.isEnabled() || "GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method)
+                || "OPTIONS".equalsIgnoreCase(method)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        RouteRegistry.RateLimitClass rateLimitClass = routeRegistry.resolve(request.getRequestURI()).getRateLimit();
+        if (rateLimitClass == RouteRegistry.RateLimitClass.NONE) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        long waitNanos = rateLimiter.tryAcquire(rateLimitClass, RateLimiter.Scope.IP, clientIp(request));
+        RateLimiter.Scope limitedBy = RateLimiter.Scope.IP;
+        if (waitNanos == 0L) {
+            Long userId = currentUserId();
+            if (userId != null) {
+                waitNanos = rateLimiter.tryAcquire(rateLimitClass, RateLimiter.Scope.USER, userId.toString());
+                limitedBy = RateLimiter.Scope.USER;
+            }
+        }
+        if (waitNanos == 0L) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        Counter.builder("rate.limit.rejected")
+                .tag("class", rateLimitClass.name())
+                .tag("scope", limitedBy.name())
+                .description("Requests refused by the token-bucket rate limiter")
+                .register(meterRegistry)
+                .increment();
+
+        long retryAfterSeconds = Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        response.setStatus(429);
+        response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getWriter().write("Too many requests. Please try again in " + retryAfterSeconds + " seconds.");
+    }
+
+    // nginx (see deploy-combined.sh) proxies from the same host and sets X-Real-IP to the peer address.
+    // The header is only trusted when the connection itself comes from loopback, so clients
+    // hitting the backend port directly cannot pick their own bucket.
+    private String clientIp(HttpServletRequest request) {
+        String remoteAddr = request.getRemoteAddr();
+        if ("127.0.0.1".equals(remoteAddr) || "0:0:0:0:0:0:0:1".equals(remoteAddr) || "::1".equals(remoteAddr)) {
+            String realIp = request.getHeader("X-Real-IP");
+            if (realIp != null && !realIp.isBlank()) {
+                return realIp.trim();
+            }
+        }
+        return remoteAddr;
+    }
+
+    private Long currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof User) {
+            return ((User) authentication.getPrincipal()).getId();
+        }
+        return null;
+    }
+}
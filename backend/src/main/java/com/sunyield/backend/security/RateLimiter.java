@@ -0,0 +1,137 @@
+package com.sunyield.backend.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Lock-free token buckets, one per (rate-limit class, scope, key). Each bucket is a single
+// AtomicLong holding its "theoretical arrival time" (GCRA): a request is admitted when that time
+// is no more than one burst ahead of now, and admitting it pushes the time forward by one
+// emission interval with a CAS. Buckets live in striped maps so a sweep or a hot key only
+// touches one stripe, and buckets that have fully refilled are dropped by the idle sweep.
+@Component
+public class RateLimiter {
+
+    public enum Scope {
+        IP,
+        USER
+    }
+
+    private static class Limit {
+        private final long intervalNanos;
+        private final long burstNanos;
+
+        Limit(int perMinute, int burst) {
+            this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / Math.max(1, perMinute);
+            this.burstNanos = intervalNanos * Math.max(1, burst);
+        }
+    }
+
+    private static final int STRIPES = 16;
+
+    @Value("${rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rate-limit.auth.ip-per-minute:20}")
+    private int authIpPerMinute;
+
+    @Value("${rate-limit.auth.ip-burst:10}")
+    private int authIpBurst;
+
+    @Value("${rate-limit.otp.ip-per-minute:6}")
+    private int otpIpPerMinute;
+
+    @Value("${rate-limit.otp.ip-burst:3}")
+    private int otpIpBurst;
+
+    @Value("${rate-limit.money.ip-per-minute:60}")
+    private int moneyIpPerMinute;
+
+    @Value("${rate-limit.money.ip-burst:20}")
+    private int moneyIpBurst;
+
+    @Value("${rate-limit.money.user-per-minute:20}")
+    private int moneyUserPerMinute;
+
+    @Value("${rate-limit.money.user-burst:5}")
+    private int moneyUserBurst;
+
+    // Buckets untouched for this long are full again and can be forgotten
+    @Value("${rate-limit.idle-evict-ms:600000}")
+    private long idleEvictMs;
+
+    private final Map<RouteRegistry.RateLimitClass, Limit> ipLimits = new EnumMap<>(RouteRegistry.RateLimitClass.class);
+    private final Map<RouteRegistry.RateLimitClass, Limit> userLimits = new EnumMap<>(RouteRegistry.RateLimitClass.class);
+
+    private final List<ConcurrentHashMap<String, AtomicLong>> stripes = new ArrayList<>(STRIPES);
+
+    @PostConstruct
+    public void init() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new ConcurrentHashMap<>());
+        }
+        ipLimits.put(RouteRegistry.RateLimitClass.AUTH, new Limit(authIpPerMinute, authIpBurst));
+        ipLimits.put(RouteRegistry.RateLimitClass.OTP, new Limit(otpIpPerMinute, otpIpBurst));
+        ipLimits.put(RouteRegistry.RateLimitClass.MONEY, new Limit(moneyIpPerMinute, moneyIpBurst));
+        userLimits.put(RouteRegistry.RateLimitClass.MONEY, new Limit(moneyUserPerMinute, moneyUserBurst));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Returns 0 when the request is admitted, otherwise the number of nanoseconds until it would be
+    public long tryAcquire(RouteRegistry.RateLimitClass rateLimitClass, Scope scope, String key) {
+        Limit limit = (scope == Scope.IP ? ipLimits : userLimits).get(rateLimitClass);
+        if (!enabled || limit == null || key == null) {
+            return 0L;
+        }
+        String bucketKey = rateLimitClass.name() + ':' + scope.name() + ':' + key;
+        AtomicLong bucket = stripeFor(bucketKey).computeIfAbsent(bucketKey, k -> new AtomicLong(System.nanoTime()));
+
+        while (true) {
+            long now = System.nanoTime();
+            long tat = bucket.get();
+            long start = tat - now < 0 ? now : tat;
+            long next = start + limit.intervalNanos;
+            if (next - now > limit.burstNanos) {
+                return next - now - limit.burstNanos;
+            }
+            if (bucket.compareAndSet(tat, next)) {
+                return 0L;
+            }
+        }
+    }
+
+    public int bucketCount() {
+        int count = 0;
+        for (ConcurrentHashMap<String, AtomicLong> stripe : stripes) {
+            count += stripe.size();
+        }
+        return count;
+    }
+
+    @Scheduled(fixedDelayString = "${rate-limit.sweep-interval-ms:60000}")
+    public void evictIdle() {
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleEvictMs);
+        for (ConcurrentHashMap<String, AtomicLong> stripe : stripes) {
+            // A bucket whose arrival time is far in the past holds a full burst, so dropping it
+            // is indistinguishable from keeping it. A concurrent hit re-creates it.
+            stripe.entrySet().removeIf(entry -> entry.getValue().get() - cutoff < 0);
+        }
+    }
+
+    private ConcurrentHashMap<String, AtomicLong> stripeFor(String key) {
+        int h = key.hashCode();
+        return stripes.get((h ^ (h >>> 16)) & (STRIPES - 1));
+    }
+}
@@ -0,0 +1,163 @@
+package com.sunyield.backend.security;
+
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Single source of truth for how each URI is treated by SecurityConfig and JwtFilter.
+// Each route carries its access level, rate-limit class and whether it accepts Idempotency-Key.
+// Patterns are either exact paths ("/admin/login") or subtrees ("/api/auth/**"). They are compiled
+// once into a trie of path segments, so classifying a URI is one walk over its segments; the most
+// specific match wins and anything unlisted is AUTHENTICATED.
+@Component
+public class RouteRegistry {
+
+    public enum Access {
+        // No authentication: the JWT filter is skipped entirely
+        PUBLIC,
+        // Anonymous access allowed, but a bearer token is still resolved into a principal if present
+        OPTIONAL_AUTH,
+        // Requires a valid token (default)
+        AUTHENTICATED;
+
+        public boolean permitsAnonymous() {
+            return this != AUTHENTICATED;
+        }
+    }
+
+    // Rate-limit bucket family applied to state-changing requests on the route
+    public enum RateLimitClass {
+        NONE,
+        // Password checks (BCrypt)
+        AUTH,
+        // Endpoints that send email or verify one-time codes
+        OTP,
+        // Wallet, withdrawal, subscription and engagement mutations
+        MONEY
+    }
+
+    public static class Route {
+        private final String pattern;
+        private final Access access;
+        private final RateLimitClass rateLimit;
+        // POSTs honour the Idempotency-Key header
+        private final boolean idempotent;
+
+        Route(String pattern, Access access) {
+            this(pattern, access, RateLimitClass.NONE);
+        }
+
+        Route(String pattern, Access access, RateLimitClass rateLimit) {
+            this(pattern, access, rateLimit, false);
+        }
+
+        Route(String pattern, Access access, RateLimitClass rateLimit, boolean idempotent) {
+            this.pattern = pattern;
+            this.access = access;
+            this.rateLimit = rateLimit;
+            this.idempotent = idempotent;
+        }
+
+        public String getPattern() { return pattern; }
+        public Access getAccess() { return access; }
+        public RateLimitClass getRateLimit() { return rateLimit; }
+        public boolean isIdempotent() { return idempotent; }
+    }
+
+    private static final Route DEFAULT_ROUTE = new Route("/**", Access.AUTHENTICATED);
+
+    private static final List<Route> ROUTES = List.of(
+            new Route("/auth/**", Access.PUBLIC),
+            new Route("/api/auth/**", Access.OPTIONAL_AUTH), // /api/auth/me and /debug/** read the principal
+            new Route("/api/auth/login", Access.OPTIONAL_AUTH, RateLimitClass.AUTH),
+            new Route("/api/auth/reset-password", Access.OPTIONAL_AUTH, RateLimitClass.AUTH),
+            new Route("/api/auth/register", Access.OPTIONAL_AUTH, RateLimitClass.OTP),
+            new Route("/api/auth/resend-otp", Access.OPTIONAL_AUTH, RateLimitClass.OTP),
+            new Route("/api/auth/forgot-password", Access.OPTIONAL_AUTH, RateLimitClass.OTP),
+            new Route("/api/auth/verify-otp", Access.OPTIONAL_AUTH, RateLimitClass.OTP),
+            new Route("/api/auth/verify-forgot-password-otp", Access.OPTIONAL_AUTH, RateLimitClass.OTP),
+            new Route("/admin/login", Access.PUBLIC, RateLimitClass.AUTH),
+            new Route("/admin/generate-hash", Access.PUBLIC),
+            new Route("/admin/test-auth", Access.OPTIONAL_AUTH),
+            new Route("/api/energy/record", Access.OPTIONAL_AUTH), // force=true needs an admin token
+            new Route("/api/projects/active", Access.PUBLIC),
+            new Route("/api/projects/debug", Access.PUBLIC),
+            new Route("/api/projects/test", Access.PUBLIC),
+            new Route("/api/projects/health", Access.PUBLIC),
+            new Route("/api/projects/images/**", Access.PUBLIC),
+            new Route("/swagger-ui.html", Access.PUBLIC),
+            new Route("/swagger-ui/**", Access.PUBLIC),
+            new Route("/v3/api-docs", Access.PUBLIC),
+            new Route("/v3/api-docs/**", Access.PUBLIC),
+            new Route("/api/wallet/add-funds/**", Access.AUTHENTICATED, RateLimitClass.MONEY, true),
+            new Route("/api/withdrawal/request", Access.AUTHENTICATED, RateLimitClass.MONEY, true),
+            new Route("/api/withdrawal/process-payout", Access.AUTHENTICATED, RateLimitClass.MONEY, true),
+            new Route("/api/subscriptions", Access.AUTHENTICATED, RateLimitClass.MONEY, true),
+            new Route("/api/subscriptions/create-payment-order", Access.AUTHENTICATED, RateLimitClass.MONEY, true),
+            new Route("/api/engagement/reinvest", Access.AUTHENTICATED, RateLimitClass.MONEY, true),
+            new Route("/api/engagement/donate", Access.AUTHENTICATED, RateLimitClass.MONEY, true),
+            new Route("/api/engagement/gift", Access.AUTHENTICATED, RateLimitClass.MONEY, true),
+            new Route("/api/engagement/gift/bulk", Access.AUTHENTICATED, RateLimitClass.MONEY, true)
+    );
+
+    private final Node root = new Node();
+
+    public RouteRegistry() {
+        for (Route route : ROUTES) {
+            register(route);
+        }
+    }
+
+    public Access classify(String uri) {
+        return resolve(uri).getAccess();
+    }
+
+    public Route resolve(String uri) {
+        Node node = root;
+        Route best = root.subtree != null ? root.subtree : DEFAULT_ROUTE;
+        int length = uri.length();
+        int start = uri.startsWith("/") ? 1 : 0;
+        while (start <= length) {
+            int end = uri.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                node = node.children.get(uri.substring(start, end));
+                if (node == null) {
+                    return best;
+                }
+                if (node.subtree != null) {
+                    best = node.subtree;
+                }
+            }
+            start = end + 1;
+        }
+        return node.exact != null ? node.exact : best;
+    }
+
+    private void register(Route route) {
+        String pattern = route.getPattern();
+        boolean subtree = pattern.endsWith("/**");
+        String path = subtree ? pattern.substring(0, pattern.length() - 3) : pattern;
+        Node node = root;
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                node = node.children.computeIfAbsent(segment, s -> new Node());
+            }
+        }
+        if (subtree) {
+            node.subtree = route;
+        } else {
+            node.exact = route;
+        }
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private Route exact;
+        private Route subtree;
+    }
+}
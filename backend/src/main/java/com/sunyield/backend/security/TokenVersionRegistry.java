@@ -0,0 +1,60 @@
+package com.sunyield.backend.security;
+
+import com.sunyield.backend.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-memory table of each user's current token version. A token whose "ver" claim is behind
+// the table was issued before a role/KYC/password change and must not be trusted as-is.
+// Entries are loaded lazily and expire after a TTL so bumps made on another node are picked up.
+@Component
+public class TokenVersionRegistry {
+
+    // Marker for users that no longer exist
+    public static final int REVOKED = -1;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${jwt.version-cache-ttl-ms:60000}")
+    private long ttlMs;
+
+    private final Map<Long, Entry> versions = new ConcurrentHashMap<>();
+
+    private static class Entry {
+        private final int version;
+        private final long loadedAt;
+
+        Entry(int version, long loadedAt) {
+            this.version = version;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    public int currentVersion(Long userId) {
+        long now = System.currentTimeMillis();
+        Entry entry = versions.get(userId);
+        if (entry == null || now - entry.loadedAt > ttlMs) {
+            Integer version = userRepository.findTokenVersionById(userId);
+            entry = new Entry(version != null ? version : REVOKED, now);
+            versions.put(userId, entry);
+        }
+        return entry.version;
+    }
+
+    // Invalidates every token issued so far for the user; their next request is re-checked against the DB
+    @Transactional
+    public void bump(Long userId) {
+        userRepository.incrementTokenVersion(userId);
+        versions.remove(userId);
+    }
+
+    public void revoke(Long userId) {
+        versions.put(userId, new Entry(REVOKED, System.currentTimeMillis()));
+    }
+}
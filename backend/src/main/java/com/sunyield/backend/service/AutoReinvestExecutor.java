@@ -0,0 +1,207 @@
+package com.sunyield.backend.service;
+
+import com.sunyield.backend.entity.AutoReinvestRule;
+import com.sunyield.backend.entity.Project;
+import com.sunyield.backend.repository.AutoReinvestRuleRepository;
+import com.sunyield.backend.repository.ProjectRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Executes every active auto-reinvest rule in keyset-paged chunks. Per chunk: one locking
+// wallet lookup, one project lookup, one batched INSERT of REINVEST rows and one batched
+// rule update, all in a single short transaction. Runs on its own thread, never a request thread.
+@Service
+public class AutoReinvestExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(AutoReinvestExecutor.class);
+
+    @Autowired
+    private AutoReinvestRuleRepository autoReinvestRuleRepository;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private LeaderboardService leaderboardService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${auto-reinvest.chunk-size:1000}")
+    private int chunkSize;
+
+    // Reinvestments below this amount are skipped rather than written as dust rows
+    @Value("${auto-reinvest.min-amount:1.00}")
+    private BigDecimal minAmount;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "auto-reinvest");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicBoolean rerunRequested = new AtomicBoolean(false);
+
+    // Called after each reward run. Requests arriving while a pass is in progress
+    // collapse into a single follow-up pass.
+    public void requestRun() {
+        rerunRequested.set(true);
+        if (running.compareAndSet(false, true)) {
+            worker.submit(this::drain);
+        }
+    }
+
+    @Scheduled(cron = "${auto-reinvest.cron:0 30 2 * * *}")
+    public void scheduledRun() {
+        requestRun();
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private void drain() {
+        try {
+            while (rerunRequested.getAndSet(false)) {
+                runOnce();
+            }
+        } catch (Exception e) {
+            logger.error("Auto-reinvest pass failed: {}", e.getMessage(), e);
+        } finally {
+            running.set(false);
+            // A request may have arrived between the last check and clearing the flag
+            if (rerunRequested.get() && running.compareAndSet(false, true)) {
+                worker.submit(this::drain);
+            }
+        }
+    }
+
+    public Map<String, Object> runOnce() {
+        long started = System.currentTimeMillis();
+        long afterId = 0L;
+        int rulesSeen = 0;
+        int executed = 0;
+        BigDecimal totalReinvested = BigDecimal.ZERO;
+
+        while (true) {
+            List<AutoReinvestRule> chunk = autoReinvestRuleRepository
+                    .findByActiveTrueAndIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, chunkSize));
+            if (chunk.isEmpty()) {
+                break;
+            }
+            afterId = chunk.get(chunk.size() - 1).getId();
+            rulesSeen += chunk.size();
+
+            List<Object[]> executions = transactionTemplate.execute(status -> executeChunk(chunk));
+            for (Object[] execution : executions) {
+                AutoReinvestRule rule = (AutoReinvestRule) execution[0];
+                BigDecimal amount = (BigDecimal) execution[1];
+                leaderboardService.recordTransfer(LeaderboardService.Board.REINVEST, rule.getUserId(), amount, LocalDateTime.now());
+                totalReinvested = totalReinvested.add(amount);
+            }
+            executed += executions.size();
+
+            if (chunk.size() < chunkSize) {
+                break;
+            }
+        }
+
+        long elapsed = System.currentTimeMillis() - started;
+        logger.info("Auto-reinvest pass: {} rules evaluated, {} executed, {} reinvested in {} ms",
+                rulesSeen, executed, totalReinvested, elapsed);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("rulesEvaluated", rulesSeen);
+        result.put("executed", executed);
+        result.put("totalReinvested", totalReinvested);
+        result.put("elapsedMs", elapsed);
+        return result;
+    }
+
+    // Returns {rule, amount} for every rule that produced a REINVEST row
+    private List<Object[]> executeChunk(List<AutoReinvestRule> chunk) {
+        Set<Long> userIds = new HashSet<>();
+        Set<Long> projectIds = new HashSet<>();
+        for (AutoReinvestRule rule : chunk) {
+            userIds.add(rule.getUserId());
+            projectIds.add(rule.getProjectId());
+        }
+        // Locking the wallets keeps a concurrent withdrawal or gift from spending the same balance
+        Map<Long, BigDecimal> balances = walletService.lockAccounts(userIds);
+        Map<Long, Project> projects = new HashMap<>();
+        for (Project project : projectRepository.findAllById(projectIds)) {
+            projects.put(project.getId(), project);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> executions = new ArrayList<>();
+        List<Object[]> logRows = new ArrayList<>();
+        List<Object[]> ruleRows = new ArrayList<>();
+        Map<Long, BigDecimal> deltas = new HashMap<>();
+        for (AutoReinvestRule rule : chunk) {
+            Project project = projects.get(rule.getProjectId());
+            if (project == null || !"ACTIVE".equalsIgnoreCase(project.getStatus())) {
+                continue;
+            }
+            BigDecimal excess = balances.getOrDefault(rule.getUserId(), BigDecimal.ZERO).subtract(rule.getThresholdAmount());
+            if (excess.signum() <= 0) {
+                continue;
+            }
+            BigDecimal amount = excess.multiply(BigDecimal.valueOf(rule.getReinvestPercent()))
+                    .divide(BigDecimal.valueOf(100), 2, RoundingMode.DOWN);
+            if (amount.compareTo(minAmount) < 0) {
+                continue;
+            }
+            logRows.add(new Object[] {
+                    rule.getUserId(), project.getId(), amount, "REINVEST", Timestamp.valueOf(now),
+                    "Auto-reinvested in project " + project.getName()
+            });
+            ruleRows.add(new Object[] { Timestamp.valueOf(now), amount, rule.getId() });
+            executions.add(new Object[] { rule, amount });
+            deltas.merge(rule.getUserId(), amount.negate(), BigDecimal::add);
+        }
+
+        if (!logRows.isEmpty()) {
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO credit_transfer_log (from_user_id, project_id, amount, type, date, notes) VALUES (?, ?, ?, ?, ?, ?)",
+                    logRows);
+            jdbcTemplate.batchUpdate(
+                    "UPDATE auto_reinvest_rule SET last_executed_at = ?, last_amount = ? WHERE id = ?",
+                    ruleRows);
+            walletService.applyDeltas(deltas);
+        }
+        return executions;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdown();
+    }
+}
@@ -0,0 +1,442 @@
+package com.sunyield.backend.service;
+
+import com.sunyield.backend.entity.CreditCampaign;
+import com.sunyield.backend.entity.CreditTransferLog;
+import com.sunyield.backend.repository.CreditCampaignRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Bulk ADMIN_CREDIT campaigns. Recipients (a list, a CSV upload or a selector) are first staged in
+// credit_campaign_entry with JDBC batches, then validated against the user table with one joined
+// UPDATE. A single worker credits the valid entries in keyset chunks of campaign.chunk-size: per
+// chunk one transaction locks the wallets, writes the ADMIN_CREDIT rows with one batch, moves each
+// wallet once and marks the entries CREDITED. After its commit the chunk is handed to a separate
+// notifier thread, which feeds the emails to the rate-limited NotificationChannelPool, so crediting
+// never waits on SMTP. Only delivered emails move an entry to NOTIFIED; failed ones stay CREDITED,
+// are counted in notifications_failed and are retried when the campaign is resumed.
+//
+// Ledger rows carry ADMIN_CREDIT:<entry id>, so a campaign resumed after a crash cannot credit an
+// entry twice.
+@Service
+public class BulkCreditService {
+    private static final Logger logger = LoggerFactory.getLogger(BulkCreditService.class);
+
+    public static final String SELECTOR_ALL_KYC_APPROVED = "ALL_KYC_APPROVED";
+
+    @Autowired
+    private CreditCampaignRepository creditCampaignRepository;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private NotificationChannelPool notificationChannelPool;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${campaign.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${campaign.max-entries:200000}")
+    private int maxEntries;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "credit-campaign");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Only renders and queues; the sends themselves run on the NotificationChannelPool
+    private final ExecutorService notifier = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "credit-campaign-notify");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+        notifier.shutdownNow();
+    }
+
+    // ---- submission: stage, then hand over to the worker ----
+
+    // entries: [{"userId": 7, "amount": 100}, {"email": "a@example.com"}]; a missing amount uses defaultAmount
+    public CreditCampaign submitList(List<Map<String, Object>> entries, BigDecimal defaultAmount, String notes) {
+        if (entries.size() > maxEntries) {
+            throw new IllegalArgumentException("At most " + maxEntries + " entries per campaign");
+        }
+        CreditCampaign campaign = create("LIST", notes);
+        List<Object[]> batch = new ArrayList<>(chunkSize);
+        int line = 0;
+        for (Map<String, Object> entry : entries) {
+            line++;
+            Object user = entry.get("userId") != null ? entry.get("userId") : entry.get("email");
+            Object amount = entry.get("amount");
+            batch.add(stagedRow(campaign.getId(), line, user != null ? user.toString() : null,
+                    amount != null ? amount.toString() : null, defaultAmount));
+            if (batch.size() == chunkSize) {
+                stage(batch);
+            }
+        }
+        stage(batch);
+        return enqueue(campaign);
+    }
+
+    // CSV lines of "user,amount" where user is an id or an email; an optional header line is skipped
+    // and a missing amount uses defaultAmount. Read and staged in chunks, never held in memory whole.
+    public CreditCampaign submitCsv(InputStream csv, BigDecimal defaultAmount, String notes) throws IOException {
+        CreditCampaign campaign = create("CSV", notes);
+        List<Object[]> batch = new ArrayList<>(chunkSize);
+        int line = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8))) {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                String[] columns = text.split(",", -1);
+                String user = columns[0].trim();
+                String amount = columns.length > 1 ? columns[1].trim() : "";
+                if (line == 1 && parseAmount(amount, null) == null && !user.matches("\\d+") && !user.contains("@")) {
+                    continue;
+                }
+                if (line > maxEntries + 1) {
+                    reject(campaign, "More than " + maxEntries + " entries");
+                    throw new IllegalArgumentException("At most " + maxEntries + " entries per campaign");
+                }
+                batch.add(stagedRow(campaign.getId(), line, user, amount, defaultAmount));
+                if (batch.size() == chunkSize) {
+                    stage(batch);
+                }
+            }
+        } catch (IOException e) {
+            reject(campaign, "Upload could not be read: " + e.getMessage());
+            throw e;
+        }
+        stage(batch);
+        return enqueue(campaign);
+    }
+
+    // Every user matched by the selector gets the same amount; staged with one INSERT ... SELECT
+    public CreditCampaign submitSelector(String selector, BigDecimal amount, String notes) {
+        if (!SELECTOR_ALL_KYC_APPROVED.equals(selector)) {
+            throw new IllegalArgumentException("Unknown selector: " + selector);
+        }
+        if (amount == null || amount.signum() <= 0) {
+            throw new IllegalArgumentException("amount must be positive");
+        }
+        CreditCampaign campaign = create(selector, notes);
+        jdbcTemplate.update(
+                "INSERT INTO credit_campaign_entry (campaign_id, user_id, email, amount, status) " +
+                "SELECT ?, id, email, ?, 'PENDING' FROM user WHERE kyc_status = 'APPROVED'",
+                campaign.getId(), amount);
+        return enqueue(campaign);
+    }
+
+    // Re-queues a campaign that failed or was interrupted by a restart; credited entries are not touched
+    public CreditCampaign resume(Long campaignId) {
+        CreditCampaign campaign = creditCampaignRepository.findById(campaignId)
+                .orElseThrow(() -> new IllegalArgumentException("Campaign not found"));
+        if (!"FAILED".equals(campaign.getStatus()) && !"RUNNING".equals(campaign.getStatus())) {
+            throw new IllegalStateException("Only FAILED or interrupted campaigns can be resumed, this one is " + campaign.getStatus());
+        }
+        return enqueue(campaign);
+    }
+
+    public CreditCampaign get(Long campaignId) {
+        return creditCampaignRepository.findById(campaignId).orElse(null);
+    }
+
+    public List<CreditCampaign> recent() {
+        return creditCampaignRepository.findTop50ByOrderByIdDesc();
+    }
+
+    // Rejected entries with their reasons, in submission order
+    public List<Map<String, Object>> invalidEntries(Long campaignId, int limit) {
+        return jdbcTemplate.queryForList(
+                "SELECT id, line_no AS lineNo, user_id AS userId, email, amount, error FROM credit_campaign_entry " +
+                "WHERE campaign_id = ? AND status = 'INVALID' ORDER BY id LIMIT ?",
+                campaignId, limit);
+    }
+
+    private CreditCampaign create(String source, String notes) {
+        CreditCampaign campaign = new CreditCampaign();
+        campaign.setSource(source);
+        campaign.setNotes(notes);
+        campaign.setStatus("STAGING");
+        campaign.setCreatedAt(LocalDateTime.now());
+        return creditCampaignRepository.save(campaign);
+    }
+
+    // Counters are only ever moved by the worker's UPDATEs, so the entity is not saved again here
+    private CreditCampaign enqueue(CreditCampaign campaign) {
+        jdbcTemplate.update("UPDATE credit_campaign SET status = 'QUEUED', error = NULL WHERE id = ?", campaign.getId());
+        campaign.setStatus("QUEUED");
+        campaign.setError(null);
+        worker.submit(() -> run(campaign.getId()));
+        return campaign;
+    }
+
+    // {campaign_id, line_no, user_id, email, amount, status, error}
+    private static Object[] stagedRow(Long campaignId, int line, String user, String amountText, BigDecimal defaultAmount) {
+        Long userId = null;
+        String email = null;
+        if (user != null && user.matches("\\d+")) {
+            userId = Long.valueOf(user);
+        } else if (user != null && !user.isBlank()) {
+            email = user.trim().toLowerCase();
+        }
+        BigDecimal amount = parseAmount(amountText, defaultAmount);
+        String error = null;
+        if (userId == null && email == null) {
+            error = "Missing user";
+        } else if (amount == null || amount.signum() <= 0 || amount.scale() > 2) {
+            error = "Invalid amount: " + amountText;
+        }
+        return new Object[] { campaignId, line, userId, email, error == null ? amount : null,
+                error == null ? "STAGED" : "INVALID", error };
+    }
+
+    private static BigDecimal parseAmount(String text, BigDecimal defaultAmount) {
+        if (text == null || text.isBlank()) {
+            return defaultAmount;
+        }
+        try {
+            return new BigDecimal(text.trim()).stripTrailingZeros();
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void stage(List<Object[]> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO credit_campaign_entry (campaign_id, line_no, user_id, email, amount, status, error) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                batch);
+        batch.clear();
+    }
+
+    // ---- worker ----
+
+    private void run(Long campaignId) {
+        CreditCampaign campaign = creditCampaignRepository.findById(campaignId).orElse(null);
+        if (campaign == null) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        try {
+            jdbcTemplate.update("UPDATE credit_campaign SET status = 'RUNNING', started_at = COALESCE(started_at, ?) WHERE id = ?",
+                    Timestamp.valueOf(LocalDateTime.now()), campaignId);
+            validate(campaignId);
+
+            // Entries credited before an interruption may not have been notified yet. Chunks are
+            // credited in id order, so they all sit below the next chunk and cannot be picked twice.
+            Long lastCredited = jdbcTemplate.queryForObject(
+                    "SELECT MAX(id) FROM credit_campaign_entry WHERE campaign_id = ? AND status = 'CREDITED'",
+                    Long.class, campaignId);
+            if (lastCredited != null) {
+                notifier.submit(() -> notifyRange(campaign, 0L, lastCredited));
+            }
+
+            long lastId = 0;
+            while (true) {
+                long afterId = lastId;
+                long[] range = transactionTemplate.execute(status -> creditChunk(campaign, afterId));
+                if (range == null) {
+                    break;
+                }
+                lastId = range[1];
+                notifier.submit(() -> notifyRange(campaign, range[0], range[1]));
+            }
+            jdbcTemplate.update("UPDATE credit_campaign SET status = 'COMPLETED', finished_at = ? WHERE id = ?",
+                    Timestamp.valueOf(LocalDateTime.now()), campaignId);
+            logger.info("Credit campaign {} credited in {} ms", campaignId, System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            logger.error("Credit campaign {} failed: {}", campaignId, e.getMessage(), e);
+            fail(campaign, e.getMessage());
+        }
+    }
+
+    // A submission refused while staging: nothing of it may ever be credited, so its staged entries
+    // are dropped and REJECTED is terminal (resume only accepts FAILED and RUNNING)
+    private void reject(CreditCampaign campaign, String error) {
+        jdbcTemplate.update("DELETE FROM credit_campaign_entry WHERE campaign_id = ?", campaign.getId());
+        jdbcTemplate.update("UPDATE credit_campaign SET status = 'REJECTED', error = ?, finished_at = ? WHERE id = ?",
+                error, Timestamp.valueOf(LocalDateTime.now()), campaign.getId());
+    }
+
+    private void fail(CreditCampaign campaign, String error) {
+        String message = error != null && error.length() > 500 ? error.substring(0, 500) : error;
+        jdbcTemplate.update("UPDATE credit_campaign SET status = 'FAILED', error = ?, finished_at = ? WHERE id = ?",
+                message, Timestamp.valueOf(LocalDateTime.now()), campaign.getId());
+    }
+
+    private void validate(Long campaignId) {
+        // Resolves ids and emails against the user table in one statement
+        jdbcTemplate.update(
+                "UPDATE credit_campaign_entry e " +
+                "LEFT JOIN user by_id ON by_id.id = e.user_id " +
+                "LEFT JOIN user by_email ON e.user_id IS NULL AND by_email.email = e.email " +
+                "SET e.status = IF(COALESCE(by_id.id, by_email.id) IS NULL, 'INVALID', 'PENDING'), " +
+                "    e.error = IF(COALESCE(by_id.id, by_email.id) IS NULL, 'Unknown user', NULL), " +
+                "    e.user_id = COALESCE(by_id.id, by_email.id, e.user_id) " +
+                "WHERE e.campaign_id = ? AND e.status = 'STAGED'",
+                campaignId);
+        // A user listed twice is credited once, for the first entry
+        jdbcTemplate.update(
+                "UPDATE credit_campaign_entry e " +
+                "JOIN (SELECT user_id, MIN(id) AS first_id FROM credit_campaign_entry " +
+                "      WHERE campaign_id = ? AND status IN ('PENDING', 'CREDITED', 'NOTIFIED') GROUP BY user_id HAVING COUNT(*) > 1) d " +
+                "  ON d.user_id = e.user_id " +
+                "SET e.status = 'INVALID', e.error = 'Duplicate user' " +
+                "WHERE e.campaign_id = ? AND e.status = 'PENDING' AND e.id <> d.first_id",
+                campaignId, campaignId);
+        jdbcTemplate.update(
+                "UPDATE credit_campaign c SET " +
+                "total_entries = (SELECT COUNT(*) FROM credit_campaign_entry WHERE campaign_id = c.id), " +
+                "invalid_entries = (SELECT COUNT(*) FROM credit_campaign_entry WHERE campaign_id = c.id AND status = 'INVALID') " +
+                "WHERE c.id = ?",
+                campaignId);
+    }
+
+    // Credits the next chunk of PENDING entries; returns its {first id, last id}, or null when done
+    private long[] creditChunk(CreditCampaign campaign, long afterId) {
+        List<Object[]> entries = jdbcTemplate.query(
+                "SELECT id, user_id, amount FROM credit_campaign_entry " +
+                "WHERE campaign_id = ? AND status = 'PENDING' AND id > ? ORDER BY id LIMIT ?",
+                (rs, i) -> new Object[] { rs.getLong(1), rs.getLong(2), rs.getBigDecimal(3) },
+                campaign.getId(), afterId, chunkSize);
+        if (entries.isEmpty()) {
+            return null;
+        }
+        Map<Long, BigDecimal> deltas = new HashMap<>();
+        for (Object[] entry : entries) {
+            deltas.merge((Long) entry[1], (BigDecimal) entry[2], BigDecimal::add);
+        }
+        walletService.lockAccounts(deltas.keySet());
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        String notes = campaign.getNotes() != null ? campaign.getNotes() : "Credit campaign #" + campaign.getId();
+        List<Object[]> logRows = new ArrayList<>(entries.size());
+        BigDecimal total = BigDecimal.ZERO;
+        for (Object[] entry : entries) {
+            logRows.add(new Object[] { entry[1], entry[2], now, notes, CreditTransferLog.reference("ADMIN_CREDIT", entry[0]) });
+            total = total.add((BigDecimal) entry[2]);
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO credit_transfer_log (to_user_id, amount, type, date, notes, external_reference) " +
+                "VALUES (?, ?, 'ADMIN_CREDIT', ?, ?, ?)",
+                logRows);
+        walletService.applyDeltas(deltas);
+
+        long firstId = (Long) entries.get(0)[0];
+        long lastId = (Long) entries.get(entries.size() - 1)[0];
+        jdbcTemplate.update(
+                "UPDATE credit_campaign_entry SET status = 'CREDITED' " +
+                "WHERE campaign_id = ? AND status = 'PENDING' AND id BETWEEN ? AND ?",
+                campaign.getId(), firstId, lastId);
+        jdbcTemplate.update(
+                "UPDATE credit_campaign SET credited_entries = credited_entries + ?, credited_amount = credited_amount + ? WHERE id = ?",
+                entries.size(), total, campaign.getId());
+        return new long[] { firstId, lastId };
+    }
+
+    // ---- notifications ----
+
+    private void notifyRange(CreditCampaign campaign, long fromId, long toId) {
+        try {
+            long afterId = fromId - 1;
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                        "SELECT e.id, e.amount, u.email, u.full_name FROM credit_campaign_entry e JOIN user u ON u.id = e.user_id " +
+                        "WHERE e.campaign_id = ? AND e.status = 'CREDITED' AND e.id > ? AND e.id <= ? ORDER BY e.id LIMIT ?",
+                        campaign.getId(), afterId, toId, chunkSize);
+                if (rows.isEmpty()) {
+                    return;
+                }
+                String date = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd MMM yyyy, HH:mm"));
+                Queue<Object[]> sent = new ConcurrentLinkedQueue<>();
+                AtomicInteger failed = new AtomicInteger();
+                CountDownLatch done = new CountDownLatch(rows.size());
+                for (Map<String, Object> row : rows) {
+                    Object id = row.get("id");
+                    notificationChannelPool.submit(NotificationChannelPool.Channel.EMAIL, (String) row.get("email"),
+                            "Funds Added to Your Wallet",
+                            creditEmail((String) row.get("full_name"), (BigDecimal) row.get("amount"), date, campaign.getNotes()),
+                            delivered -> {
+                                if (delivered) {
+                                    sent.add(new Object[] { id });
+                                } else {
+                                    failed.incrementAndGet();
+                                }
+                                done.countDown();
+                            });
+                }
+                done.await();
+                jdbcTemplate.batchUpdate("UPDATE credit_campaign_entry SET status = 'NOTIFIED' WHERE id = ?", new ArrayList<>(sent));
+                jdbcTemplate.update(
+                        "UPDATE credit_campaign SET notifications_sent = notifications_sent + ?, " +
+                        "notifications_failed = notifications_failed + ? WHERE id = ?",
+                        sent.size(), failed.get(), campaign.getId());
+                afterId = ((Number) rows.get(rows.size() - 1).get("id")).longValue();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // The entries stay CREDITED; resuming the campaign notifies them again
+            logger.warn("Notifications for credit campaign {} stopped: {}", campaign.getId(), e.getMessage());
+        }
+    }
+
+    // Same message as a single admin credit
+    private static String creditEmail(String fullName, BigDecimal amount, String date, String notes) {
+        return String.format(
+            "Dear %s,\n\n" +
+            "₹%s has been added to your wallet.\n\n" +
+            "Amount: ₹%s\n" +
+            "Date: %s\n" +
+            "Notes: %s\n\n" +
+            "Thank you for choosing SunYield!\n\n" +
+            "Best regards,\nSunYield Team",
+            fullName,
+            amount.toString(),
+            amount.toString(),
+            date,
+            notes != null ? notes : "No additional notes"
+        );
+    }
+}
@@ -1,6 +1,8 @@
 package com.sunyield.backend.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sunyield.backend.util.BusinessIdGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -8,7 +10,6 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class CashfreeMockService {
@@ -22,21 +23,24 @@ public class CashfreeMockService {
     @Value("${cashfree.mock.secret-key:TEST_SECRET_KEY}")
     private String secretKey;
 
-    @Value("${cashfree.mock.success-rate:85}")
-    private int successRate;
+    @Autowired
+    private BusinessIdGenerator businessIdGenerator;
 
-    @Value("${cashfree.mock.payment-delay-ms:2000}")
-    private long paymentDelayMs;
+    @Autowired
+    private PaymentOrderStore orderStore;
+
+    // Latency, timeouts, 5xx, success rates and duplicate webhooks per endpoint
+    @Autowired
+    private GatewayFaultInjector faultInjector;
 
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final Map<String, PaymentStatus> paymentStatuses = new ConcurrentHashMap<>();
-    private final Map<String, PaymentOrder> paymentOrders = new ConcurrentHashMap<>();
 
     // Simulate payment order creation
     public Map<String, Object> createOrder(Map<String, Object> request) {
         if (!mockEnabled) {
             throw new RuntimeException("Cashfree mock is disabled");
         }
+        faultInjector.apply(GatewayFaultInjector.Endpoint.CREATE_ORDER);
 
         try {
             // Validate required fields
@@ -61,8 +65,7 @@ public class CashfreeMockService {
             order.setCreatedAt(LocalDateTime.now());
             order.setStatus("PENDING");
 
-            paymentOrders.put(orderId, order);
-            paymentStatuses.put(orderId, PaymentStatus.PENDING);
+            orderStore.save(order);
 
             // Generate payment link
             String paymentLink = generatePaymentLink(orderId);
@@ -95,8 +98,9 @@ public class CashfreeMockService {
         if (!mockEnabled) {
             throw new RuntimeException("Cashfree mock is disabled");
         }
+        faultInjector.apply(GatewayFaultInjector.Endpoint.ORDER_STATUS);
 
-        PaymentOrder order = paymentOrders.get(orderId);
+        PaymentOrder order = orderStore.get(orderId);
         if (order == null) {
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("status", "ERROR");
@@ -127,7 +131,7 @@ public class CashfreeMockService {
             throw new RuntimeException("Cashfree mock is disabled");
         }
 
-        PaymentOrder order = paymentOrders.get(orderId);
+        PaymentOrder order = orderStore.get(orderId);
         if (order == null) {
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("status", "ERROR");
@@ -135,15 +139,11 @@ public class CashfreeMockService {
             return errorResponse;
         }
 
-        // Simulate payment delay
-        try {
-            Thread.sleep(paymentDelayMs);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+        // Simulate gateway latency and faults
+        faultInjector.apply(GatewayFaultInjector.Endpoint.PROCESS_PAYMENT);
 
         // Determine payment success based on success rate
-        boolean isSuccess = Math.random() * 100 < successRate;
+        boolean isSuccess = faultInjector.rollSuccess(GatewayFaultInjector.Endpoint.PROCESS_PAYMENT);
         
         // Additional failure conditions
         if (paymentMethod.equals("CARD") && paymentDetails.containsKey("cardNumber")) {
@@ -154,9 +154,12 @@ public class CashfreeMockService {
         }
 
         PaymentStatus status = isSuccess ? PaymentStatus.SUCCESS : PaymentStatus.FAILED;
-        paymentStatuses.put(orderId, status);
-        order.setStatus(status.name());
-        order.setProcessedAt(LocalDateTime.now());
+        // Settles only a PENDING order; if a concurrent request (possibly on another node) got
+        // there first, report its outcome instead
+        orderStore.updateStatus(orderId, PaymentStatus.PENDING.name(), status.name(), LocalDateTime.now());
+        order = orderStore.get(orderId);
+        status = PaymentStatus.valueOf(order.getStatus());
+        isSuccess = status == PaymentStatus.SUCCESS;
 
         Map<String, Object> response = new HashMap<>();
         response.put("cfOrderId", orderId);
@@ -176,10 +179,17 @@ public class CashfreeMockService {
         return response;
     }
 
+    // Simulate webhook delivery: the payload once, or twice when the webhook profile injects a duplicate
+    public List<Map<String, Object>> generateWebhookDeliveries(String orderId) {
+        faultInjector.apply(GatewayFaultInjector.Endpoint.WEBHOOK);
+        Map<String, Object> payload = generateWebhookPayload(orderId);
+        return Collections.nCopies(faultInjector.webhookDeliveries(), payload);
+    }
+
     // Simulate webhook notification
     public Map<String, Object> generateWebhookPayload(String orderId) {
-        PaymentOrder order = paymentOrders.get(orderId);
-        PaymentStatus status = paymentStatuses.get(orderId);
+        PaymentOrder order = orderStore.get(orderId);
+        PaymentStatus status = PaymentStatus.valueOf(order.getStatus());
 
         Map<String, Object> webhookPayload = new HashMap<>();
         webhookPayload.put("orderId", orderId);
@@ -202,6 +212,7 @@ public class CashfreeMockService {
         if (!mockEnabled) {
             throw new RuntimeException("Cashfree mock is disabled");
         }
+        faultInjector.apply(GatewayFaultInjector.Endpoint.CREATE_PAYOUT);
 
         try {
             // Validate required fields
@@ -228,8 +239,7 @@ public class CashfreeMockService {
             order.setCreatedAt(LocalDateTime.now());
             order.setStatus("PENDING");
 
-            paymentOrders.put(orderId, order);
-            paymentStatuses.put(orderId, PaymentStatus.PENDING);
+            orderStore.save(order);
 
             Map<String, Object> response = new HashMap<>();
             response.put("cfOrderId", orderId);
@@ -259,7 +269,7 @@ public class CashfreeMockService {
             throw new RuntimeException("Cashfree mock is disabled");
         }
 
-        PaymentOrder order = paymentOrders.get(orderId);
+        PaymentOrder order = orderStore.get(orderId);
         if (order == null) {
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("status", "ERROR");
@@ -267,23 +277,13 @@ public class CashfreeMockService {
             return errorResponse;
         }
 
-        // Simulate payout processing delay and success/failure
-        if (order.getStatus().equals("PENDING")) {
-            // Simulate processing delay
-            try {
-                Thread.sleep(paymentDelayMs);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-
-            // Determine payout success based on success rate
-            boolean isSuccess = Math.random() * 100 < successRate;
-            PaymentStatus status = isSuccess ? PaymentStatus.SUCCESS : PaymentStatus.FAILED;
-            paymentStatuses.put(orderId, status);
-            order.setStatus(status.name());
-            order.setProcessedAt(LocalDateTime.now());
+        // Simulate gateway latency and faults; like the gateway, only an unsettled payout is slow
+        if ("PENDING".equals(order.getStatus())) {
+            faultInjector.apply(GatewayFaultInjector.Endpoint.PAYOUT_STATUS);
         }
 
+        order = settlePayoutIfDue(order);
+
         Map<String, Object> response = new HashMap<>();
         response.put("cfOrderId", orderId);
         response.put("orderId", orderId);
@@ -301,6 +301,99 @@ public class CashfreeMockService {
         return response;
     }
 
+    // Simulate a batch transfer: a single gateway round-trip creates one payout order per transfer.
+    // Each transfer carries the caller's transferId plus the same fields as createPayoutOrder. The
+    // transferId is an idempotency key: its order id is derived from it, so sending a transfer again
+    // returns the payout already created for it instead of paying out twice.
+    public Map<String, Object> createBatchTransfer(String batchTransferId, List<Map<String, Object>> transfers) {
+        if (!mockEnabled) {
+            throw new RuntimeException("Cashfree mock is disabled");
+        }
+        faultInjector.apply(GatewayFaultInjector.Endpoint.CREATE_PAYOUT);
+
+        List<Map<String, Object>> results = new ArrayList<>(transfers.size());
+        for (Map<String, Object> transfer : transfers) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("transferId", transfer.get("transferId"));
+            try {
+                validatePayoutRequest(transfer);
+                String orderId = transfer.get("transferId") != null
+                        ? "PAYOUT_TR_" + transfer.get("transferId")
+                        : generatePayoutOrderId();
+                PaymentOrder existing = orderStore.get(orderId);
+                if (existing != null) {
+                    result.put("orderId", orderId);
+                    result.put("orderStatus", existing.getStatus());
+                    results.add(result);
+                    continue;
+                }
+                PaymentOrder order = new PaymentOrder();
+                order.setOrderId(orderId);
+                order.setOrderAmount(new BigDecimal(transfer.get("orderAmount").toString()));
+                order.setOrderCurrency((String) transfer.get("orderCurrency"));
+                order.setCustomerName((String) transfer.get("customerName"));
+                order.setCustomerEmail((String) transfer.get("customerEmail"));
+                order.setCustomerPhone((String) transfer.get("customerPhone"));
+                order.setOrderNote((String) transfer.get("orderNote"));
+                order.setCreatedAt(LocalDateTime.now());
+                order.setStatus("PENDING");
+                orderStore.save(order);
+                result.put("orderId", orderId);
+                result.put("orderStatus", "PENDING");
+            } catch (Exception e) {
+                result.put("orderStatus", "REJECTED");
+                result.put("message", e.getMessage());
+            }
+            results.add(result);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("batchTransferId", batchTransferId);
+        response.put("entity", "batch_transfer");
+        response.put("status", "ACCEPTED");
+        response.put("transfers", results);
+        return response;
+    }
+
+    // Status of many payouts in one round-trip (orderId -> PENDING/SUCCESS/FAILED, or NOT_FOUND).
+    // Payouts past their settle delay are settled as part of the call. The call only pays the
+    // payout-status latency (and faults) when at least one of the payouts is still PENDING.
+    public Map<String, String> getBatchTransferStatus(Collection<String> orderIds) {
+        if (!mockEnabled) {
+            throw new RuntimeException("Cashfree mock is disabled");
+        }
+
+        Map<String, PaymentOrder> orders = new HashMap<>();
+        for (String orderId : orderIds) {
+            orders.put(orderId, orderStore.get(orderId));
+        }
+        if (orders.values().stream().anyMatch(order -> order != null && "PENDING".equals(order.getStatus()))) {
+            faultInjector.apply(GatewayFaultInjector.Endpoint.PAYOUT_STATUS);
+        }
+
+        Map<String, String> statuses = new HashMap<>();
+        for (Map.Entry<String, PaymentOrder> entry : orders.entrySet()) {
+            PaymentOrder order = entry.getValue();
+            statuses.put(entry.getKey(), order == null ? "NOT_FOUND" : settlePayoutIfDue(order).getStatus());
+        }
+        return statuses;
+    }
+
+    // Settles a PENDING payout once its settle delay has passed (slow payouts stay PENDING until then)
+    private PaymentOrder settlePayoutIfDue(PaymentOrder order) {
+        long settleDelayMs = faultInjector.settleDelayMs(GatewayFaultInjector.Endpoint.PAYOUT_STATUS);
+        if (!order.getStatus().equals("PENDING")
+                || LocalDateTime.now().isBefore(order.getCreatedAt().plusNanos(settleDelayMs * 1_000_000L))) {
+            return order;
+        }
+        // Determine payout success based on success rate
+        boolean isSuccess = faultInjector.rollSuccess(GatewayFaultInjector.Endpoint.PAYOUT_STATUS);
+        PaymentStatus status = isSuccess ? PaymentStatus.SUCCESS : PaymentStatus.FAILED;
+        orderStore.updateStatus(order.getOrderId(), PaymentStatus.PENDING.name(), status.name(), LocalDateTime.now());
+        // Re-read: a concurrent poll may have settled it first
+        return orderStore.get(order.getOrderId());
+    }
+
     // Helper methods
     private void validateOrderRequest(Map<String, Object> request) {
         if (!request.containsKey("orderAmount") || !request.containsKey("orderCurrency") ||
@@ -319,19 +412,19 @@ public class CashfreeMockService {
     }
 
     private String generateOrderId() {
-        return "CF_" + System.currentTimeMillis() + "_" + (int)(Math.random() * 1000);
+        return businessIdGenerator.nextId("CF");
     }
 
     private String generatePayoutOrderId() {
-        return "PAYOUT_" + System.currentTimeMillis() + "_" + (int)(Math.random() * 1000);
+        return businessIdGenerator.nextId("PAYOUT");
     }
 
     private String generateSessionId() {
-        return "session_" + System.currentTimeMillis() + "_" + (int)(Math.random() * 10000);
+        return businessIdGenerator.nextId("session");
     }
 
     private String generateTransactionId() {
-        return "txn_" + System.currentTimeMillis() + "_" + (int)(Math.random() * 10000);
+        return businessIdGenerator.nextId("txn");
     }
 
     private String generatePaymentLink(String orderId) {
@@ -346,15 +439,18 @@ public class CashfreeMockService {
         return customer;
     }
 
-    // Get all orders for testing
-    public List<PaymentOrder> getAllOrders() {
-        return new ArrayList<>(paymentOrders.values());
+    // Most recent orders for testing; the store is bounded, so this never copies more than limit orders
+    public List<PaymentOrder> getRecentOrders(int limit) {
+        return orderStore.recent(limit);
+    }
+
+    public int getOrderCount() {
+        return orderStore.size();
     }
 
     // Clear all orders for testing
     public void clearAllOrders() {
-        paymentOrders.clear();
-        paymentStatuses.clear();
+        orderStore.clear();
     }
 
     // Inner classes
@@ -408,11 +504,11 @@ public class CashfreeMockService {
 
     // Update payout status (for testing)
     public void updatePayoutStatus(String orderId, String status) {
-        PaymentOrder order = paymentOrders.get(orderId);
+        PaymentOrder order = orderStore.get(orderId);
         if (order != null) {
-            order.setStatus(status);
+            order.setStatus(PaymentStatus.valueOf(status).name());
             order.setProcessedAt(LocalDateTime.now());
-            paymentStatuses.put(orderId, PaymentStatus.valueOf(status));
+            orderStore.save(order);
         }
     }
 }
@@ -52,12 +52,7 @@ public class EmailService {
 
     public void sendEmail(String to, String subject, String body) {
         try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom(fromEmail);
-            message.setTo(to);
-            message.setSubject(subject);
-            message.setText(body);
-            mailSender.send(message);
+            deliver(to, subject, body);
             System.out.println("[DEBUG] Email sent successfully to: " + to + " from: " + fromEmail);
         } catch (Exception e) {
             System.err.println("[ERROR] Failed to send email to: " + to + " - " + e.getMessage());
@@ -65,6 +60,16 @@ public class EmailService {
         }
     }
 
+    // Sends or throws; for callers that count failures (NotificationChannelPool)
+    public void deliver(String to, String subject, String body) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom(fromEmail);
+        message.setTo(to);
+        message.setSubject(subject);
+        message.setText(body);
+        mailSender.send(message);
+    }
+
     public void sendEmailWithAttachment(String to, String subject, String body, byte[] attachment, String filename) {
         try {
             MimeMessage message = mailSender.createMimeMessage();
@@ -0,0 +1,257 @@
+package com.sunyield.backend.service;
+
+import com.sunyield.backend.entity.Project;
+import com.sunyield.backend.entity.ProjectGeneration;
+import com.sunyield.backend.entity.ProjectGeneration.Granularity;
+import com.sunyield.backend.repository.ProjectGenerationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Scores every energy reading as it arrives against two references:
+//  - the project's own recent behaviour (exponentially weighted mean/variance per granularity)
+//  - the physically expected output from energyCapacity (kW) and the efficiency rating
+// State is O(1) per project and granularity, so the detector keeps up with telemetry-rate ingestion.
+@Service
+public class EnergyAnomalyDetector {
+    private static final Logger logger = LoggerFactory.getLogger(EnergyAnomalyDetector.class);
+
+    @Autowired
+    private ProjectGenerationRepository projectGenerationRepository;
+
+    @Value("${energy.anomaly.alpha:0.1}")
+    private double alpha;
+
+    @Value("${energy.anomaly.z-threshold:4.0}")
+    private double zThreshold;
+
+    @Value("${energy.anomaly.warmup-samples:8}")
+    private int warmupSamples;
+
+    // Below this fraction of expected output a reading is flagged as underperforming
+    @Value("${energy.anomaly.min-expected-ratio:0.3}")
+    private double minExpectedRatio;
+
+    // Above this fraction of nameplate output (capacity x hours) a reading is physically implausible
+    @Value("${energy.anomaly.max-capacity-ratio:1.0}")
+    private double maxCapacityRatio;
+
+    // Capacity utilisation factors by efficiency rating
+    @Value("${energy.anomaly.cuf.high:0.20}")
+    private double cufHigh;
+
+    @Value("${energy.anomaly.cuf.medium:0.17}")
+    private double cufMedium;
+
+    @Value("${energy.anomaly.cuf.low:0.14}")
+    private double cufLow;
+
+    private final Map<StateKey, RollingStats> states = new ConcurrentHashMap<>();
+
+    public enum Verdict {
+        NORMAL,
+        UNDERPERFORMING,
+        OUTLIER,
+        DUPLICATE,
+        INVALID;
+
+        // Held readings are not distributed automatically and do not update the rolling statistics
+        public boolean isHeld() {
+            return this == OUTLIER || this == DUPLICATE || this == INVALID;
+        }
+    }
+
+    public static class Score {
+        private final Verdict verdict;
+        private final double kwh;
+        private final Double expectedKwh;
+        private final double mean;
+        private final double zScore;
+        private final String reason;
+
+        Score(Verdict verdict, double kwh, Double expectedKwh, double mean, double zScore, String reason) {
+            this.verdict = verdict;
+            this.kwh = kwh;
+            this.expectedKwh = expectedKwh;
+            this.mean = mean;
+            this.zScore = zScore;
+            this.reason = reason;
+        }
+
+        public Verdict getVerdict() { return verdict; }
+        public double getKwh() { return kwh; }
+        public Double getExpectedKwh() { return expectedKwh; }
+        public double getMean() { return mean; }
+        public double getZScore() { return zScore; }
+        public String getReason() { return reason; }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new java.util.HashMap<>();
+            map.put("verdict", verdict);
+            map.put("kWh", kwh);
+            map.put("expectedKwh", expectedKwh);
+            map.put("rollingMean", mean);
+            map.put("zScore", zScore);
+            map.put("reason", reason);
+            return map;
+        }
+    }
+
+    // Scores a reading without recording it. Callers apply the reading (distribute rewards, write the
+    // series) and only then call accept(), so a request that fails afterwards leaves no trace here.
+    public Score evaluate(Project project, Granularity granularity, LocalDateTime timestamp, double kwh) {
+        RollingStats stats = stateFor(project.getId(), granularity);
+        LocalDateTime bucket = GenerationSeriesService.truncate(timestamp, granularity);
+        Double expected = expectedKwh(project, granularity, timestamp);
+        Double nameplate = nameplateKwh(project, granularity, timestamp);
+
+        synchronized (stats) {
+            double std = Math.sqrt(stats.variance);
+            double z = stats.count >= warmupSamples && std > 0 ? (kwh - stats.mean) / std : 0.0;
+
+            Score score;
+            if (Double.isNaN(kwh) || Double.isInfinite(kwh) || kwh < 0) {
+                score = new Score(Verdict.INVALID, kwh, expected, stats.mean, z, "Reading must be a non-negative number");
+            } else if (bucket.equals(stats.lastBucket) && Math.abs(kwh - stats.lastValue) < 0.01) {
+                score = new Score(Verdict.DUPLICATE, kwh, expected, stats.mean, z, "Same reading already received for this period");
+            } else if (nameplate != null && kwh > nameplate * maxCapacityRatio) {
+                score = new Score(Verdict.OUTLIER, kwh, expected, stats.mean, z,
+                        String.format("Exceeds nameplate output of %.2f kWh for the period", nameplate));
+            } else if (Math.abs(z) > zThreshold) {
+                score = new Score(Verdict.OUTLIER, kwh, expected, stats.mean, z,
+                        String.format("%.1f standard deviations from the rolling mean", z));
+            } else if (expected != null && kwh < expected * minExpectedRatio) {
+                score = new Score(Verdict.UNDERPERFORMING, kwh, expected, stats.mean, z,
+                        String.format("Below %.0f%% of expected output", minExpectedRatio * 100));
+            } else {
+                score = new Score(Verdict.NORMAL, kwh, expected, stats.mean, z, null);
+            }
+
+            if (score.getVerdict() != Verdict.NORMAL) {
+                logger.warn("Energy reading for project {} at {} ({}): {} {} kWh - {}",
+                        project.getId(), timestamp, granularity, score.getVerdict(), kwh, score.getReason());
+            }
+            return score;
+        }
+    }
+
+    // Folds a reading into the rolling statistics once it has actually been applied; held readings
+    // only get here through an admin override (force), e.g. after a capacity upgrade
+    public void accept(Project project, Granularity granularity, LocalDateTime timestamp, double kwh) {
+        RollingStats stats = stateFor(project.getId(), granularity);
+        synchronized (stats) {
+            stats.update(kwh, alpha);
+            stats.lastBucket = GenerationSeriesService.truncate(timestamp, granularity);
+            stats.lastValue = kwh;
+        }
+    }
+
+    // Drops learned state, e.g. after the project's capacity or efficiency changes
+    public void forgetProject(Long projectId) {
+        states.keySet().removeIf(key -> key.projectId.equals(projectId));
+    }
+
+    public Double expectedKwh(Project project, Granularity granularity, LocalDateTime timestamp) {
+        Double nameplate = nameplateKwh(project, granularity, timestamp);
+        return nameplate == null ? null : nameplate * capacityUtilisation(project.getEfficiency());
+    }
+
+    private Double nameplateKwh(Project project, Granularity granularity, LocalDateTime timestamp) {
+        if (project.getEnergyCapacity() == null || project.getEnergyCapacity() <= 0) {
+            return null;
+        }
+        return project.getEnergyCapacity() * periodHours(granularity, timestamp);
+    }
+
+    private double capacityUtilisation(String efficiency) {
+        if ("HIGH".equalsIgnoreCase(efficiency)) return cufHigh;
+        if ("LOW".equalsIgnoreCase(efficiency)) return cufLow;
+        return cufMedium;
+    }
+
+    private static double periodHours(Granularity granularity, LocalDateTime timestamp) {
+        switch (granularity) {
+            case HOUR:
+                return 1;
+            case DAY:
+                return 24;
+            case WEEK:
+                return 24 * 7;
+            case MONTH:
+            default:
+                return 24 * YearMonth.from(timestamp).lengthOfMonth();
+        }
+    }
+
+    // Warm-starts a project's statistics from the most recent buckets of its generation series,
+    // so a restart does not reopen the warm-up window.
+    private RollingStats stateFor(Long projectId, Granularity granularity) {
+        StateKey key = new StateKey(projectId, granularity);
+        RollingStats stats = states.get(key);
+        if (stats != null) {
+            return stats;
+        }
+        RollingStats seeded = new RollingStats();
+        LocalDateTime now = LocalDateTime.now();
+        List<ProjectGeneration> recent = projectGenerationRepository
+                .findTop30ByProjectIdAndGranularityAndPeriodStartLessThanEqualOrderByPeriodStartDesc(projectId, granularity, now);
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            seeded.update(recent.get(i).getKwh(), alpha);
+        }
+        if (!recent.isEmpty()) {
+            seeded.lastBucket = recent.get(0).getPeriodStart();
+            seeded.lastValue = recent.get(0).getKwh();
+        }
+        RollingStats existing = states.putIfAbsent(key, seeded);
+        return existing != null ? existing : seeded;
+    }
+
+    private static class RollingStats {
+        private long count;
+        private double mean;
+        private double variance;
+        private LocalDateTime lastBucket;
+        private double lastValue;
+
+        // Exponentially weighted mean and variance; plain running average during warm-up
+        void update(double value, double alpha) {
+            count++;
+            double weight = Math.max(alpha, 1.0 / count);
+            double delta = value - mean;
+            mean += weight * delta;
+            variance = (1 - weight) * (variance + weight * delta * delta);
+        }
+    }
+
+    private static class StateKey {
+        private final Long projectId;
+        private final Granularity granularity;
+
+        StateKey(Long projectId, Granularity granularity) {
+            this.projectId = projectId;
+            this.granularity = granularity;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof StateKey)) return false;
+            StateKey other = (StateKey) o;
+            return projectId.equals(other.projectId) && granularity == other.granularity;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(projectId, granularity);
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.sunyield.backend.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Degraded-gateway simulation for CashfreeMockService. Every mock endpoint has a Profile:
+// a latency distribution, a share of calls that time out or fail with a 5xx, the payment success
+// rate, the share of webhooks delivered twice and (for payouts) how long a payout stays PENDING.
+// Profiles come from cashfree.mock.fault.<endpoint>.* and can be replaced at runtime through the
+// admin API; a replacement is one reference swap, so calls in flight finish on the old profile.
+//
+// Latency specs: "fixed:2000", "uniform:100-800", "lognormal:300,0.6" (median ms, sigma) or
+// "histogram:50=60,200=30,1000=9,5000=1" (latency ms = relative weight, e.g. replayed from production).
+@Component
+public class GatewayFaultInjector {
+
+    public enum Endpoint {
+        CREATE_ORDER("create-order"),
+        ORDER_STATUS("order-status"),
+        PROCESS_PAYMENT("process-payment"),
+        WEBHOOK("webhook"),
+        CREATE_PAYOUT("create-payout"),
+        PAYOUT_STATUS("payout-status");
+
+        private final String key;
+
+        Endpoint(String key) {
+            this.key = key;
+        }
+
+        public String getKey() { return key; }
+
+        public static Endpoint fromKey(String key) {
+            for (Endpoint endpoint : values()) {
+                if (endpoint.key.equalsIgnoreCase(key) || endpoint.name().equalsIgnoreCase(key)) {
+                    return endpoint;
+                }
+            }
+            throw new IllegalArgumentException("Unknown gateway endpoint: " + key);
+        }
+    }
+
+    // The gateway did not answer within the profile's timeout
+    public static class GatewayTimeoutException extends RuntimeException {
+        public GatewayTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    // The gateway answered with a 5xx
+    public static class GatewayUnavailableException extends RuntimeException {
+        public GatewayUnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    public static class LatencyDistribution {
+        private static final long MAX_LATENCY_MS = 120_000L;
+
+        private final String spec;
+        private final String type;
+        private final double[] values;
+        private final double[] weights;
+
+        private LatencyDistribution(String spec, String type, double[] values, double[] weights) {
+            this.spec = spec;
+            this.type = type;
+            this.values = values;
+            this.weights = weights;
+        }
+
+        public static LatencyDistribution parse(String spec) {
+            String trimmed = spec.trim();
+            int colon = trimmed.indexOf(':');
+            String type = (colon < 0 ? trimmed : trimmed.substring(0, colon)).toLowerCase(Locale.ROOT);
+            String args = colon < 0 ? "" : trimmed.substring(colon + 1).trim();
+            try {
+                switch (type) {
+                    case "fixed":
+                        return new LatencyDistribution(trimmed, type, new double[] { Double.parseDouble(args) }, null);
+                    case "uniform": {
+                        String[] range = args.split("-");
+                        return new LatencyDistribution(trimmed, type,
+                                new double[] { Double.parseDouble(range[0].trim()), Double.parseDouble(range[1].trim()) }, null);
+                    }
+                    case "lognormal": {
+                        String[] params = args.split(",");
+                        return new LatencyDistribution(trimmed, type,
+                                new double[] { Double.parseDouble(params[0].trim()), Double.parseDouble(params[1].trim()) }, null);
+                    }
+                    case "histogram": {
+                        String[] buckets = args.split(",");
+                        double[] latencies = new double[buckets.length];
+                        double[] cumulative = new double[buckets.length];
+                        double total = 0;
+                        for (int i = 0; i < buckets.length; i++) {
+                            String[] pair = buckets[i].split("=");
+                            latencies[i] = Double.parseDouble(pair[0].trim());
+                            total += Double.parseDouble(pair[1].trim());
+                            cumulative[i] = total;
+                        }
+                        return new LatencyDistribution(trimmed, type, latencies, cumulative);
+                    }
+                    default:
+                        throw new IllegalArgumentException("Unknown latency distribution: " + type);
+                }
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid latency spec '" + spec + "': " + e.getMessage(), e);
+            }
+        }
+
+        public long sampleMs() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            double sample;
+            switch (type) {
+                case "uniform":
+                    sample = values[0] + random.nextDouble() * (values[1] - values[0]);
+                    break;
+                case "lognormal":
+                    sample = values[0] * Math.exp(values[1] * random.nextGaussian());
+                    break;
+                case "histogram": {
+                    double pick = random.nextDouble() * weights[weights.length - 1];
+                    int i = 0;
+                    while (i < weights.length - 1 && pick >= weights[i]) {
+                        i++;
+                    }
+                    sample = values[i];
+                    break;
+                }
+                default:
+                    sample = values[0];
+            }
+            return Math.max(0L, Math.min(MAX_LATENCY_MS, Math.round(sample)));
+        }
+
+        @Override
+        public String toString() {
+            return spec;
+        }
+    }
+
+    // Immutable; replaced as a whole
+    public static class Profile {
+        private final LatencyDistribution latency;
+        private final double errorRate;
+        private final double timeoutRate;
+        private final long timeoutMs;
+        private final double successRate;
+        private final double duplicateRate;
+        private final long settleDelayMs;
+
+        Profile(LatencyDistribution latency, double errorRate, double timeoutRate, long timeoutMs,
+                double successRate, double duplicateRate, long settleDelayMs) {
+            this.latency = latency;
+            this.errorRate = errorRate;
+            this.timeoutRate = timeoutRate;
+            this.timeoutMs = timeoutMs;
+            this.successRate = successRate;
+            this.duplicateRate = duplicateRate;
+            this.settleDelayMs = settleDelayMs;
+        }
+
+        // Copy of this profile with the given fields replaced; unknown keys are rejected
+        Profile with(Map<String, Object> changes) {
+            LatencyDistribution newLatency = latency;
+            double newErrorRate = errorRate;
+            double newTimeoutRate = timeoutRate;
+            long newTimeoutMs = timeoutMs;
+            double newSuccessRate = successRate;
+            double newDuplicateRate = duplicateRate;
+            long newSettleDelayMs = settleDelayMs;
+            for (Map.Entry<String, Object> change : changes.entrySet()) {
+                String value = String.valueOf(change.getValue());
+                switch (change.getKey()) {
+                    case "latency": newLatency = LatencyDistribution.parse(value); break;
+                    case "errorRate": newErrorRate = percent(value); break;
+                    case "timeoutRate": newTimeoutRate = percent(value); break;
+                    case "timeoutMs": newTimeoutMs = Long.parseLong(value); break;
+                    case "successRate": newSuccessRate = percent(value); break;
+                    case "duplicateRate": newDuplicateRate = percent(value); break;
+                    case "settleDelayMs": newSettleDelayMs = Long.parseLong(value); break;
+                    default: throw new IllegalArgumentException("Unknown profile field: " + change.getKey());
+                }
+            }
+            return new Profile(newLatency, newErrorRate, newTimeoutRate, newTimeoutMs,
+                    newSuccessRate, newDuplicateRate, newSettleDelayMs);
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("latency", latency.toString());
+            map.put("errorRate", errorRate);
+            map.put("timeoutRate", timeoutRate);
+            map.put("timeoutMs", timeoutMs);
+            map.put("successRate", successRate);
+            map.put("duplicateRate", duplicateRate);
+            map.put("settleDelayMs", settleDelayMs);
+            return map;
+        }
+
+        private static double percent(String value) {
+            double rate = Double.parseDouble(value);
+            if (rate < 0 || rate > 100) {
+                throw new IllegalArgumentException("Rates are percentages between 0 and 100: " + value);
+            }
+            return rate;
+        }
+    }
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${cashfree.mock.success-rate:85}")
+    private int defaultSuccessRate;
+
+    // The mock's historical behaviour: only payment processing and payout settlement wait
+    @Value("${cashfree.mock.payment-delay-ms:2000}")
+    private long paymentDelayMs;
+
+    private final Map<Endpoint, Profile> configured = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, AtomicReference<Profile>> active = new EnumMap<>(Endpoint.class);
+
+    @PostConstruct
+    public void init() {
+        for (Endpoint endpoint : Endpoint.values()) {
+            String prefix = "cashfree.mock.fault." + endpoint.getKey() + ".";
+            boolean slowByDefault = endpoint == Endpoint.PROCESS_PAYMENT || endpoint == Endpoint.PAYOUT_STATUS;
+            Profile profile = new Profile(
+                    LatencyDistribution.parse(environment.getProperty(prefix + "latency",
+                            "fixed:" + (slowByDefault ? paymentDelayMs : 0))),
+                    environment.getProperty(prefix + "error-rate", Double.class, 0.0),
+                    environment.getProperty(prefix + "timeout-rate", Double.class, 0.0),
+                    environment.getProperty(prefix + "timeout-ms", Long.class, 30000L),
+                    environment.getProperty(prefix + "success-rate", Double.class, (double) defaultSuccessRate),
+                    environment.getProperty(prefix + "duplicate-rate", Double.class, 0.0),
+                    environment.getProperty(prefix + "settle-delay-ms", Long.class, 0L));
+            configured.put(endpoint, profile);
+            active.put(endpoint, new AtomicReference<>(profile));
+        }
+    }
+
+    // Called at the start of every mock endpoint: waits out the sampled latency, or fails the call
+    public void apply(Endpoint endpoint) {
+        Profile profile = profile(endpoint);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (profile.timeoutRate > 0 && random.nextDouble() * 100 < profile.timeoutRate) {
+            sleep(profile.timeoutMs);
+            countFault(endpoint, "timeout");
+            throw new GatewayTimeoutException("Payment gateway timed out (" + endpoint.getKey() + ")");
+        }
+        sleep(profile.latency.sampleMs());
+        if (profile.errorRate > 0 && random.nextDouble() * 100 < profile.errorRate) {
+            countFault(endpoint, "5xx");
+            throw new GatewayUnavailableException("Payment gateway returned 503 (" + endpoint.getKey() + ")");
+        }
+    }
+
+    public boolean rollSuccess(Endpoint endpoint) {
+        return ThreadLocalRandom.current().nextDouble() * 100 < profile(endpoint).successRate;
+    }
+
+    // How many times a webhook is delivered: usually once, twice at the profile's duplicate rate
+    public int webhookDeliveries() {
+        Profile profile = profile(Endpoint.WEBHOOK);
+        if (profile.duplicateRate > 0 && ThreadLocalRandom.current().nextDouble() * 100 < profile.duplicateRate) {
+            countFault(Endpoint.WEBHOOK, "duplicate");
+            return 2;
+        }
+        return 1;
+    }
+
+    // Minimum time a payout stays PENDING after creation
+    public long settleDelayMs(Endpoint endpoint) {
+        return profile(endpoint).settleDelayMs;
+    }
+
+    public Profile profile(Endpoint endpoint) {
+        return active.get(endpoint).get();
+    }
+
+    public Map<String, Object> describe() {
+        Map<String, Object> profiles = new LinkedHashMap<>();
+        for (Endpoint endpoint : Endpoint.values()) {
+            profiles.put(endpoint.getKey(), profile(endpoint).toMap());
+        }
+        return profiles;
+    }
+
+    // An invalid change throws and leaves the active profile untouched
+    public Profile update(Endpoint endpoint, Map<String, Object> changes) {
+        return active.get(endpoint).updateAndGet(profile -> profile.with(changes));
+    }
+
+    // Restores the configured profiles
+    public List<String> reset() {
+        List<String> endpoints = new ArrayList<>();
+        for (Endpoint endpoint : Endpoint.values()) {
+            active.get(endpoint).set(configured.get(endpoint));
+            endpoints.add(endpoint.getKey());
+        }
+        return endpoints;
+    }
+
+    private void countFault(Endpoint endpoint, String type) {
+        meterRegistry.counter("gateway.mock.faults", "endpoint", endpoint.getKey(), "type", type).increment();
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
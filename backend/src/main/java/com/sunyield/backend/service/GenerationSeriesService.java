@@ -0,0 +1,119 @@
+package com.sunyield.backend.service;
+
+import com.sunyield.backend.entity.ProjectGeneration;
+import com.sunyield.backend.entity.ProjectGeneration.Granularity;
+import com.sunyield.backend.repository.ProjectGenerationRepository;
+import com.sunyield.backend.util.SeriesDownsampler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.List;
+
+@Service
+public class GenerationSeriesService {
+
+    @Autowired
+    private ProjectGenerationRepository projectGenerationRepository;
+
+    // Upper bound on rows read from the database for a single chart before downsampling
+    @Value("${generation.chart.max-source-points:20000}")
+    private int maxSourcePoints;
+
+    // Records a reading at its finest granularity and rolls it up into every coarser bucket.
+    // Hourly telemetry lands in HOUR, DAY, WEEK and MONTH; a daily entry starts at DAY; a
+    // monthly total only touches MONTH.
+    @Transactional
+    public void record(Long projectId, LocalDateTime timestamp, double kwh, Granularity finest) {
+        for (Granularity granularity : Granularity.values()) {
+            if (granularity.ordinal() < finest.ordinal()) {
+                continue;
+            }
+            projectGenerationRepository.addToBucket(projectId, granularity.name(), truncate(timestamp, granularity), kwh);
+        }
+    }
+
+    // Recomputes the DAY/WEEK/MONTH rollups of a project from its hourly telemetry and the readings
+    // in its reward history, the same way record() builds them: daily readings roll up into WEEK and
+    // MONTH, monthly readings only into MONTH. Used to backfill projects fed before the series existed.
+    @Transactional
+    public int rebuildFromRewards(Long projectId) {
+        projectGenerationRepository.deleteDailyRollups(projectId);
+        projectGenerationRepository.rebuildDaysFromHours(projectId);
+        int days = projectGenerationRepository.addReadingsFromRewards(projectId, Granularity.DAY.name());
+        projectGenerationRepository.rebuildWeeksFromDays(projectId);
+        projectGenerationRepository.rebuildMonthsFromDays(projectId);
+        projectGenerationRepository.addReadingsFromRewards(projectId, Granularity.MONTH.name());
+        return days;
+    }
+
+    // Picks the finest granularity whose bucket count over the range stays within the source budget,
+    // so a 10-year chart reads days (~3650 rows) rather than hours.
+    public Granularity chooseGranularity(Long projectId, LocalDateTime from, LocalDateTime to) {
+        for (Granularity granularity : Granularity.values()) {
+            long bucketsInRange = estimateBuckets(from, to, granularity);
+            if (bucketsInRange <= maxSourcePoints) {
+                // Skip granularities that were never written for this project (e.g. no hourly telemetry)
+                if (granularity == Granularity.MONTH
+                        || projectGenerationRepository.countByProjectIdAndGranularityAndPeriodStartBetween(projectId, granularity, from, to) > 0) {
+                    return granularity;
+                }
+            }
+        }
+        return Granularity.MONTH;
+    }
+
+    public SeriesDownsampler.Series getSeries(Long projectId, Granularity granularity, LocalDateTime from, LocalDateTime to) {
+        List<ProjectGeneration> rows = projectGenerationRepository
+                .findByProjectIdAndGranularityAndPeriodStartBetweenOrderByPeriodStartAsc(projectId, granularity, from, to);
+        long[] timestamps = new long[rows.size()];
+        double[] values = new double[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            ProjectGeneration row = rows.get(i);
+            timestamps[i] = row.getPeriodStart().toInstant(ZoneOffset.UTC).toEpochMilli();
+            values[i] = row.getKwh();
+        }
+        return new SeriesDownsampler.Series(timestamps, values);
+    }
+
+    public SeriesDownsampler.Series downsample(SeriesDownsampler.Series series, int points, String method) {
+        if ("MINMAX".equalsIgnoreCase(method)) {
+            return SeriesDownsampler.minMax(series.getTimestamps(), series.getValues(), points);
+        }
+        return SeriesDownsampler.lttb(series.getTimestamps(), series.getValues(), points);
+    }
+
+    public static LocalDateTime truncate(LocalDateTime timestamp, Granularity granularity) {
+        switch (granularity) {
+            case HOUR:
+                return timestamp.truncatedTo(ChronoUnit.HOURS);
+            case DAY:
+                return timestamp.toLocalDate().atStartOfDay();
+            case WEEK:
+                return timestamp.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay();
+            case MONTH:
+            default:
+                return timestamp.toLocalDate().withDayOfMonth(1).atStartOfDay();
+        }
+    }
+
+    private long estimateBuckets(LocalDateTime from, LocalDateTime to, Granularity granularity) {
+        switch (granularity) {
+            case HOUR:
+                return ChronoUnit.HOURS.between(from, to) + 1;
+            case DAY:
+                return ChronoUnit.DAYS.between(from, to) + 1;
+            case WEEK:
+                return ChronoUnit.WEEKS.between(from, to) + 1;
+            case MONTH:
+            default:
+                return ChronoUnit.MONTHS.between(from, to) + 1;
+        }
+    }
+}
@@ -1,22 +1,125 @@
-/*
 package com.sunyield.backend.service;
 
-import com.sunyield.backend.entity.Project;
-import com.sunyield.backend.entity.RewardHistory;
 import com.sunyield.backend.entity.GreenCreditsWallet;
-import com.sunyield.backend.repository.ProjectRepository;
-import com.sunyield.backend.repository.RewardHistoryRepository;
+import com.sunyield.backend.entity.ProjectGreenCredits;
+import com.sunyield.backend.entity.RewardHistory;
 import com.sunyield.backend.repository.GreenCreditsWalletRepository;
+import com.sunyield.backend.repository.ProjectGreenCreditsRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+// Converts credited kWh into green credits and CO2 avoided and keeps per-user and per-project
+// running totals, so impact widgets read a single row instead of summing reward_history.
 @Service
 public class GreenCreditsService {
-    // Temporarily disabled due to compilation issues
+
+    // One green credit per MWh of clean energy by default (REC convention)
+    @Value("${green-credits.kwh-per-credit:1000}")
+    private double kwhPerCredit;
+
+    // Grid emission factor; 0.82 tCO2/MWh is the CEA baseline for the Indian grid
+    @Value("${green-credits.co2-tonnes-per-mwh:0.82}")
+    private double co2TonnesPerMwh;
+
+    @Autowired
+    private GreenCreditsWalletRepository greenCreditsWalletRepository;
+
+    @Autowired
+    private ProjectGreenCreditsRepository projectGreenCreditsRepository;
+
+    // Applies a batch of freshly saved rewards. Rewards are aggregated per user and per project
+    // first, so a distribution run costs one upsert per user plus one for the project.
+    @Transactional
+    public void recordRewards(List<RewardHistory> rewards) {
+        Map<Long, double[]> byUser = new HashMap<>();
+        Map<Long, double[]> byProject = new HashMap<>();
+        for (RewardHistory reward : rewards) {
+            if (reward.getKWh() <= 0) {
+                continue;
+            }
+            if (reward.getUser() != null) {
+                accumulate(byUser, reward.getUser().getId(), reward.getKWh());
+            }
+            if (reward.getProject() != null) {
+                accumulate(byProject, reward.getProject().getId(), reward.getKWh());
+            }
+        }
+        byUser.forEach((userId, totals) -> greenCreditsWalletRepository.addImpact(
+                userId, totals[0], toCredits(totals[0]), toCo2Tonnes(totals[0]), (long) totals[1]));
+        byProject.forEach((projectId, totals) -> projectGreenCreditsRepository.addImpact(
+                projectId, totals[0], toCredits(totals[0]), toCo2Tonnes(totals[0]), (long) totals[1]));
+    }
+
+    // Recomputes every running total from reward_history, e.g. after changing the conversion factors.
+    // Like recordRewards, the rebuild skips rewards without energy, so reward_count agrees on both paths.
+    @Transactional
+    public Map<String, Object> rebuildFromRewards() {
+        greenCreditsWalletRepository.deleteAllRows();
+        projectGreenCreditsRepository.deleteAllRows();
+        int users = greenCreditsWalletRepository.rebuildFromRewards(kwhPerCredit, co2TonnesPerMwh / 1000.0);
+        int projects = projectGreenCreditsRepository.rebuildFromRewards(kwhPerCredit, co2TonnesPerMwh / 1000.0);
+        Map<String, Object> result = new HashMap<>();
+        result.put("usersRebuilt", users);
+        result.put("projectsRebuilt", projects);
+        return result;
+    }
+
+    public Map<String, Object> getUserImpact(Long userId) {
+        GreenCreditsWallet wallet = greenCreditsWalletRepository.findByUserId(userId).orElse(null);
+        Map<String, Object> impact = wallet == null
+                ? toMap(0, 0, 0, 0)
+                : toMap(wallet.getTotalKwh(), wallet.getGreenCredits(), wallet.getCo2AvoidedTonnes(), wallet.getRewardCount());
+        impact.put("userId", userId);
+        impact.put("updatedAt", wallet != null ? wallet.getUpdatedAt() : null);
+        return impact;
+    }
+
+    public Map<String, Object> getProjectImpact(Long projectId) {
+        ProjectGreenCredits totals = projectGreenCreditsRepository.findByProjectId(projectId).orElse(null);
+        Map<String, Object> impact = totals == null
+                ? toMap(0, 0, 0, 0)
+                : toMap(totals.getTotalKwh(), totals.getGreenCredits(), totals.getCo2AvoidedTonnes(), totals.getRewardCount());
+        impact.put("projectId", projectId);
+        impact.put("updatedAt", totals != null ? totals.getUpdatedAt() : null);
+        return impact;
+    }
+
+    public Map<String, Object> getPlatformImpact() {
+        Object[] row = projectGreenCreditsRepository.sumTotals().get(0);
+        Map<String, Object> impact = toMap(((Number) row[0]).doubleValue(), ((Number) row[1]).doubleValue(),
+                ((Number) row[2]).doubleValue(), 0);
+        impact.remove("rewardCount");
+        impact.put("projects", ((Number) row[3]).longValue());
+        return impact;
+    }
+
+    public double toCredits(double kwh) {
+        return kwh / kwhPerCredit;
+    }
+
+    public double toCo2Tonnes(double kwh) {
+        return kwh / 1000.0 * co2TonnesPerMwh;
+    }
+
+    private static void accumulate(Map<Long, double[]> totals, Long key, double kwh) {
+        double[] entry = totals.computeIfAbsent(key, k -> new double[2]);
+        entry[0] += kwh;
+        entry[1] += 1;
+    }
+
+    private Map<String, Object> toMap(double kwh, double credits, double co2Tonnes, long rewardCount) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("totalKwh", kwh);
+        map.put("greenCredits", credits);
+        map.put("co2AvoidedTonnes", co2Tonnes);
+        map.put("co2AvoidedKg", co2Tonnes * 1000.0);
+        map.put("rewardCount", rewardCount);
+        return map;
+    }
 }
-*/
\ No newline at end of file
@@ -0,0 +1,204 @@
+package com.sunyield.backend.service;
+
+import com.sunyield.backend.entity.IdempotencyRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Remembers the response to each (user, Idempotency-Key) so a retried money request is answered
+// from the stored result instead of being executed again. The idempotency_record table is the
+// source of truth shared by all nodes; completed responses are also kept in a small local LRU,
+// so a burst of retries costs one map lookup.
+@Service
+public class IdempotencyService {
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+
+    public enum Outcome {
+        // First time this key is seen (or its previous attempt failed): execute the request
+        PROCEED,
+        // A completed response exists for the same request: send it back
+        REPLAY,
+        // Another request with this key is still executing
+        IN_PROGRESS,
+        // The key was already used for a different request body or path
+        MISMATCH
+    }
+
+    public static class Begin {
+        private final Outcome outcome;
+        private final IdempotencyRecord record;
+
+        Begin(Outcome outcome, IdempotencyRecord record) {
+            this.outcome = outcome;
+            this.record = record;
+        }
+
+        public Outcome getOutcome() { return outcome; }
+        public IdempotencyRecord getRecord() { return record; }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${idempotency.ttl-ms:86400000}")
+    private long ttlMs;
+
+    // An IN_PROGRESS record older than this is assumed orphaned (node died mid-request) and can be taken over
+    @Value("${idempotency.in-progress-timeout-ms:60000}")
+    private long inProgressTimeoutMs;
+
+    @Value("${idempotency.hot-cache-size:10000}")
+    private int hotCacheSize;
+
+    @Value("${idempotency.purge-batch-size:1000}")
+    private int purgeBatchSize;
+
+    private Map<String, IdempotencyRecord> hotTier;
+
+    public Begin begin(String recordKey, String requestHash) {
+        IdempotencyRecord cached;
+        synchronized (this) {
+            cached = hotTier().get(recordKey);
+        }
+        if (cached != null && cached.getExpiresAt().isAfter(LocalDateTime.now())) {
+            return new Begin(cached.getRequestHash().equals(requestHash) ? Outcome.REPLAY : Outcome.MISMATCH, cached);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp createdAt = Timestamp.valueOf(now);
+        Timestamp expiresAt = Timestamp.valueOf(now.plusNanos(ttlMs * 1_000_000L));
+        try {
+            jdbcTemplate.update(
+                    "INSERT INTO idempotency_record (record_key, request_hash, status, created_at, expires_at) VALUES (?, ?, 'IN_PROGRESS', ?, ?)",
+                    recordKey, requestHash, createdAt, expiresAt);
+            return new Begin(Outcome.PROCEED, null);
+        } catch (DuplicateKeyException e) {
+            // Fall through to the existing row
+        }
+
+        // Reclaim the key if its record has expired or its owner never finished
+        int taken = jdbcTemplate.update(
+                "UPDATE idempotency_record SET request_hash = ?, status = 'IN_PROGRESS', response_status = NULL, " +
+                "content_type = NULL, response_body = NULL, created_at = ?, expires_at = ? " +
+                "WHERE record_key = ? AND (expires_at < ? OR (status = 'IN_PROGRESS' AND created_at < ?))",
+                requestHash, createdAt, expiresAt, recordKey, createdAt,
+                Timestamp.valueOf(now.minusNanos(inProgressTimeoutMs * 1_000_000L)));
+        if (taken > 0) {
+            return new Begin(Outcome.PROCEED, null);
+        }
+
+        IdempotencyRecord existing = load(recordKey);
+        if (existing == null) {
+            // Released between our INSERT and SELECT; let the client retry rather than loop here
+            return new Begin(Outcome.IN_PROGRESS, null);
+        }
+        if (!existing.getRequestHash().equals(requestHash)) {
+            return new Begin(Outcome.MISMATCH, existing);
+        }
+        if (existing.getStatus() == IdempotencyRecord.Status.IN_PROGRESS) {
+            return new Begin(Outcome.IN_PROGRESS, existing);
+        }
+        synchronized (this) {
+            hotTier().put(recordKey, existing);
+        }
+        return new Begin(Outcome.REPLAY, existing);
+    }
+
+    // Stores the final response. Server errors are not stored: the key is released so a retry runs again.
+    public void complete(String recordKey, String requestHash, int responseStatus, String contentType, String responseBody) {
+        if (responseStatus >= 500) {
+            release(recordKey);
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiresAt = now.plusNanos(ttlMs * 1_000_000L);
+        int updated = jdbcTemplate.update(
+                "UPDATE idempotency_record SET status = 'COMPLETED', response_status = ?, content_type = ?, response_body = ?, expires_at = ? " +
+                "WHERE record_key = ? AND request_hash = ? AND status = 'IN_PROGRESS'",
+                responseStatus, contentType, responseBody, Timestamp.valueOf(expiresAt), recordKey, requestHash);
+        if (updated == 0) {
+            logger.warn("Idempotency record {} was taken over before completion; response not stored", recordKey);
+            return;
+        }
+
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.setRecordKey(recordKey);
+        record.setRequestHash(requestHash);
+        record.setStatus(IdempotencyRecord.Status.COMPLETED);
+        record.setResponseStatus(responseStatus);
+        record.setContentType(contentType);
+        record.setResponseBody(responseBody);
+        record.setCreatedAt(now);
+        record.setExpiresAt(expiresAt);
+        synchronized (this) {
+            hotTier().put(recordKey, record);
+        }
+    }
+
+    public void release(String recordKey) {
+        jdbcTemplate.update("DELETE FROM idempotency_record WHERE record_key = ? AND status = 'IN_PROGRESS'", recordKey);
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update("DELETE FROM idempotency_record WHERE expires_at < ? LIMIT " + purgeBatchSize, now);
+            total += deleted;
+        } while (deleted == purgeBatchSize);
+        synchronized (this) {
+            hotTier().values().removeIf(record -> record.getExpiresAt().isBefore(LocalDateTime.now()));
+        }
+        if (total > 0) {
+            logger.info("Purged {} expired idempotency records", total);
+        }
+    }
+
+    private IdempotencyRecord load(String recordKey) {
+        List<IdempotencyRecord> rows = jdbcTemplate.query(
+                "SELECT record_key, request_hash, status, response_status, content_type, response_body, created_at, expires_at " +
+                "FROM idempotency_record WHERE record_key = ?",
+                (rs, rowNum) -> {
+                    IdempotencyRecord record = new IdempotencyRecord();
+                    record.setRecordKey(rs.getString("record_key"));
+                    record.setRequestHash(rs.getString("request_hash"));
+                    record.setStatus(IdempotencyRecord.Status.valueOf(rs.getString("status")));
+                    int status = rs.getInt("response_status");
+                    record.setResponseStatus(rs.wasNull() ? null : status);
+                    record.setContentType(rs.getString("content_type"));
+                    record.setResponseBody(rs.getString("response_body"));
+                    record.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+                    record.setExpiresAt(rs.getTimestamp("expires_at").toLocalDateTime());
+                    return record;
+                },
+                recordKey);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    // Access-ordered LinkedHashMap as a bounded LRU; guarded by this
+    private Map<String, IdempotencyRecord> hotTier() {
+        if (hotTier == null) {
+            final int capacity = hotCacheSize;
+            hotTier = new LinkedHashMap<>(Math.min(capacity, 1024), 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, IdempotencyRecord> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+        return hotTier;
+    }
+}
@@ -0,0 +1,84 @@
+package com.sunyield.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Single-node OTP store. Entries expire after otp.ttl-ms and are swept periodically.
+@Service
+@ConditionalOnProperty(name = "otp.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryOtpStore implements OtpStore {
+
+    @Value("${otp.ttl-ms:600000}")
+    private long ttlMs;
+
+    @Value("${otp.max-attempts:5}")
+    private int maxAttempts;
+
+    private final Map<String, Entry> codes = new ConcurrentHashMap<>();
+
+    private static class Entry {
+        private final String otp;
+        private final long expiresAt;
+        private int attempts;
+
+        Entry(String otp, long expiresAt) {
+            this.otp = otp;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    @Override
+    public void put(Purpose purpose, String email, String otp) {
+        codes.put(key(purpose, email), new Entry(otp, System.currentTimeMillis() + ttlMs));
+    }
+
+    @Override
+    public Result verify(Purpose purpose, String email, String otp, boolean consume) {
+        Result[] result = new Result[1];
+        // compute() makes check-and-count atomic per key
+        codes.compute(key(purpose, email), (key, entry) -> {
+            if (entry == null) {
+                result[0] = Result.NOT_FOUND;
+                return null;
+            }
+            if (System.currentTimeMillis() > entry.expiresAt) {
+                result[0] = Result.EXPIRED;
+                return null;
+            }
+            if (entry.attempts >= maxAttempts) {
+                result[0] = Result.TOO_MANY_ATTEMPTS;
+                return entry;
+            }
+            entry.attempts++;
+            if (otp == null || !MessageDigest.isEqual(entry.otp.getBytes(StandardCharsets.UTF_8), otp.getBytes(StandardCharsets.UTF_8))) {
+                result[0] = Result.INVALID;
+                return entry;
+            }
+            result[0] = Result.VALID;
+            return consume ? null : entry;
+        });
+        return result[0];
+    }
+
+    @Override
+    public void invalidate(Purpose purpose, String email) {
+        codes.remove(key(purpose, email));
+    }
+
+    @Scheduled(fixedDelayString = "${otp.sweep-interval-ms:60000}")
+    public void sweepExpired() {
+        long now = System.currentTimeMillis();
+        codes.values().removeIf(entry -> now > entry.expiresAt);
+    }
+
+    private static String key(Purpose purpose, String email) {
+        return purpose.name() + ":" + (email == null ? "" : email.trim().toLowerCase());
+    }
+}
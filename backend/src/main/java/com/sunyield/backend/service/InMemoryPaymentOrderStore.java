@@ -0,0 +1,172 @@
+package com.sunyield.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+// Single-node order store. Finished orders are queued in the order they finished and evicted
+// once older than finished-ttl-ms, or earlier when the store holds more than max-orders.
+// PENDING orders are kept until pending-ttl-ms (the mock's 24h order expiry). With spill-to-db,
+// evicted orders are written to mock_payment_order and lookups that miss memory fall back to it.
+@Service
+@ConditionalOnProperty(name = "cashfree.mock.order-store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryPaymentOrderStore implements PaymentOrderStore {
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryPaymentOrderStore.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${cashfree.mock.order-store.max-orders:10000}")
+    private int maxOrders;
+
+    @Value("${cashfree.mock.order-store.finished-ttl-ms:3600000}")
+    private long finishedTtlMs;
+
+    @Value("${cashfree.mock.order-store.pending-ttl-ms:86400000}")
+    private long pendingTtlMs;
+
+    @Value("${cashfree.mock.order-store.spill-to-db:false}")
+    private boolean spillToDb;
+
+    private final Map<String, CashfreeMockService.PaymentOrder> orders = new ConcurrentHashMap<>();
+    private final Set<String> finishedIds = ConcurrentHashMap.newKeySet();
+    // Finished order ids, oldest first; only evict() removes from the head
+    private final Queue<String> finishedQueue = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void save(CashfreeMockService.PaymentOrder order) {
+        orders.put(order.getOrderId(), order);
+        if (isFinished(order) && finishedIds.add(order.getOrderId())) {
+            finishedQueue.add(order.getOrderId());
+        }
+        if (orders.size() > maxOrders) {
+            evict(false);
+        }
+    }
+
+    @Override
+    public CashfreeMockService.PaymentOrder get(String orderId) {
+        CashfreeMockService.PaymentOrder order = orders.get(orderId);
+        if (order == null && spillToDb) {
+            order = loadSpilled(orderId);
+        }
+        return order;
+    }
+
+    @Override
+    public boolean updateStatus(String orderId, String expectedStatus, String newStatus, LocalDateTime processedAt) {
+        CashfreeMockService.PaymentOrder order = get(orderId);
+        if (order == null) {
+            return false;
+        }
+        synchronized (order) {
+            if (!expectedStatus.equals(order.getStatus())) {
+                return false;
+            }
+            order.setStatus(newStatus);
+            order.setProcessedAt(processedAt);
+        }
+        save(order);
+        return true;
+    }
+
+    @Override
+    public List<CashfreeMockService.PaymentOrder> recent(int limit) {
+        return orders.values().stream()
+                .sorted(Comparator.comparing(CashfreeMockService.PaymentOrder::getCreatedAt,
+                        Comparator.nullsLast(Comparator.reverseOrder())))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public int size() {
+        return orders.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        orders.clear();
+        finishedIds.clear();
+        finishedQueue.clear();
+    }
+
+    @Scheduled(fixedDelayString = "${cashfree.mock.order-store.sweep-interval-ms:60000}")
+    public void sweep() {
+        evict(true);
+        LocalDateTime pendingCutoff = LocalDateTime.now().minusNanos(pendingTtlMs * 1_000_000L);
+        int expired = 0;
+        for (CashfreeMockService.PaymentOrder order : orders.values()) {
+            if (!isFinished(order) && order.getCreatedAt() != null && order.getCreatedAt().isBefore(pendingCutoff)
+                    && orders.remove(order.getOrderId(), order)) {
+                expired++;
+            }
+        }
+        if (expired > 0) {
+            logger.info("Expired {} pending mock orders", expired);
+        }
+        if (orders.size() > maxOrders) {
+            logger.warn("Mock order store holds {} orders (max {}); the excess are all PENDING", orders.size(), maxOrders);
+        }
+    }
+
+    // Evicts finished orders from the head of the queue: those past their TTL, plus (on overflow)
+    // as many more as needed to get back under max-orders. Evictors are serialized; readers and
+    // writers are not blocked.
+    private synchronized void evict(boolean byAge) {
+        LocalDateTime cutoff = LocalDateTime.now().minusNanos(finishedTtlMs * 1_000_000L);
+        List<CashfreeMockService.PaymentOrder> evicted = new ArrayList<>();
+        String orderId;
+        while ((orderId = finishedQueue.peek()) != null) {
+            CashfreeMockService.PaymentOrder order = orders.get(orderId);
+            boolean overflow = orders.size() > maxOrders;
+            boolean aged = byAge && (order == null || order.getProcessedAt() == null || order.getProcessedAt().isBefore(cutoff));
+            if (!overflow && !aged) {
+                break;
+            }
+            finishedQueue.poll();
+            finishedIds.remove(orderId);
+            if (order != null && orders.remove(orderId, order)) {
+                evicted.add(order);
+            }
+        }
+        if (spillToDb && !evicted.isEmpty()) {
+            spill(evicted);
+        }
+    }
+
+    private void spill(List<CashfreeMockService.PaymentOrder> evicted) {
+        List<Object[]> rows = new ArrayList<>(evicted.size());
+        for (CashfreeMockService.PaymentOrder order : evicted) {
+            rows.add(PaymentOrderRows.toRow(order));
+        }
+        jdbcTemplate.batchUpdate(PaymentOrderRows.UPSERT, rows);
+    }
+
+    private CashfreeMockService.PaymentOrder loadSpilled(String orderId) {
+        List<CashfreeMockService.PaymentOrder> rows = jdbcTemplate.query(
+                "SELECT " + PaymentOrderRows.COLUMNS + " FROM mock_payment_order WHERE order_id = ?",
+                PaymentOrderRows.MAPPER, orderId);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private static boolean isFinished(CashfreeMockService.PaymentOrder order) {
+        return !"PENDING".equals(order.getStatus());
+    }
+}
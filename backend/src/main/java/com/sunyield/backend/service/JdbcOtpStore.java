@@ -0,0 +1,104 @@
+package com.sunyield.backend.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+// Shared OTP store for multi-node deployments, backed by its own otp_code table (a stand-in for
+// Redis or similar). Attempts are counted with a conditional UPDATE so concurrent guesses on
+// different nodes cannot exceed the limit.
+@Service
+@ConditionalOnProperty(name = "otp.store", havingValue = "jdbc")
+public class JdbcOtpStore implements OtpStore {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${otp.ttl-ms:600000}")
+    private long ttlMs;
+
+    @Value("${otp.max-attempts:5}")
+    private int maxAttempts;
+
+    @Override
+    public void put(Purpose purpose, String email, String otp) {
+        jdbcTemplate.update(
+                "INSERT INTO otp_code (purpose, email, code_hash, expires_at, attempts) VALUES (?, ?, ?, ?, 0) " +
+                "ON DUPLICATE KEY UPDATE code_hash = VALUES(code_hash), expires_at = VALUES(expires_at), attempts = 0",
+                purpose.name(), normalize(email), hash(otp),
+                Timestamp.valueOf(LocalDateTime.now().plusNanos(ttlMs * 1_000_000L)));
+    }
+
+    @Override
+    public Result verify(Purpose purpose, String email, String otp, boolean consume) {
+        String normalized = normalize(email);
+        int counted = jdbcTemplate.update(
+                "UPDATE otp_code SET attempts = attempts + 1 WHERE purpose = ? AND email = ? AND attempts < ?",
+                purpose.name(), normalized, maxAttempts);
+
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT code_hash, expires_at FROM otp_code WHERE purpose = ? AND email = ?",
+                purpose.name(), normalized);
+        if (rows.isEmpty()) {
+            return Result.NOT_FOUND;
+        }
+        Map<String, Object> row = rows.get(0);
+        LocalDateTime expiresAt = ((Timestamp) row.get("expires_at")).toLocalDateTime();
+        if (LocalDateTime.now().isAfter(expiresAt)) {
+            invalidate(purpose, email);
+            return Result.EXPIRED;
+        }
+        if (counted == 0) {
+            return Result.TOO_MANY_ATTEMPTS;
+        }
+        String expected = (String) row.get("code_hash");
+        if (otp == null || !MessageDigest.isEqual(expected.getBytes(StandardCharsets.US_ASCII), hash(otp).getBytes(StandardCharsets.US_ASCII))) {
+            return Result.INVALID;
+        }
+        if (consume) {
+            // Only one concurrent verifier can consume the code
+            int deleted = jdbcTemplate.update(
+                    "DELETE FROM otp_code WHERE purpose = ? AND email = ? AND code_hash = ?",
+                    purpose.name(), normalized, expected);
+            if (deleted == 0) {
+                return Result.NOT_FOUND;
+            }
+        }
+        return Result.VALID;
+    }
+
+    @Override
+    public void invalidate(Purpose purpose, String email) {
+        jdbcTemplate.update("DELETE FROM otp_code WHERE purpose = ? AND email = ?", purpose.name(), normalize(email));
+    }
+
+    @Scheduled(fixedDelayString = "${otp.sweep-interval-ms:60000}")
+    public void sweepExpired() {
+        jdbcTemplate.update("DELETE FROM otp_code WHERE expires_at < ?", Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    private static String normalize(String email) {
+        return email == null ? "" : email.trim().toLowerCase();
+    }
+
+    private static String hash(String otp) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(otp.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
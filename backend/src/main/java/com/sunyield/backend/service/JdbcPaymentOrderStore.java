@@ -0,0 +1,160 @@
+package com.sunyield.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Order store shared by every node through the mock_payment_order table, so an order created on
+// one node can be paid or polled on another without sticky sessions. Each node keeps a bounded
+// read-through cache; status changes are conditional UPDATEs in the database, and every node
+// polls updated_at to drop cached copies that another node has changed.
+@Service
+@ConditionalOnProperty(name = "cashfree.mock.order-store", havingValue = "database")
+public class JdbcPaymentOrderStore implements PaymentOrderStore {
+    private static final Logger logger = LoggerFactory.getLogger(JdbcPaymentOrderStore.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${cashfree.mock.order-store.cache-size:10000}")
+    private int cacheSize;
+
+    // Finished orders are deleted from the table after this long
+    @Value("${cashfree.mock.order-store.db-retention-ms:604800000}")
+    private long retentionMs;
+
+    @Value("${cashfree.mock.order-store.purge-batch-size:1000}")
+    private int purgeBatchSize;
+
+    private final Map<String, CashfreeMockService.PaymentOrder> cache = new ConcurrentHashMap<>();
+    // Highest updated_at seen by the invalidation poll, in database time
+    private volatile Timestamp watermark;
+    // Bumped after every invalidation; a get() that raced one drops the copy it just cached
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        watermark = jdbcTemplate.queryForObject("SELECT CURRENT_TIMESTAMP(6)", Timestamp.class);
+    }
+
+    @Override
+    public void save(CashfreeMockService.PaymentOrder order) {
+        jdbcTemplate.update(PaymentOrderRows.UPSERT, PaymentOrderRows.toRow(order));
+        cache(order);
+    }
+
+    @Override
+    public CashfreeMockService.PaymentOrder get(String orderId) {
+        CashfreeMockService.PaymentOrder order = cache.get(orderId);
+        if (order != null) {
+            return order;
+        }
+        long stamp = invalidations.get();
+        List<CashfreeMockService.PaymentOrder> rows = jdbcTemplate.query(
+                "SELECT " + PaymentOrderRows.COLUMNS + " FROM mock_payment_order WHERE order_id = ?",
+                PaymentOrderRows.MAPPER, orderId);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        order = rows.get(0);
+        cache(order);
+        if (invalidations.get() != stamp) {
+            // The row may have changed between our SELECT and the put, and the invalidation that
+            // covered it has already run, so nothing else would ever remove this copy
+            cache.remove(orderId, order);
+        }
+        return order;
+    }
+
+    @Override
+    public boolean updateStatus(String orderId, String expectedStatus, String newStatus, LocalDateTime processedAt) {
+        int updated = jdbcTemplate.update(
+                "UPDATE mock_payment_order SET status = ?, processed_at = ?, updated_at = CURRENT_TIMESTAMP(6) " +
+                "WHERE order_id = ? AND status = ?",
+                newStatus, PaymentOrderRows.toTimestamp(processedAt), orderId, expectedStatus);
+        // Either way the cached copy is stale now; the next get() reads the winner's row
+        cache.remove(orderId);
+        invalidations.incrementAndGet();
+        return updated > 0;
+    }
+
+    @Override
+    public List<CashfreeMockService.PaymentOrder> recent(int limit) {
+        return jdbcTemplate.query(
+                "SELECT " + PaymentOrderRows.COLUMNS + " FROM mock_payment_order ORDER BY created_at DESC LIMIT ?",
+                PaymentOrderRows.MAPPER, limit);
+    }
+
+    @Override
+    public int size() {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM mock_payment_order", Integer.class);
+        return count != null ? count : 0;
+    }
+
+    @Override
+    public void clear() {
+        jdbcTemplate.update("DELETE FROM mock_payment_order");
+        cache.clear();
+    }
+
+    // Cross-node invalidation: drop cached orders written since the last poll. The watermark is
+    // re-read inclusively, so rows committed in the same microsecond are never skipped.
+    @Scheduled(fixedDelayString = "${cashfree.mock.order-store.poll-interval-ms:1000}")
+    public void pollChanges() {
+        List<Map<String, Object>> changed = jdbcTemplate.queryForList(
+                "SELECT order_id, updated_at FROM mock_payment_order WHERE updated_at >= ? ORDER BY updated_at",
+                watermark);
+        for (Map<String, Object> row : changed) {
+            cache.remove((String) row.get("order_id"));
+            Timestamp updatedAt = (Timestamp) row.get("updated_at");
+            if (updatedAt != null && updatedAt.after(watermark)) {
+                watermark = updatedAt;
+            }
+        }
+        if (!changed.isEmpty()) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cashfree.mock.order-store.sweep-interval-ms:60000}")
+    public void purgeFinished() {
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusNanos(retentionMs * 1_000_000L));
+        int total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(
+                    "DELETE FROM mock_payment_order WHERE status <> 'PENDING' AND updated_at < ? LIMIT " + purgeBatchSize,
+                    cutoff);
+            total += deleted;
+        } while (deleted == purgeBatchSize);
+        if (total > 0) {
+            logger.info("Purged {} finished mock orders", total);
+        }
+    }
+
+    private void cache(CashfreeMockService.PaymentOrder order) {
+        if (cache.size() >= cacheSize) {
+            // It is only a cache; dropping arbitrary entries costs a re-read from the table
+            Iterator<String> keys = cache.keySet().iterator();
+            for (int i = 0; i < cacheSize / 10 + 1 && keys.hasNext(); i++) {
+                keys.next();
+                keys.remove();
+            }
+        }
+        cache.put(order.getOrderId(), order);
+    }
+}
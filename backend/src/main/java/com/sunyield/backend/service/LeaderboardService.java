@@ -0,0 +1,446 @@
+package com.sunyield.backend.service;
+
+import com.sunyield.backend.entity.LeaderboardEntry;
+import com.sunyield.backend.entity.RewardHistory;
+import com.sunyield.backend.entity.User;
+import com.sunyield.backend.repository.LeaderboardEntryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Top-K leaderboards kept entirely in memory and updated as events happen.
+// Each board is a score map plus a skip-list ordered by score, so an update is O(log n)
+// and reading the top K is O(K). Changed scores are flushed to leaderboard_entry periodically.
+@Service
+public class LeaderboardService {
+    private static final Logger logger = LoggerFactory.getLogger(LeaderboardService.class);
+    private static final String ALL_TIME_KEY = "ALL";
+
+    public enum Board {
+        REINVEST,
+        DONATE,
+        GIFT,
+        KWH
+    }
+
+    public enum Period {
+        ALL_TIME,
+        MONTHLY
+    }
+
+    @Autowired
+    private LeaderboardEntryRepository leaderboardEntryRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${leaderboard.max-limit:100}")
+    private int maxLimit;
+
+    // Monthly boards older than this many months are dropped from memory (they stay in the table)
+    @Value("${leaderboard.retained-months:2}")
+    private int retainedMonths;
+
+    // Keyed by board + period key ("ALL" or "yyyy-MM")
+    private final Map<BoardKey, Ranking> rankings = new ConcurrentHashMap<>();
+    private final Map<Long, String> displayNames = new ConcurrentHashMap<>();
+    private final Set<DirtyScore> dirty = ConcurrentHashMap.newKeySet();
+
+    // Updates share the read lock; rebuild() takes the write lock only to start and stop collecting
+    // the updates made while it runs and to swap its result in
+    private final ReentrantReadWriteLock updateLock = new ReentrantReadWriteLock();
+    private volatile Map<BoardKey, Map<Long, Long>> duringRebuild;
+
+    // ==================== UPDATES ====================
+
+    public void recordTransfer(Board board, User user, BigDecimal amount, LocalDateTime date) {
+        if (user == null) {
+            return;
+        }
+        recordTransfer(board, user.getId(), user.getFullName(), amount, date);
+    }
+
+    // For batch writers that only hold the user id; the display name is resolved from earlier events
+    public void recordTransfer(Board board, Long userId, BigDecimal amount, LocalDateTime date) {
+        recordTransfer(board, userId, null, amount, date);
+    }
+
+    private void recordTransfer(Board board, Long userId, String fullName, BigDecimal amount, LocalDateTime date) {
+        if (userId == null || amount == null || amount.signum() <= 0) {
+            return;
+        }
+        long paise = amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+        record(board, userId, fullName, paise, date != null ? date.toLocalDate() : LocalDate.now());
+    }
+
+    public void recordRewards(List<RewardHistory> rewards) {
+        for (RewardHistory reward : rewards) {
+            if (reward.getUser() == null || reward.getKWh() <= 0) {
+                continue;
+            }
+            LocalDate date = reward.getDate() != null ? reward.getDate() : LocalDate.of(reward.getYear(), reward.getMonth(), 1);
+            record(Board.KWH, reward.getUser().getId(), reward.getUser().getFullName(), Math.round(reward.getKWh() * 1000), date);
+        }
+    }
+
+    private void record(Board board, Long userId, String fullName, long delta, LocalDate date) {
+        if (fullName != null) {
+            displayNames.put(userId, fullName);
+        }
+        add(new BoardKey(board, ALL_TIME_KEY), userId, delta);
+        add(new BoardKey(board, YearMonth.from(date).toString()), userId, delta);
+    }
+
+    private void add(BoardKey key, Long userId, long delta) {
+        long score;
+        updateLock.readLock().lock();
+        try {
+            score = rankings.computeIfAbsent(key, k -> new Ranking()).add(userId, delta);
+            dirty.add(new DirtyScore(key, userId));
+            Map<BoardKey, Map<Long, Long>> pending = duringRebuild;
+            if (pending != null) {
+                pending.computeIfAbsent(key, k -> new ConcurrentHashMap<>()).merge(userId, delta, Long::sum);
+            }
+        } finally {
+            updateLock.readLock().unlock();
+        }
+        logger.debug("Leaderboard {} {} user {} -> {}", key.board, key.periodKey, userId, score);
+    }
+
+    // ==================== READS ====================
+
+    public List<Map<String, Object>> top(Board board, Period period, int limit) {
+        int k = Math.max(1, Math.min(limit, maxLimit));
+        Ranking ranking = rankings.get(new BoardKey(board, periodKey(period)));
+        List<Map<String, Object>> result = new ArrayList<>(k);
+        if (ranking == null) {
+            return result;
+        }
+        int rank = 1;
+        Iterator<Ranked> it = ranking.ordered.iterator();
+        while (it.hasNext() && result.size() < k) {
+            Ranked entry = it.next();
+            Map<String, Object> row = new HashMap<>();
+            row.put("rank", rank++);
+            row.put("userId", entry.userId);
+            row.put("name", displayNames.getOrDefault(entry.userId, "SunYield investor"));
+            row.put("score", toDisplayScore(board, entry.score));
+            result.add(row);
+        }
+        return result;
+    }
+
+    public String unitOf(Board board) {
+        return board == Board.KWH ? "kWh" : "INR";
+    }
+
+    private static double toDisplayScore(Board board, long score) {
+        return board == Board.KWH ? score / 1000.0 : score / 100.0;
+    }
+
+    private static String periodKey(Period period) {
+        return period == Period.MONTHLY ? YearMonth.now().toString() : ALL_TIME_KEY;
+    }
+
+    // ==================== PERSISTENCE ====================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        try {
+            List<LeaderboardEntry> rows = leaderboardEntryRepository.findByPeriodKeyIn(retainedPeriodKeys());
+            if (rows.isEmpty()) {
+                rebuild();
+                return;
+            }
+            Map<BoardKey, Ranking> loaded = new HashMap<>();
+            for (LeaderboardEntry row : rows) {
+                BoardKey key = new BoardKey(Board.valueOf(row.getBoard()), row.getPeriodKey());
+                loaded.computeIfAbsent(key, k -> new Ranking()).add(row.getUserId(), row.getScore());
+            }
+            rankings.putAll(loaded);
+            loadDisplayNames(userIdsOf(loaded));
+            logger.info("Loaded {} leaderboard scores", rows.size());
+        } catch (Exception e) {
+            logger.error("Failed to load leaderboards: {}", e.getMessage());
+        }
+    }
+
+    // Writes scores changed since the last flush; a score that changes again before the
+    // next flush is written once with its latest value.
+    // Synchronized with rebuild(), which replaces the table.
+    @Scheduled(fixedDelayString = "${leaderboard.flush-interval-ms:30000}")
+    public synchronized void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        List<DirtyScore> batch = new ArrayList<>(dirty);
+        dirty.removeAll(batch);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (DirtyScore entry : batch) {
+                    Ranking ranking = rankings.get(entry.key);
+                    Long score = ranking != null ? ranking.scores.get(entry.userId) : null;
+                    if (score != null) {
+                        leaderboardEntryRepository.upsertScore(entry.key.board.name(), entry.key.periodKey, entry.userId, score);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            // Put the batch back so the next run retries it
+            dirty.addAll(batch);
+            logger.error("Failed to flush {} leaderboard scores: {}", batch.size(), e.getMessage());
+        }
+        pruneOldMonths();
+    }
+
+    // Recomputes every board (all-time and every month) from CreditTransferLog and RewardHistory
+    // with aggregate queries, replaces the table with the result and swaps the retained boards in.
+    // Used on first start and for recovery. Scores recorded while the queries run are kept aside
+    // and added on top of the rebuilt boards, so they are not lost to the swap.
+    public synchronized Map<String, Object> rebuild() {
+        Map<BoardKey, Map<Long, Long>> pending = new ConcurrentHashMap<>();
+        updateLock.writeLock().lock();
+        try {
+            duringRebuild = pending;
+        } finally {
+            updateLock.writeLock().unlock();
+        }
+
+        Map<BoardKey, Ranking> rebuilt = new HashMap<>();
+        List<LeaderboardEntry> entries = new ArrayList<>();
+        try {
+            // One transaction, so all four aggregates read the same snapshot
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Object[] row : leaderboardEntryRepository.sumTransfersByTypeAndUser()) {
+                    put(rebuilt, new BoardKey(Board.valueOf((String) row[0]), ALL_TIME_KEY), row[1], row[2]);
+                }
+                for (Object[] row : leaderboardEntryRepository.sumTransfersByTypeUserAndMonth()) {
+                    put(rebuilt, new BoardKey(Board.valueOf((String) row[0]), (String) row[2]), row[1], row[3]);
+                }
+                for (Object[] row : leaderboardEntryRepository.sumWhByUser()) {
+                    put(rebuilt, new BoardKey(Board.KWH, ALL_TIME_KEY), row[0], row[1]);
+                }
+                for (Object[] row : leaderboardEntryRepository.sumWhByUserAndMonth()) {
+                    YearMonth month = YearMonth.of(((Number) row[1]).intValue(), ((Number) row[2]).intValue());
+                    put(rebuilt, new BoardKey(Board.KWH, month.toString()), row[0], row[3]);
+                }
+            });
+
+            for (Map.Entry<BoardKey, Ranking> board : rebuilt.entrySet()) {
+                for (Map.Entry<Long, Long> score : board.getValue().scores.entrySet()) {
+                    LeaderboardEntry entry = new LeaderboardEntry();
+                    entry.setBoard(board.getKey().board.name());
+                    entry.setPeriodKey(board.getKey().periodKey);
+                    entry.setUserId(score.getKey());
+                    entry.setScore(score.getValue());
+                    entry.setUpdatedAt(LocalDateTime.now());
+                    entries.add(entry);
+                }
+            }
+            // Every period was recomputed, so the whole table is replaced
+            transactionTemplate.executeWithoutResult(status -> {
+                leaderboardEntryRepository.deleteAllRows();
+                leaderboardEntryRepository.saveAll(entries);
+            });
+        } catch (RuntimeException e) {
+            // Nothing was swapped; updates kept aside already went to the live boards too
+            updateLock.writeLock().lock();
+            try {
+                duringRebuild = null;
+            } finally {
+                updateLock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        updateLock.writeLock().lock();
+        try {
+            duringRebuild = null;
+            List<String> keep = retainedPeriodKeys();
+            Map<BoardKey, Ranking> swapped = new HashMap<>();
+            rebuilt.forEach((key, ranking) -> {
+                if (keep.contains(key.periodKey) || pending.containsKey(key)) {
+                    swapped.put(key, ranking);
+                }
+            });
+            // The stored rows are the rebuilt scores; updates made meanwhile are applied on top
+            // and flushed as usual
+            dirty.clear();
+            pending.forEach((key, deltas) -> deltas.forEach((userId, delta) -> {
+                swapped.computeIfAbsent(key, k -> new Ranking()).add(userId, delta);
+                dirty.add(new DirtyScore(key, userId));
+            }));
+            rankings.putAll(swapped);
+            rankings.keySet().retainAll(swapped.keySet());
+        } finally {
+            updateLock.writeLock().unlock();
+        }
+        loadDisplayNames(userIdsOf(rebuilt));
+        logger.info("Rebuilt {} leaderboards with {} scores; {} updates arrived during the rebuild",
+                rebuilt.size(), entries.size(), pending.values().stream().mapToInt(Map::size).sum());
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("boards", rebuilt.size());
+        result.put("scores", entries.size());
+        return result;
+    }
+
+    private static void put(Map<BoardKey, Ranking> target, BoardKey key, Object userId, Object score) {
+        if (userId == null || score == null) {
+            return;
+        }
+        target.computeIfAbsent(key, k -> new Ranking()).add(((Number) userId).longValue(), ((Number) score).longValue());
+    }
+
+    private void loadDisplayNames(Set<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        for (Object[] row : leaderboardEntryRepository.findDisplayNames(userIds)) {
+            if (row[1] != null) {
+                displayNames.put(((Number) row[0]).longValue(), (String) row[1]);
+            }
+        }
+    }
+
+    private static Set<Long> userIdsOf(Map<BoardKey, Ranking> boards) {
+        Set<Long> ids = new HashSet<>();
+        boards.values().forEach(ranking -> ids.addAll(ranking.scores.keySet()));
+        return ids;
+    }
+
+    private List<String> retainedPeriodKeys() {
+        List<String> keys = new ArrayList<>();
+        keys.add(ALL_TIME_KEY);
+        YearMonth month = YearMonth.now();
+        for (int i = 0; i < retainedMonths; i++) {
+            keys.add(month.minusMonths(i).toString());
+        }
+        return keys;
+    }
+
+    private void pruneOldMonths() {
+        List<String> keep = retainedPeriodKeys();
+        rankings.keySet().removeIf(key -> !keep.contains(key.periodKey)
+                && dirty.stream().noneMatch(d -> d.key.equals(key)));
+    }
+
+    // ==================== IN-MEMORY STRUCTURES ====================
+
+    private static class Ranking {
+        private final ConcurrentHashMap<Long, Long> scores = new ConcurrentHashMap<>();
+        private final NavigableSet<Ranked> ordered = new ConcurrentSkipListSet<>();
+
+        // compute() serialises updates per user, so the ordered set never holds two entries for one user
+        long add(Long userId, long delta) {
+            return scores.compute(userId, (id, previous) -> {
+                long updated = (previous == null ? 0 : previous) + delta;
+                if (previous != null) {
+                    ordered.remove(new Ranked(previous, id));
+                }
+                ordered.add(new Ranked(updated, id));
+                return updated;
+            });
+        }
+    }
+
+    // Highest score first; ties broken by user id so the order is stable
+    private static class Ranked implements Comparable<Ranked> {
+        private final long score;
+        private final long userId;
+
+        Ranked(long score, long userId) {
+            this.score = score;
+            this.userId = userId;
+        }
+
+        @Override
+        public int compareTo(Ranked other) {
+            int byScore = Long.compare(other.score, score);
+            return byScore != 0 ? byScore : Long.compare(userId, other.userId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Ranked)) return false;
+            Ranked other = (Ranked) o;
+            return score == other.score && userId == other.userId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(score, userId);
+        }
+    }
+
+    private static class BoardKey {
+        private final Board board;
+        private final String periodKey;
+
+        BoardKey(Board board, String periodKey) {
+            this.board = board;
+            this.periodKey = periodKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof BoardKey)) return false;
+            BoardKey other = (BoardKey) o;
+            return board == other.board && periodKey.equals(other.periodKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(board, periodKey);
+        }
+    }
+
+    private static class DirtyScore {
+        private final BoardKey key;
+        private final Long userId;
+
+        DirtyScore(BoardKey key, Long userId) {
+            this.key = key;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof DirtyScore)) return false;
+            DirtyScore other = (DirtyScore) o;
+            return key.equals(other.key) && userId.equals(other.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(key, userId);
+        }
+    }
+}
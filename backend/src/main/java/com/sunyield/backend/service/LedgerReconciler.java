@@ -0,0 +1,466 @@
+package com.sunyield.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+// Checks the ledger against its sources of truth:
+//  - every SUCCESS pay-in order at the gateway (CF_...) has exactly one ADD_FUNDS or SUBSCRIPTION row
+//  - every reserved withdrawal (queued, in flight, paid, or failed after dispatch) has exactly one WITHDRAWAL row
+// Both sides of each check are streamed from MySQL already sorted by the join key and merge-joined,
+// so memory stays constant however many rows there are. Each stream holds its own connection, and
+// repairs go through a third: every repair is its own short transaction that locks the wallet it
+// touches and moves wallet_account by the same amount as the ledger.
+//
+// Gateway orders are only durable with cashfree.mock.order-store=database; with the in-memory store
+// the gateway check is skipped. Finished orders are purged after their retention, so that check only
+// covers orders created within reconciliation.window-hours.
+@Service
+public class LedgerReconciler {
+    private static final Logger logger = LoggerFactory.getLogger(LedgerReconciler.class);
+
+    public static final String MISSING_LEDGER = "MISSING_LEDGER";
+    public static final String DUPLICATE_LEDGER = "DUPLICATE_LEDGER";
+    public static final String AMOUNT_MISMATCH = "AMOUNT_MISMATCH";
+    public static final String ORPHAN_LEDGER = "ORPHAN_LEDGER";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Value("${cashfree.mock.order-store:memory}")
+    private String orderStore;
+
+    @Value("${reconciliation.auto-repair:false}")
+    private boolean scheduledRepair;
+
+    @Value("${reconciliation.window-hours:72}")
+    private long windowHours;
+
+    // Orders settled more recently than this may still be getting their ledger row written
+    @Value("${reconciliation.grace-minutes:60}")
+    private long graceMinutes;
+
+    @Value("${reconciliation.max-samples:200}")
+    private int maxSamples;
+
+    // Forward-only, row-by-row result sets (Connector/J streams when fetch size is Integer.MIN_VALUE)
+    private JdbcTemplate streamingJdbc;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ledger-reconciler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile Map<String, Object> lastReport;
+
+    @PostConstruct
+    public void init() {
+        streamingJdbc = new JdbcTemplate(dataSource);
+        streamingJdbc.setFetchSize(Integer.MIN_VALUE);
+    }
+
+    @Scheduled(cron = "${reconciliation.cron:0 30 3 * * *}")
+    public void scheduledRun() {
+        start(scheduledRepair);
+    }
+
+    // Starts a pass on the reconciler thread; false if one is already running
+    public boolean start(boolean repair) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        worker.submit(() -> {
+            try {
+                run(repair);
+            } catch (Exception e) {
+                logger.error("Ledger reconciliation failed: {}", e.getMessage(), e);
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public Map<String, Object> getLastReport() {
+        return lastReport;
+    }
+
+    public Map<String, Object> run(boolean repair) {
+        long started = System.currentTimeMillis();
+        Report report = new Report(repair, maxSamples);
+
+        if ("database".equals(orderStore)) {
+            reconcileGatewayOrders(report);
+        } else {
+            report.skipped.add("gateway orders (cashfree.mock.order-store is not database)");
+        }
+        reconcileWithdrawals(report);
+
+        Map<String, Object> result = report.toMap();
+        result.put("startedAt", new Timestamp(started).toLocalDateTime());
+        result.put("elapsedMs", System.currentTimeMillis() - started);
+        lastReport = result;
+        logger.info("Ledger reconciliation: {} gateway orders, {} withdrawals checked; discrepancies {}; {} repaired",
+                report.gatewayOrdersChecked, report.withdrawalsChecked, report.counts, report.repaired);
+        return result;
+    }
+
+    // ---- gateway pay-ins vs ADD_FUNDS / SUBSCRIPTION rows, joined on the order id ----
+
+    private void reconcileGatewayOrders(Report report) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime since = now.minusHours(windowHours);
+        LocalDateTime settledBefore = now.minusMinutes(graceMinutes);
+
+        // BINARY ordering on both sides matches String.compareTo for these ASCII ids
+        try (Stream<GatewayOrder> orders = streamingJdbc.queryForStream(
+                     "SELECT order_id, order_amount, order_note, customer_email, created_at FROM mock_payment_order " +
+                     "WHERE status = 'SUCCESS' AND order_id LIKE 'CF\\_%' AND created_at >= ? " +
+                     "ORDER BY CAST(order_id AS BINARY)",
+                     (rs, i) -> new GatewayOrder(rs.getString(1), rs.getBigDecimal(2), rs.getString(3), rs.getString(4),
+                             rs.getTimestamp(5).toLocalDateTime()),
+                     Timestamp.valueOf(since.minusMinutes(graceMinutes)));
+             Stream<LedgerRow> ledger = streamingJdbc.queryForStream(
+                     "SELECT SUBSTRING_INDEX(external_reference, ':', -1) AS order_id, id, type, amount, " +
+                     "COALESCE(to_user_id, from_user_id) FROM credit_transfer_log " +
+                     "WHERE type IN ('ADD_FUNDS', 'SUBSCRIPTION') AND external_reference IS NOT NULL " +
+                     "AND SUBSTRING_INDEX(external_reference, ':', -1) LIKE 'CF\\_%' AND date >= ? " +
+                     "ORDER BY CAST(SUBSTRING_INDEX(external_reference, ':', -1) AS BINARY)",
+                     (rs, i) -> new LedgerRow(rs.getString(1), rs.getLong(2), rs.getString(3), rs.getBigDecimal(4), rs.getLong(5)),
+                     Timestamp.valueOf(since))) {
+
+            Peeking<GatewayOrder> left = new Peeking<>(orders.iterator());
+            Peeking<LedgerRow> right = new Peeking<>(ledger.iterator());
+            while (left.peek() != null || right.peek() != null) {
+                GatewayOrder order = left.peek();
+                LedgerRow row = right.peek();
+                int cmp = order == null ? 1 : row == null ? -1 : order.orderId.compareTo(row.key);
+
+                if (cmp > 0) {
+                    // Ledger rows whose order was never paid, or is older than the gateway window
+                    while (right.peek() != null && right.peek().key.equals(row.key)) {
+                        LedgerRow orphan = right.next();
+                        report.record(ORPHAN_LEDGER, orphan.type + ":" + orphan.key, "ledger row " + orphan.id + " has no SUCCESS gateway order");
+                    }
+                    continue;
+                }
+
+                left.next();
+                report.gatewayOrdersChecked++;
+                List<LedgerRow> matches = new ArrayList<>(1);
+                while (cmp == 0 && right.peek() != null && right.peek().key.equals(order.orderId)) {
+                    matches.add(right.next());
+                }
+
+                if (matches.isEmpty()) {
+                    // Outside the window, or too fresh to judge
+                    if (order.createdAt.isBefore(since) || order.createdAt.isAfter(settledBefore)) {
+                        continue;
+                    }
+                    report.record(MISSING_LEDGER, order.orderId, "SUCCESS order of " + order.amount + " has no ledger row");
+                    if (report.repair && repairMissingAddFunds(order)) {
+                        report.repaired++;
+                    }
+                } else if (matches.size() > 1) {
+                    report.record(DUPLICATE_LEDGER, order.orderId, matches.size() + " ledger rows for one order");
+                } else if (matches.get(0).amount.compareTo(order.amount) != 0) {
+                    LedgerRow match = matches.get(0);
+                    report.record(AMOUNT_MISMATCH, order.orderId, "gateway " + order.amount + ", ledger " + match.amount);
+                    if (report.repair) {
+                        correctAmount(match, order.amount);
+                        report.repaired++;
+                    }
+                }
+            }
+        }
+    }
+
+    // Only wallet top-ups can be rebuilt from the order alone; a missing SUBSCRIPTION row also
+    // needs its subscription, so those are left for manual review
+    private boolean repairMissingAddFunds(GatewayOrder order) {
+        if (order.note == null || !order.note.startsWith("Add funds to wallet") || order.email == null) {
+            return false;
+        }
+        List<Long> userIds = jdbcTemplate.queryForList("SELECT id FROM user WHERE email = ?", Long.class, order.email);
+        if (userIds.isEmpty()) {
+            return false;
+        }
+        Long userId = userIds.get(0);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                walletService.lockAccounts(List.of(userId));
+                jdbcTemplate.update(
+                        "INSERT INTO credit_transfer_log (to_user_id, amount, type, date, notes, external_reference) " +
+                        "VALUES (?, ?, 'ADD_FUNDS', ?, ?, ?)",
+                        userId, order.amount, Timestamp.valueOf(LocalDateTime.now()),
+                        "Funds added via payment gateway. Order: " + order.orderId + " (restored by reconciliation)",
+                        "ADD_FUNDS:" + order.orderId);
+                walletService.applyDeltas(Map.of(userId, order.amount));
+            });
+            return true;
+        } catch (DuplicateKeyException e) {
+            // The late callback got there first
+            return false;
+        }
+    }
+
+    // ---- withdrawals vs WITHDRAWAL rows, joined on the withdrawal id ----
+
+    private void reconcileWithdrawals(Report report) {
+        try (Stream<Withdrawal> withdrawals = streamingJdbc.queryForStream(
+                     "SELECT id, user_id, amount, status, payout_batch_id, payment_reference_id FROM withdrawal_request ORDER BY id",
+                     (rs, i) -> new Withdrawal(rs.getLong(1), rs.getLong(2), rs.getBigDecimal(3), rs.getString(4),
+                             rs.getString(5), rs.getString(6)));
+             Stream<LedgerRow> ledger = streamingJdbc.queryForStream(
+                     "SELECT CAST(SUBSTRING(external_reference, 12) AS UNSIGNED) AS withdrawal_id, id, type, amount, " +
+                     "COALESCE(to_user_id, from_user_id) " +
+                     "FROM credit_transfer_log WHERE type = 'WITHDRAWAL' AND external_reference LIKE 'WITHDRAWAL:%' " +
+                     "ORDER BY withdrawal_id",
+                     (rs, i) -> new LedgerRow(rs.getString(1), rs.getLong(2), rs.getString(3), rs.getBigDecimal(4), rs.getLong(5)))) {
+
+            Peeking<Withdrawal> left = new Peeking<>(withdrawals.iterator());
+            Peeking<LedgerRow> right = new Peeking<>(ledger.iterator());
+            while (left.peek() != null || right.peek() != null) {
+                Withdrawal withdrawal = left.peek();
+                LedgerRow row = right.peek();
+                int cmp = withdrawal == null ? 1 : row == null ? -1 : Long.compare(withdrawal.id, Long.parseLong(row.key));
+
+                if (cmp > 0) {
+                    while (right.peek() != null && right.peek().key.equals(row.key)) {
+                        LedgerRow orphan = right.next();
+                        report.record(ORPHAN_LEDGER, "WITHDRAWAL:" + orphan.key, "ledger row " + orphan.id + " has no withdrawal request");
+                    }
+                    continue;
+                }
+
+                left.next();
+                report.withdrawalsChecked++;
+                List<LedgerRow> matches = new ArrayList<>(1);
+                while (cmp == 0 && right.peek() != null && Long.parseLong(right.peek().key) == withdrawal.id) {
+                    matches.add(right.next());
+                }
+                String reference = "WITHDRAWAL:" + withdrawal.id;
+
+                if (!withdrawal.reservesFunds()) {
+                    if (!matches.isEmpty()) {
+                        report.record(ORPHAN_LEDGER, reference, "withdrawal is " + withdrawal.status + " but has a ledger row");
+                    }
+                } else if (matches.isEmpty()) {
+                    report.record(MISSING_LEDGER, reference, withdrawal.status + " withdrawal of " + withdrawal.amount + " has no ledger row");
+                    if (report.repair && repairMissingWithdrawal(withdrawal)) {
+                        report.repaired++;
+                    }
+                } else if (matches.size() > 1) {
+                    report.record(DUPLICATE_LEDGER, reference, matches.size() + " ledger rows for one withdrawal");
+                } else if (matches.get(0).amount.compareTo(withdrawal.amount) != 0) {
+                    LedgerRow match = matches.get(0);
+                    report.record(AMOUNT_MISMATCH, reference, "withdrawal " + withdrawal.amount + ", ledger " + match.amount);
+                    if (report.repair) {
+                        correctAmount(match, withdrawal.amount);
+                        report.repaired++;
+                    }
+                }
+            }
+        }
+    }
+
+    // Withdrawals paid before ledger rows carried a reference were matched by a note; adopt that
+    // row if there is one, otherwise write the missing debit
+    private boolean repairMissingWithdrawal(Withdrawal withdrawal) {
+        String reference = "WITHDRAWAL:" + withdrawal.id;
+        try {
+            if (withdrawal.paymentReferenceId != null) {
+                List<Long> legacy = jdbcTemplate.queryForList(
+                        "SELECT id FROM credit_transfer_log WHERE from_user_id = ? AND type = 'WITHDRAWAL' " +
+                        "AND external_reference IS NULL AND notes LIKE ? ORDER BY id LIMIT 1",
+                        Long.class, withdrawal.userId, "%Order: " + withdrawal.paymentReferenceId + "%");
+                if (!legacy.isEmpty()) {
+                    // Already counted in the balance; only the reference is new
+                    jdbcTemplate.update("UPDATE credit_transfer_log SET external_reference = ? WHERE id = ?", reference, legacy.get(0));
+                    return true;
+                }
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                walletService.lockAccounts(List.of(withdrawal.userId));
+                jdbcTemplate.update(
+                        "INSERT INTO credit_transfer_log (from_user_id, amount, type, date, notes, external_reference) " +
+                        "VALUES (?, ?, 'WITHDRAWAL', ?, ?, ?)",
+                        withdrawal.userId, withdrawal.amount, Timestamp.valueOf(LocalDateTime.now()),
+                        "Withdrawal #" + withdrawal.id + " (restored by reconciliation)", reference);
+                walletService.applyDeltas(Map.of(withdrawal.userId, withdrawal.amount.negate()));
+            });
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    private void correctAmount(LedgerRow row, BigDecimal to) {
+        BigDecimal change = to.subtract(row.amount);
+        BigDecimal delta = WalletBalanceService.INFLOW_TYPES.contains(row.type) ? change : change.negate();
+        transactionTemplate.executeWithoutResult(status -> {
+            walletService.lockAccounts(List.of(row.userId));
+            jdbcTemplate.update(
+                    "UPDATE credit_transfer_log SET amount = ?, notes = CONCAT(COALESCE(notes, ''), ?) WHERE id = ?",
+                    to, " [reconciled: amount " + row.amount + " -> " + to + "]", row.id);
+            walletService.applyDeltas(Map.of(row.userId, delta));
+        });
+    }
+
+    // ---- plumbing ----
+
+    private static final class GatewayOrder {
+        final String orderId;
+        final BigDecimal amount;
+        final String note;
+        final String email;
+        final LocalDateTime createdAt;
+
+        GatewayOrder(String orderId, BigDecimal amount, String note, String email, LocalDateTime createdAt) {
+            this.orderId = orderId;
+            this.amount = amount;
+            this.note = note;
+            this.email = email;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private static final class Withdrawal {
+        final long id;
+        final long userId;
+        final BigDecimal amount;
+        final String status;
+        final String payoutBatchId;
+        final String paymentReferenceId;
+
+        Withdrawal(long id, long userId, BigDecimal amount, String status, String payoutBatchId, String paymentReferenceId) {
+            this.id = id;
+            this.userId = userId;
+            this.amount = amount;
+            this.status = status;
+            this.payoutBatchId = payoutBatchId;
+            this.paymentReferenceId = paymentReferenceId;
+        }
+
+        // FAILED withdrawals from before batched payouts never debited the wallet
+        boolean reservesFunds() {
+            return "PAID".equals(status) || "QUEUED".equals(status) || "PROCESSING".equals(status) || "REVIEW".equals(status)
+                    || ("FAILED".equals(status) && payoutBatchId != null);
+        }
+    }
+
+    private static final class LedgerRow {
+        final String key;
+        final long id;
+        final String type;
+        final BigDecimal amount;
+        final long userId;
+
+        LedgerRow(String key, long id, String type, BigDecimal amount, long userId) {
+            this.key = key;
+            this.id = id;
+            this.type = type;
+            this.amount = amount;
+            this.userId = userId;
+        }
+    }
+
+    private static final class Peeking<T> {
+        private final Iterator<T> it;
+        private T head;
+
+        Peeking(Iterator<T> it) {
+            this.it = it;
+            this.head = it.hasNext() ? it.next() : null;
+        }
+
+        T peek() {
+            return head;
+        }
+
+        T next() {
+            T current = head;
+            head = it.hasNext() ? it.next() : null;
+            return current;
+        }
+    }
+
+    // Counts every discrepancy but keeps only the first few as samples
+    private static final class Report {
+        final boolean repair;
+        final int maxSamples;
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        final List<Map<String, Object>> samples = new ArrayList<>();
+        final List<String> skipped = new ArrayList<>();
+        long gatewayOrdersChecked;
+        long withdrawalsChecked;
+        long repaired;
+
+        Report(boolean repair, int maxSamples) {
+            this.repair = repair;
+            this.maxSamples = maxSamples;
+            counts.put(MISSING_LEDGER, 0L);
+            counts.put(DUPLICATE_LEDGER, 0L);
+            counts.put(AMOUNT_MISMATCH, 0L);
+            counts.put(ORPHAN_LEDGER, 0L);
+        }
+
+        void record(String kind, String reference, String detail) {
+            counts.merge(kind, 1L, Long::sum);
+            if (samples.size() < maxSamples) {
+                Map<String, Object> sample = new LinkedHashMap<>();
+                sample.put("kind", kind);
+                sample.put("reference", reference);
+                sample.put("detail", detail);
+                samples.add(sample);
+            }
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("repair", repair);
+            result.put("gatewayOrdersChecked", gatewayOrdersChecked);
+            result.put("withdrawalsChecked", withdrawalsChecked);
+            result.put("discrepancies", counts);
+            result.put("repaired", repaired);
+            result.put("skipped", skipped);
+            result.put("samples", samples);
+            return result;
+        }
+    }
+}
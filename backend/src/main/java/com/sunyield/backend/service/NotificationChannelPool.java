@@ -0,0 +1,163 @@
+package com.sunyield.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Asynchronous, rate-limited delivery for bulk notifications. Each channel (email via EmailService,
+// SMS via SmsService) has its own worker threads, its own send rate and a bounded number of queued
+// messages: submit() blocks once the queue is full, so a producer streaming 100k recipients never
+// holds more than queue-capacity rendered messages per channel. The rate is paced with the same
+// GCRA scheme as RateLimiter, except that workers wait for their slot instead of being rejected.
+@Service
+public class NotificationChannelPool {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationChannelPool.class);
+
+    public enum Channel {
+        EMAIL,
+        SMS
+    }
+
+    private static final class Lane {
+        final ExecutorService executor;
+        final Semaphore slots;
+        final int capacity;
+        final long intervalNanos;
+        final long burstNanos;
+        // Theoretical arrival time of the next send
+        final AtomicLong tat = new AtomicLong(System.nanoTime());
+
+        Lane(Channel channel, int threads, int perSecond, int queueCapacity) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "notify-" + channel.name().toLowerCase() + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.capacity = threads + queueCapacity;
+            this.slots = new Semaphore(capacity);
+            this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, perSecond);
+            this.burstNanos = intervalNanos * threads;
+        }
+    }
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private SmsService smsService;
+
+    @Value("${notify.email.threads:4}")
+    private int emailThreads;
+
+    @Value("${notify.email.per-second:20}")
+    private int emailPerSecond;
+
+    @Value("${notify.sms.threads:2}")
+    private int smsThreads;
+
+    @Value("${notify.sms.per-second:10}")
+    private int smsPerSecond;
+
+    @Value("${notify.queue-capacity:1000}")
+    private int queueCapacity;
+
+    private final Map<Channel, Lane> lanes = new EnumMap<>(Channel.class);
+
+    @PostConstruct
+    public void init() {
+        lanes.put(Channel.EMAIL, new Lane(Channel.EMAIL, emailThreads, emailPerSecond, queueCapacity));
+        lanes.put(Channel.SMS, new Lane(Channel.SMS, smsThreads, smsPerSecond, queueCapacity));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Lane lane : lanes.values()) {
+            lane.executor.shutdownNow();
+        }
+    }
+
+    // Queues one message; blocks while the channel's queue is full. onDone receives whether it was delivered.
+    public void submit(Channel channel, String to, String subject, String body, Consumer<Boolean> onDone) throws InterruptedException {
+        Lane lane = lanes.get(channel);
+        lane.slots.acquire();
+        dispatch(channel, lane, to, subject, body, onDone);
+    }
+
+    // Queues one message without blocking, for request threads; false (and nothing queued) when the
+    // channel's queue is full
+    public boolean offer(Channel channel, String to, String subject, String body, Consumer<Boolean> onDone) {
+        Lane lane = lanes.get(channel);
+        if (!lane.slots.tryAcquire()) {
+            return false;
+        }
+        dispatch(channel, lane, to, subject, body, onDone);
+        return true;
+    }
+
+    // Runs on the lane once the caller holds one of its slots; the slot is released when the message is done
+    private void dispatch(Channel channel, Lane lane, String to, String subject, String body, Consumer<Boolean> onDone) {
+        try {
+            lane.executor.execute(() -> {
+                boolean delivered = false;
+                try {
+                    pace(lane);
+                    if (channel == Channel.EMAIL) {
+                        emailService.deliver(to, subject, body);
+                    } else {
+                        smsService.sendSms(to, body);
+                    }
+                    delivered = true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    logger.warn("{} to {} failed: {}", channel, to, e.getMessage());
+                } finally {
+                    lane.slots.release();
+                    onDone.accept(delivered);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            lane.slots.release();
+            throw e;
+        }
+    }
+
+    // Messages queued or being sent on the channel
+    public int inFlight(Channel channel) {
+        Lane lane = lanes.get(channel);
+        return lane.capacity - lane.slots.availablePermits();
+    }
+
+    private static void pace(Lane lane) throws InterruptedException {
+        while (true) {
+            long now = System.nanoTime();
+            long tat = lane.tat.get();
+            long start = tat - now < 0 ? now : tat;
+            long next = start + lane.intervalNanos;
+            long wait = next - now - lane.burstNanos;
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+                continue;
+            }
+            if (lane.tat.compareAndSet(tat, next)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.sunyield.backend.service;
+
+// Short-lived one-time passwords keyed by purpose and email, kept out of the users table.
+// Each code allows a limited number of verification attempts before it is locked.
+public interface OtpStore {
+
+    enum Purpose {
+        REGISTRATION,
+        PASSWORD_RESET
+    }
+
+    enum Result {
+        VALID,
+        INVALID,
+        EXPIRED,
+        TOO_MANY_ATTEMPTS,
+        NOT_FOUND
+    }
+
+    // Stores a new code, replacing any previous one for the same purpose and email and resetting attempts
+    void put(Purpose purpose, String email, String otp);
+
+    // Counts an attempt and checks the code. consume=true removes a valid code so it cannot be reused.
+    Result verify(Purpose purpose, String email, String otp, boolean consume);
+
+    void invalidate(Purpose purpose, String email);
+}
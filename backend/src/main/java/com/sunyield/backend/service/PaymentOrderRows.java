@@ -0,0 +1,51 @@
+package com.sunyield.backend.service;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+// SQL shared by the order stores that read or write the mock_payment_order table
+final class PaymentOrderRows {
+
+    static final String COLUMNS = "order_id, order_amount, order_currency, customer_name, customer_email, " +
+            "customer_phone, order_note, status, created_at, processed_at";
+
+    static final String UPSERT =
+            "INSERT INTO mock_payment_order (" + COLUMNS + ", updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP(6)) " +
+            "ON DUPLICATE KEY UPDATE status = VALUES(status), processed_at = VALUES(processed_at), updated_at = VALUES(updated_at)";
+
+    static final RowMapper<CashfreeMockService.PaymentOrder> MAPPER = (rs, rowNum) -> {
+        CashfreeMockService.PaymentOrder order = new CashfreeMockService.PaymentOrder();
+        order.setOrderId(rs.getString("order_id"));
+        order.setOrderAmount(rs.getBigDecimal("order_amount"));
+        order.setOrderCurrency(rs.getString("order_currency"));
+        order.setCustomerName(rs.getString("customer_name"));
+        order.setCustomerEmail(rs.getString("customer_email"));
+        order.setCustomerPhone(rs.getString("customer_phone"));
+        order.setOrderNote(rs.getString("order_note"));
+        order.setStatus(rs.getString("status"));
+        order.setCreatedAt(toLocalDateTime(rs.getTimestamp("created_at")));
+        order.setProcessedAt(toLocalDateTime(rs.getTimestamp("processed_at")));
+        return order;
+    };
+
+    private PaymentOrderRows() {}
+
+    // Parameters for UPSERT, in column order
+    static Object[] toRow(CashfreeMockService.PaymentOrder order) {
+        return new Object[] {
+                order.getOrderId(), order.getOrderAmount(), order.getOrderCurrency(), order.getCustomerName(),
+                order.getCustomerEmail(), order.getCustomerPhone(), order.getOrderNote(), order.getStatus(),
+                toTimestamp(order.getCreatedAt()), toTimestamp(order.getProcessedAt())
+        };
+    }
+
+    static Timestamp toTimestamp(LocalDateTime time) {
+        return time != null ? Timestamp.valueOf(time) : null;
+    }
+
+    static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
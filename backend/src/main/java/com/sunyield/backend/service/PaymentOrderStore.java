@@ -0,0 +1,27 @@
+package com.sunyield.backend.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Where the mock gateway keeps its orders, selected by cashfree.mock.order-store (memory | database).
+// Implementations bound their footprint: finished orders (anything no longer PENDING) are evicted
+// after a TTL or when the store is full.
+public interface PaymentOrderStore {
+
+    // Inserts or replaces the order; call again after changing its status
+    void save(CashfreeMockService.PaymentOrder order);
+
+    // null when the order never existed or has been evicted
+    CashfreeMockService.PaymentOrder get(String orderId);
+
+    // Moves the order to newStatus only if it is still in expectedStatus, so an order is settled
+    // once even when two requests (or two nodes) process it concurrently
+    boolean updateStatus(String orderId, String expectedStatus, String newStatus, LocalDateTime processedAt);
+
+    // Newest first, at most limit orders
+    List<CashfreeMockService.PaymentOrder> recent(int limit);
+
+    int size();
+
+    void clear();
+}
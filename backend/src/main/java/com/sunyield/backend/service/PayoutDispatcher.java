@@ -0,0 +1,396 @@
+package com.sunyield.backend.service;
+
+import com.sunyield.backend.entity.CreditTransferLog;
+import com.sunyield.backend.entity.User;
+import com.sunyield.backend.entity.WithdrawalRequest;
+import com.sunyield.backend.repository.WithdrawalRequestRepository;
+import com.sunyield.backend.util.BusinessIdGenerator;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Withdrawals are reserved and queued by WalletService.withdraw, then paid out here in batches.
+// Each pass claims up to batch-size QUEUED requests with one UPDATE (safe across nodes), sends
+// them to the gateway as one batch transfer, and polls PROCESSING payouts with one batch status
+// call per chunk. Results are written back with batched statements: PAID/FAILED status on the
+// requests and WITHDRAWAL_REFUND rows for failed payouts. A payout the gateway has lost track of is
+// parked in REVIEW with its funds still reserved, because it may already have been paid.
+@Service
+public class PayoutDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(PayoutDispatcher.class);
+
+    @Autowired
+    private WithdrawalRequestRepository withdrawalRequestRepository;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private CashfreeMockService cashfreeMockService;
+
+    @Autowired
+    private BusinessIdGenerator businessIdGenerator;
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${payout.batch-size:100}")
+    private int batchSize;
+
+    // Requests claimed by a pass that died before the gateway accepted them are re-queued after this
+    @Value("${payout.claim-timeout-ms:300000}")
+    private long claimTimeoutMs;
+
+    // A payout the gateway still does not know this long after dispatch goes to REVIEW. NOT_FOUND does
+    // not mean it failed: the mock keeps its orders in memory by default, so the order may live on
+    // another node or have been lost in a restart after the money went out. Refunding it
+    // automatically could pay the user twice, so an admin settles it with resolveReview().
+    @Value("${payout.not-found-timeout-ms:600000}")
+    private long notFoundTimeoutMs;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    // A scheduled pass is waiting on, or running on, the worker
+    private final AtomicBoolean scheduledPass = new AtomicBoolean(false);
+
+    // Passes wait on gateway latency and timeouts, so they run here rather than on the shared
+    // scheduler thread, which also drives the order-store poll, capacity expiry and the sweeps
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "payout-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${payout.dispatch-interval-ms:5000}")
+    public void scheduledDispatch() {
+        if (!scheduledPass.compareAndSet(false, true)) {
+            return;
+        }
+        worker.submit(() -> {
+            try {
+                dispatch();
+            } catch (Exception e) {
+                logger.error("Payout pass failed: {}", e.getMessage(), e);
+            } finally {
+                scheduledPass.set(false);
+            }
+        });
+    }
+
+    public Map<String, Object> dispatch() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (!running.compareAndSet(false, true)) {
+            result.put("skipped", "A dispatch pass is already running");
+            return result;
+        }
+        try {
+            int requeued = requeueAbandonedClaims();
+            int submitted = 0;
+            int claimed;
+            do {
+                claimed = submitBatch();
+                submitted += claimed;
+            } while (claimed == batchSize);
+            int settled = pollProcessing();
+
+            if (submitted > 0 || settled > 0 || requeued > 0) {
+                logger.info("Payout pass: {} submitted, {} settled, {} re-queued", submitted, settled, requeued);
+            }
+            result.put("submitted", submitted);
+            result.put("settled", settled);
+            result.put("requeued", requeued);
+            return result;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // Claims one batch and sends it to the gateway; returns how many requests were sent
+    private int submitBatch() {
+        String batchId = businessIdGenerator.nextId("PB");
+        int claimed = jdbcTemplate.update(
+                "UPDATE withdrawal_request SET status = 'PROCESSING', payout_batch_id = ?, dispatched_at = ? " +
+                "WHERE status = 'QUEUED' ORDER BY id LIMIT ?",
+                batchId, Timestamp.valueOf(LocalDateTime.now()), batchSize);
+        if (claimed == 0) {
+            return 0;
+        }
+
+        List<WithdrawalRequest> batch = withdrawalRequestRepository.findByPayoutBatchId(batchId);
+        List<Map<String, Object>> transfers = new ArrayList<>(batch.size());
+        for (WithdrawalRequest req : batch) {
+            User user = req.getUser();
+            Map<String, Object> transfer = new HashMap<>();
+            transfer.put("transferId", req.getId());
+            transfer.put("orderAmount", req.getAmount());
+            transfer.put("orderCurrency", "INR");
+            transfer.put("customerName", user.getFullName());
+            transfer.put("customerEmail", user.getEmail());
+            transfer.put("customerPhone", user.getContact() != null ? user.getContact() : "9999999999");
+            transfer.put("orderNote", "Withdrawal payout - " + user.getEmail());
+            transfer.put("payoutMethod", req.getPayoutMethod() != null ? req.getPayoutMethod() : "UPI");
+            transfer.put("upiId", req.getUpiId());
+            transfers.add(transfer);
+        }
+
+        Map<String, Object> response;
+        try {
+            response = cashfreeMockService.createBatchTransfer(batchId, transfers);
+        } catch (RuntimeException e) {
+            // Gateway timeout or 5xx: the whole batch goes back to the queue. Transfers the gateway did
+            // create before failing come back as the same orders on the re-send (transferId is idempotent)
+            logger.warn("Batch transfer {} failed ({}); re-queueing {} withdrawals", batchId, e.getMessage(), batch.size());
+            jdbcTemplate.update(
+                    "UPDATE withdrawal_request SET status = 'QUEUED', payout_batch_id = NULL, dispatched_at = NULL " +
+                    "WHERE payout_batch_id = ? AND status = 'PROCESSING'",
+                    batchId);
+            return 0;
+        }
+
+        List<Object[]> references = new ArrayList<>();
+        Map<String, String> rejected = new HashMap<>();
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> results = (List<Map<String, Object>>) response.get("transfers");
+        for (Map<String, Object> item : results) {
+            Long withdrawalId = ((Number) item.get("transferId")).longValue();
+            String orderId = (String) item.get("orderId");
+            if (orderId != null) {
+                references.add(new Object[] { orderId, withdrawalId });
+            } else {
+                // The gateway refused this transfer outright; fail it with a refund below
+                String syntheticReference = batchId + "-" + withdrawalId;
+                references.add(new Object[] { syntheticReference, withdrawalId });
+                rejected.put(syntheticReference, "FAILED");
+            }
+        }
+        jdbcTemplate.batchUpdate("UPDATE withdrawal_request SET payment_reference_id = ? WHERE id = ?", references);
+        if (!rejected.isEmpty()) {
+            applyResults(rejected);
+        }
+        return claimed;
+    }
+
+    // Polls every PROCESSING payout, one batch status call per chunk; returns how many settled
+    private int pollProcessing() {
+        int settled = 0;
+        long afterId = 0L;
+        while (true) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT id, payment_reference_id, (dispatched_at IS NULL OR dispatched_at < ?) AS overdue " +
+                    "FROM withdrawal_request " +
+                    "WHERE status = 'PROCESSING' AND payment_reference_id IS NOT NULL AND id > ? ORDER BY id LIMIT ?",
+                    Timestamp.valueOf(LocalDateTime.now().minusNanos(notFoundTimeoutMs * 1_000_000L)), afterId, batchSize);
+            if (rows.isEmpty()) {
+                break;
+            }
+            afterId = ((Number) rows.get(rows.size() - 1).get("id")).longValue();
+
+            List<String> orderIds = new ArrayList<>(rows.size());
+            for (Map<String, Object> row : rows) {
+                orderIds.add((String) row.get("payment_reference_id"));
+            }
+            Map<String, String> statuses;
+            try {
+                statuses = cashfreeMockService.getBatchTransferStatus(orderIds);
+            } catch (RuntimeException e) {
+                logger.warn("Batch transfer status failed ({}); will retry on the next pass", e.getMessage());
+                break;
+            }
+            List<Object[]> lost = new ArrayList<>();
+            for (Map<String, Object> row : rows) {
+                String reference = (String) row.get("payment_reference_id");
+                if ("NOT_FOUND".equals(statuses.get(reference)) && ((Number) row.get("overdue")).intValue() == 1) {
+                    logger.error("Payout {} for withdrawal {} is unknown to the gateway; moved to REVIEW",
+                            reference, row.get("id"));
+                    lost.add(new Object[] { row.get("id") });
+                }
+            }
+            if (!lost.isEmpty()) {
+                jdbcTemplate.batchUpdate(
+                        "UPDATE withdrawal_request SET status = 'REVIEW' WHERE id = ? AND status = 'PROCESSING'", lost);
+            }
+            settled += applyResults(statuses);
+            if (rows.size() < batchSize) {
+                break;
+            }
+        }
+        return settled;
+    }
+
+    // Applies gateway results (payment reference -> SUCCESS/FAILED; other values are ignored) to
+    // PROCESSING and REVIEW withdrawals. Rows are locked first, so a payout is settled and refunded only once
+    // even if a manual process-payout call races the dispatcher. Returns how many were settled.
+    public int applyResults(Map<String, String> statuses) {
+        Map<String, String> finalStatuses = new HashMap<>();
+        statuses.forEach((reference, status) -> {
+            if ("SUCCESS".equals(status) || "FAILED".equals(status)) {
+                finalStatuses.put(reference, status);
+            }
+        });
+        if (finalStatuses.isEmpty()) {
+            return 0;
+        }
+
+        List<WithdrawalRequest> settled = transactionTemplate.execute(tx -> {
+            // Wallets before withdrawal rows, the same order WalletService.withdraw takes them in
+            List<String> failedRefs = new ArrayList<>();
+            finalStatuses.forEach((reference, status) -> {
+                if ("FAILED".equals(status)) {
+                    failedRefs.add(reference);
+                }
+            });
+            if (!failedRefs.isEmpty()) {
+                walletService.lockAccounts(namedJdbcTemplate.queryForList(
+                        "SELECT DISTINCT user_id FROM withdrawal_request WHERE status IN ('PROCESSING', 'REVIEW') AND payment_reference_id IN (:refs)",
+                        new MapSqlParameterSource("refs", failedRefs), Long.class));
+            }
+            List<Long> lockedIds = namedJdbcTemplate.queryForList(
+                    "SELECT id FROM withdrawal_request WHERE status IN ('PROCESSING', 'REVIEW') AND payment_reference_id IN (:refs) FOR UPDATE",
+                    new MapSqlParameterSource("refs", finalStatuses.keySet()), Long.class);
+            if (lockedIds.isEmpty()) {
+                return List.<WithdrawalRequest>of();
+            }
+            List<WithdrawalRequest> withdrawals = withdrawalRequestRepository.findByIdIn(lockedIds);
+
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            List<Object[]> statusRows = new ArrayList<>();
+            List<Object[]> noteRows = new ArrayList<>();
+            List<Object[]> refundRows = new ArrayList<>();
+            Map<Long, BigDecimal> refunds = new HashMap<>();
+            for (WithdrawalRequest w : withdrawals) {
+                String orderId = w.getPaymentReferenceId();
+                boolean paid = "SUCCESS".equals(finalStatuses.get(orderId));
+                w.setStatus(paid ? "PAID" : "FAILED");
+                statusRows.add(new Object[] { w.getStatus(), now, w.getId() });
+                noteRows.add(new Object[] {
+                        paid ? "Withdrawal processed successfully. Order: " + orderId + " - Status: PAID"
+                             : "Withdrawal failed. Order: " + orderId + " - Status: FAILED (refunded)",
+                        CreditTransferLog.reference("WITHDRAWAL", w.getId()) });
+                if (!paid) {
+                    refunds.merge(w.getUser().getId(), w.getAmount(), BigDecimal::add);
+                    refundRows.add(new Object[] {
+                            w.getUser().getId(), w.getAmount(), now,
+                            "Withdrawal failed. Refunded to wallet. Order: " + orderId,
+                            CreditTransferLog.reference("WITHDRAWAL_REFUND", w.getId()) });
+                }
+            }
+            jdbcTemplate.batchUpdate("UPDATE withdrawal_request SET status = ?, processed_at = ? WHERE id = ?", statusRows);
+            jdbcTemplate.batchUpdate("UPDATE credit_transfer_log SET notes = ? WHERE external_reference = ?", noteRows);
+            if (!refundRows.isEmpty()) {
+                // external_reference is unique, so a refund can never be written twice
+                jdbcTemplate.batchUpdate(
+                        "INSERT INTO credit_transfer_log (to_user_id, amount, type, date, notes, external_reference) " +
+                        "VALUES (?, ?, 'WITHDRAWAL_REFUND', ?, ?, ?)",
+                        refundRows);
+                walletService.applyDeltas(refunds);
+            }
+            return withdrawals;
+        });
+
+        // Emails go out after commit; a mail failure must not undo a settled payout
+        for (WithdrawalRequest w : settled) {
+            try {
+                notifyUser(w);
+            } catch (Exception e) {
+                logger.warn("Could not send payout email for withdrawal {}: {}", w.getId(), e.getMessage());
+            }
+        }
+        return settled.size();
+    }
+
+    // Settles a REVIEW withdrawal once an admin has confirmed with the gateway whether it was paid;
+    // false if it is not in REVIEW (anymore)
+    public boolean resolveReview(Long withdrawalId, boolean paid) {
+        WithdrawalRequest w = withdrawalRequestRepository.findById(withdrawalId).orElse(null);
+        if (w == null || !"REVIEW".equals(w.getStatus())) {
+            return false;
+        }
+        return applyResults(Map.of(w.getPaymentReferenceId(), paid ? "SUCCESS" : "FAILED")) > 0;
+    }
+
+    // A pass that claimed a batch but died before recording the gateway's order ids leaves
+    // PROCESSING rows without a reference; put them back in the queue. The gateway may already have
+    // created their payouts, which is safe because createBatchTransfer is idempotent on transferId
+    // (the withdrawal id): the re-sent transfer gets the existing order back, not a second payout.
+    private int requeueAbandonedClaims() {
+        return jdbcTemplate.update(
+                "UPDATE withdrawal_request SET status = 'QUEUED', payout_batch_id = NULL, dispatched_at = NULL " +
+                "WHERE status = 'PROCESSING' AND payment_reference_id IS NULL AND dispatched_at < ?",
+                Timestamp.valueOf(LocalDateTime.now().minusNanos(claimTimeoutMs * 1_000_000L)));
+    }
+
+    private void notifyUser(WithdrawalRequest w) {
+        User user = w.getUser();
+        if ("PAID".equals(w.getStatus())) {
+            String emailBody = String.format(
+                "Dear %s,\n\n" +
+                "Your withdrawal has been processed successfully!\n\n" +
+                "Payout Details:\n" +
+                "- Amount: ₹%s\n" +
+                "- Payment Method: %s\n" +
+                "- Order ID: %s\n" +
+                "- Date: %s\n" +
+                "- Status: PAID\n\n" +
+                "The amount has been transferred to your account. Please check your bank statement.\n\n" +
+                "Thank you for using SunYield!\n\n" +
+                "Best regards,\nSunYield Team",
+                user.getFullName(),
+                w.getAmount().toString(),
+                w.getPayoutMethod(),
+                w.getPaymentReferenceId(),
+                LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd MMM yyyy, HH:mm"))
+            );
+            emailService.sendEmail(user.getEmail(), "Withdrawal Processed Successfully", emailBody);
+        } else {
+            String emailBody = String.format(
+                "Dear %s,\n\n" +
+                "Your withdrawal request has failed.\n\n" +
+                "Details:\n" +
+                "- Amount: ₹%s\n" +
+                "- Order ID: %s\n" +
+                "- Status: FAILED\n\n" +
+                "The amount has been refunded to your wallet. You can try withdrawing again.\n\n" +
+                "If you continue to face issues, please contact our support team.\n\n" +
+                "Best regards,\nSunYield Team",
+                user.getFullName(),
+                w.getAmount().toString(),
+                w.getPaymentReferenceId()
+            );
+            emailService.sendEmail(user.getEmail(), "Withdrawal Failed", emailBody);
+        }
+    }
+}
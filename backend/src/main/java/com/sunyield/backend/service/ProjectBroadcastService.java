@@ -0,0 +1,337 @@
+package com.sunyield.backend.service;
+
+import com.sunyield.backend.entity.Project;
+import com.sunyield.backend.entity.ProjectBroadcast;
+import com.sunyield.backend.repository.ProjectBroadcastRepository;
+import com.sunyield.backend.repository.ProjectRepository;
+import com.sunyield.backend.util.MessageTemplate;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Sends a templated message to every subscriber of a project. Recipients are read from one
+// forward-only streaming result set ordered by user id (Connector/J streams row by row when the
+// fetch size is Integer.MIN_VALUE), each message is rendered from templates compiled once per run,
+// and delivery goes through NotificationChannelPool, whose bounded queues throttle the cursor to
+// the channels' send rates. Memory stays flat however many subscribers a project has.
+//
+// Progress counters and a delivered watermark are flushed every broadcast.progress-every recipients.
+// The watermark is the highest user id below which every recipient's messages have been sent (or
+// have failed), not the last id handed to the pool, so a broadcast interrupted by a restart resumes
+// before anything that was still queued. Recipients after the watermark that had already finished
+// get their message again on resume: delivery is at least once.
+@Service
+public class ProjectBroadcastService {
+    private static final Logger logger = LoggerFactory.getLogger(ProjectBroadcastService.class);
+
+    public static final Set<String> VARIABLES = Set.of("name", "email", "project", "location");
+
+    @Autowired
+    private ProjectBroadcastRepository projectBroadcastRepository;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private NotificationChannelPool channelPool;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${broadcast.progress-every:500}")
+    private int progressEvery;
+
+    // The cursor is only read as fast as the channels send; keep the server from timing it out
+    @Value("${broadcast.cursor-write-timeout-seconds:3600}")
+    private int cursorWriteTimeoutSeconds;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "project-broadcast");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<Long> cancelled = ConcurrentHashMap.newKeySet();
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    public ProjectBroadcast submit(Long projectId, String subject, String message, Set<NotificationChannelPool.Channel> channels) {
+        if (!projectRepository.existsById(projectId)) {
+            throw new IllegalArgumentException("Project not found");
+        }
+        if (channels.isEmpty()) {
+            throw new IllegalArgumentException("At least one channel is required");
+        }
+        if (subject == null || subject.isBlank() || message == null || message.isBlank()) {
+            throw new IllegalArgumentException("subject and message are required");
+        }
+        // Rejects bad placeholders before anything is queued
+        MessageTemplate.compile(subject, VARIABLES);
+        MessageTemplate.compile(message, VARIABLES);
+
+        List<String> names = new ArrayList<>();
+        for (NotificationChannelPool.Channel channel : channels) {
+            names.add(channel.name());
+        }
+        ProjectBroadcast broadcast = new ProjectBroadcast();
+        broadcast.setProjectId(projectId);
+        broadcast.setSubject(subject);
+        broadcast.setMessage(message);
+        broadcast.setChannels(String.join(",", names));
+        broadcast.setStatus("QUEUED");
+        broadcast.setCreatedAt(LocalDateTime.now());
+        ProjectBroadcast saved = projectBroadcastRepository.save(broadcast);
+        worker.submit(() -> run(saved.getId()));
+        return saved;
+    }
+
+    // Continues a failed, cancelled or interrupted broadcast after its last recipient
+    public ProjectBroadcast resume(Long broadcastId) {
+        ProjectBroadcast broadcast = projectBroadcastRepository.findById(broadcastId)
+                .orElseThrow(() -> new IllegalArgumentException("Broadcast not found"));
+        if ("COMPLETED".equals(broadcast.getStatus()) || "QUEUED".equals(broadcast.getStatus())) {
+            throw new IllegalStateException("Broadcast is " + broadcast.getStatus());
+        }
+        cancelled.remove(broadcastId);
+        jdbcTemplate.update("UPDATE project_broadcast SET status = 'QUEUED', error = NULL WHERE id = ?", broadcastId);
+        broadcast.setStatus("QUEUED");
+        worker.submit(() -> run(broadcastId));
+        return broadcast;
+    }
+
+    // Stops after the message being handed over; already queued messages are still delivered
+    public boolean cancel(Long broadcastId) {
+        ProjectBroadcast broadcast = projectBroadcastRepository.findById(broadcastId).orElse(null);
+        if (broadcast == null || "COMPLETED".equals(broadcast.getStatus()) || "CANCELLED".equals(broadcast.getStatus())) {
+            return false;
+        }
+        cancelled.add(broadcastId);
+        jdbcTemplate.update("UPDATE project_broadcast SET status = 'CANCELLED' WHERE id = ? AND status = 'QUEUED'", broadcastId);
+        return true;
+    }
+
+    public ProjectBroadcast get(Long broadcastId) {
+        return projectBroadcastRepository.findById(broadcastId).orElse(null);
+    }
+
+    public List<ProjectBroadcast> recent(Long projectId) {
+        return projectId != null
+                ? projectBroadcastRepository.findTop50ByProjectIdOrderByIdDesc(projectId)
+                : projectBroadcastRepository.findTop50ByOrderByIdDesc();
+    }
+
+    // ---- worker ----
+
+    private void run(Long broadcastId) {
+        ProjectBroadcast broadcast = projectBroadcastRepository.findById(broadcastId).orElse(null);
+        if (broadcast == null || !"QUEUED".equals(broadcast.getStatus())) {
+            return;
+        }
+        if (cancelled.remove(broadcastId)) {
+            jdbcTemplate.update("UPDATE project_broadcast SET status = 'CANCELLED' WHERE id = ?", broadcastId);
+            return;
+        }
+        Progress progress = new Progress(broadcast);
+        long started = System.currentTimeMillis();
+        try {
+            Project project = projectRepository.findById(broadcast.getProjectId())
+                    .orElseThrow(() -> new IllegalStateException("Project " + broadcast.getProjectId() + " no longer exists"));
+            MessageTemplate subject = MessageTemplate.compile(broadcast.getSubject(), VARIABLES);
+            MessageTemplate message = MessageTemplate.compile(broadcast.getMessage(), VARIABLES);
+            Set<NotificationChannelPool.Channel> channels = EnumSet.noneOf(NotificationChannelPool.Channel.class);
+            for (String name : broadcast.getChannels().split(",")) {
+                channels.add(NotificationChannelPool.Channel.valueOf(name));
+            }
+
+            Long total = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM user u WHERE " + SUBSCRIBED, Long.class, project.getId());
+            jdbcTemplate.update(
+                    "UPDATE project_broadcast SET status = 'RUNNING', total_recipients = ?, started_at = COALESCE(started_at, ?) WHERE id = ?",
+                    total, Timestamp.valueOf(LocalDateTime.now()), broadcastId);
+
+            boolean completed = stream(project, broadcastId, subject, message, channels, progress);
+            progress.awaitDelivered();
+            flush(broadcastId, progress);
+            jdbcTemplate.update("UPDATE project_broadcast SET status = ?, finished_at = ? WHERE id = ?",
+                    completed ? "COMPLETED" : "CANCELLED", Timestamp.valueOf(LocalDateTime.now()), broadcastId);
+            logger.info("Broadcast {} to project {}: {} recipients, {} emails, {} sms, {} failed, {} ms",
+                    broadcastId, project.getId(), progress.processed.get(), progress.emailSent.get(), progress.smsSent.get(),
+                    progress.emailFailed.get() + progress.smsFailed.get(), System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            logger.error("Broadcast {} failed: {}", broadcastId, e.getMessage(), e);
+            flush(broadcastId, progress);
+            String error = e.getMessage() != null && e.getMessage().length() > 500 ? e.getMessage().substring(0, 500) : e.getMessage();
+            jdbcTemplate.update("UPDATE project_broadcast SET status = 'FAILED', error = ?, finished_at = ? WHERE id = ?",
+                    error, Timestamp.valueOf(LocalDateTime.now()), broadcastId);
+        }
+    }
+
+    // Subscribers of project ?; walks the user primary key and probes the subscription index
+    private static final String SUBSCRIBED =
+            "EXISTS (SELECT 1 FROM subscription s WHERE s.user_id = u.id AND s.project_id = ? AND s.payment_status = 'SUCCESS')";
+
+    // Returns false when the broadcast was cancelled part-way
+    private boolean stream(Project project, Long broadcastId, MessageTemplate subject, MessageTemplate message,
+                           Set<NotificationChannelPool.Channel> channels, Progress progress) {
+        return jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            try (Statement session = connection.createStatement()) {
+                session.execute("SET SESSION net_write_timeout = " + cursorWriteTimeoutSeconds);
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT u.id, u.email, u.full_name, u.contact FROM user u WHERE u.id > ? AND " + SUBSCRIBED + " ORDER BY u.id",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(Integer.MIN_VALUE);
+                statement.setLong(1, progress.lastReadId);
+                statement.setLong(2, project.getId());
+
+                Map<String, String> values = new HashMap<>();
+                values.put("project", project.getName());
+                values.put("location", project.getLocation());
+                long read = 0;
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        if (cancelled.remove(broadcastId)) {
+                            return false;
+                        }
+                        long userId = rs.getLong(1);
+                        progress.start(userId);
+                        String email = rs.getString(2);
+                        String contact = rs.getString(4);
+                        values.put("name", rs.getString(3));
+                        values.put("email", email);
+                        String body = message.render(values);
+
+                        if (channels.contains(NotificationChannelPool.Channel.EMAIL)) {
+                            deliver(NotificationChannelPool.Channel.EMAIL, userId, email, subject.render(values), body,
+                                    progress.emailSent, progress.emailFailed, progress);
+                        }
+                        if (channels.contains(NotificationChannelPool.Channel.SMS)) {
+                            deliver(NotificationChannelPool.Channel.SMS, userId, contact, null, body,
+                                    progress.smsSent, progress.smsFailed, progress);
+                        }
+                        progress.finish(userId);
+                        progress.lastReadId = userId;
+                        if (++read % progressEvery == 0) {
+                            flush(broadcastId, progress);
+                        }
+                    }
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Broadcast interrupted");
+                }
+            } finally {
+                // The connection goes back to the pool; its other users get the server default
+                try (Statement session = connection.createStatement()) {
+                    session.execute("SET SESSION net_write_timeout = DEFAULT");
+                }
+            }
+        });
+    }
+
+    private void deliver(NotificationChannelPool.Channel channel, Long userId, String to, String subject, String body,
+                         AtomicLong sent, AtomicLong failed, Progress progress) throws InterruptedException {
+        if (to == null || to.isBlank()) {
+            progress.skipped.incrementAndGet();
+            return;
+        }
+        progress.queued(userId);
+        try {
+            channelPool.submit(channel, to, subject, body, delivered -> {
+                (delivered ? sent : failed).incrementAndGet();
+                progress.finish(userId);
+            });
+        } catch (RuntimeException | InterruptedException e) {
+            progress.finish(userId);
+            throw e;
+        }
+    }
+
+    private void flush(Long broadcastId, Progress progress) {
+        jdbcTemplate.update(
+                "UPDATE project_broadcast SET processed_recipients = ?, email_sent = ?, email_failed = ?, sms_sent = ?, " +
+                "sms_failed = ?, skipped = ?, last_recipient_id = ? WHERE id = ?",
+                progress.processed.get(), progress.emailSent.get(), progress.emailFailed.get(), progress.smsSent.get(),
+                progress.smsFailed.get(), progress.skipped.get(), progress.watermark(), broadcastId);
+    }
+
+    // Counters start from the stored values so a resumed broadcast keeps adding to them. A recipient
+    // is in flight from the moment it is read until its last message is done; processed counts the
+    // recipients that are finished.
+    private static final class Progress {
+        final AtomicLong processed;
+        final AtomicLong emailSent;
+        final AtomicLong emailFailed;
+        final AtomicLong smsSent;
+        final AtomicLong smsFailed;
+        final AtomicLong skipped;
+        // User id -> messages still outstanding, plus one while the reader is handing them over
+        final ConcurrentSkipListMap<Long, AtomicInteger> inFlight = new ConcurrentSkipListMap<>();
+        volatile long lastReadId;
+
+        Progress(ProjectBroadcast broadcast) {
+            processed = new AtomicLong(broadcast.getProcessedRecipients());
+            emailSent = new AtomicLong(broadcast.getEmailSent());
+            emailFailed = new AtomicLong(broadcast.getEmailFailed());
+            smsSent = new AtomicLong(broadcast.getSmsSent());
+            smsFailed = new AtomicLong(broadcast.getSmsFailed());
+            skipped = new AtomicLong(broadcast.getSkipped());
+            lastReadId = broadcast.getLastRecipientId() != null ? broadcast.getLastRecipientId() : 0L;
+        }
+
+        void start(Long userId) {
+            inFlight.put(userId, new AtomicInteger(1));
+        }
+
+        void queued(Long userId) {
+            inFlight.get(userId).incrementAndGet();
+        }
+
+        void finish(Long userId) {
+            AtomicInteger outstanding = inFlight.get(userId);
+            if (outstanding != null && outstanding.decrementAndGet() == 0) {
+                inFlight.remove(userId);
+                processed.incrementAndGet();
+            }
+        }
+
+        // Every recipient read before the oldest one still in flight is done. lastReadId is only
+        // advanced after a recipient's messages are handed over, so it never passes one in flight.
+        long watermark() {
+            Map.Entry<Long, AtomicInteger> oldest = inFlight.firstEntry();
+            return oldest != null ? oldest.getKey() - 1 : lastReadId;
+        }
+
+        // Queued messages keep being delivered after the cursor is closed
+        void awaitDelivered() throws InterruptedException {
+            while (!inFlight.isEmpty()) {
+                Thread.sleep(100);
+            }
+        }
+    }
+}
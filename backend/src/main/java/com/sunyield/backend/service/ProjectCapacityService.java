@@ -0,0 +1,214 @@
+package com.sunyield.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-project capacity reservations. project.reserved_capacity (watts, the unit of
+// Subscription.reservedCapacity) is the authoritative total and only moves through conditional
+// UPDATEs, so a project is never reserved past energy_capacity * capacity.watts-per-unit, across
+// any number of nodes. Each node also keeps the remaining capacity per project in an AtomicLong
+// (hundredths of a watt): once a launch is sold out, further subscribers are turned away by a CAS
+// on that counter without touching the database. There is no lock wider than one project row.
+//
+// Gateway orders hold their reservation while PENDING. Orders still unpaid after the gateway's order
+// TTL are moved to EXPIRED and their capacity is released; a SUCCESS webhook arriving after that (or
+// after a FAILED one) takes the capacity again with reserveCollected().
+@Service
+public class ProjectCapacityService {
+    private static final Logger logger = LoggerFactory.getLogger(ProjectCapacityService.class);
+
+    // Projects without an energy capacity are not limited
+    private static final long UNLIMITED = Long.MAX_VALUE;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    // energy_capacity is entered in kW, reservations are in watts
+    @Value("${capacity.watts-per-unit:1000}")
+    private BigDecimal wattsPerUnit;
+
+    // Gateway orders not paid within this time no longer hold capacity
+    @Value("${cashfree.mock.order-store.pending-ttl-ms:86400000}")
+    private long pendingOrderTtlMs;
+
+    @Value("${capacity.expiry-batch-size:500}")
+    private int expiryBatchSize;
+
+    private final Map<Long, AtomicLong> remaining = new ConcurrentHashMap<>();
+
+    // Reserves watts on the project; false when it does not have that much capacity left
+    public boolean reserve(Long projectId, BigDecimal watts) {
+        long amount = toHundredths(watts);
+        AtomicLong counter = counter(projectId);
+        long current;
+        do {
+            current = counter.get();
+            if (current != UNLIMITED && current < amount) {
+                return false;
+            }
+        } while (current != UNLIMITED && !counter.compareAndSet(current, current - amount));
+
+        int updated = jdbcTemplate.update(
+                "UPDATE project SET reserved_capacity = reserved_capacity + ? " +
+                "WHERE id = ? AND (energy_capacity IS NULL OR reserved_capacity + ? <= energy_capacity * ?)",
+                watts, projectId, watts, wattsPerUnit);
+        if (updated == 0) {
+            // Another node got there first, or the capacity was lowered: resync from the table
+            remaining.remove(projectId);
+            return false;
+        }
+        return true;
+    }
+
+    // Takes capacity for a payment the gateway has already collected after its reservation was
+    // given back (late SUCCESS webhook). The money cannot be refused, so if the project has sold
+    // out meanwhile it is overbooked, and that is logged rather than rejected.
+    public void reserveCollected(Long projectId, BigDecimal watts) {
+        if (watts == null || watts.signum() <= 0 || reserve(projectId, watts)) {
+            return;
+        }
+        jdbcTemplate.update("UPDATE project SET reserved_capacity = COALESCE(reserved_capacity, 0) + ? WHERE id = ?",
+                watts, projectId);
+        remaining.remove(projectId);
+        logger.warn("Project {} overbooked by a late payment of {} W", projectId, watts);
+    }
+
+    // Gives back a reservation (rejected or failed subscription)
+    public void release(Long projectId, BigDecimal watts) {
+        if (watts == null || watts.signum() <= 0) {
+            return;
+        }
+        jdbcTemplate.update(
+                "UPDATE project SET reserved_capacity = GREATEST(reserved_capacity - ?, 0) WHERE id = ?",
+                watts, projectId);
+        giveBackLocally(projectId, watts);
+    }
+
+    private void giveBackLocally(Long projectId, BigDecimal watts) {
+        AtomicLong counter = remaining.get(projectId);
+        if (counter != null) {
+            counter.getAndUpdate(current -> current == UNLIMITED ? UNLIMITED : current + toHundredths(watts));
+        }
+    }
+
+    // Remaining watts, or null when the project has no capacity limit
+    public BigDecimal remainingWatts(Long projectId) {
+        long current = counter(projectId).get();
+        return current == UNLIMITED ? null : BigDecimal.valueOf(Math.max(current, 0), 2);
+    }
+
+    // Call after the project's energy capacity is edited
+    public void invalidate(Long projectId) {
+        remaining.remove(projectId);
+    }
+
+    // Picks up reservations and releases made by other nodes
+    @Scheduled(fixedDelayString = "${capacity.refresh-interval-ms:5000}")
+    public void refresh() {
+        if (remaining.isEmpty()) {
+            return;
+        }
+        namedJdbcTemplate.query(
+                "SELECT id, energy_capacity * :wattsPerUnit - reserved_capacity, energy_capacity IS NULL FROM project " +
+                "WHERE id IN (:ids) AND reserved_capacity IS NOT NULL",
+                new MapSqlParameterSource()
+                        .addValue("wattsPerUnit", wattsPerUnit)
+                        .addValue("ids", remaining.keySet()),
+                rs -> {
+                    AtomicLong counter = remaining.get(rs.getLong(1));
+                    if (counter != null) {
+                        counter.set(rs.getBoolean(3) ? UNLIMITED : toHundredths(rs.getBigDecimal(2)));
+                    }
+                });
+    }
+
+    // Releases the capacity of gateway orders left PENDING past the order TTL. Rows written before
+    // order_created_at existed have no timestamp and are treated as expired. Each row is expired and
+    // its capacity released by one conditional UPDATE of both tables, so with several nodes (or a
+    // webhook holding the row) it is released exactly once.
+    @Scheduled(fixedDelayString = "${capacity.expiry-interval-ms:60000}")
+    public void expirePendingOrders() {
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minus(Duration.ofMillis(pendingOrderTtlMs)));
+        long afterId = 0;
+        int expired = 0;
+        while (true) {
+            List<Map<String, Object>> stale = jdbcTemplate.queryForList(
+                    "SELECT id, project_id, reserved_capacity FROM subscription " +
+                    "WHERE payment_status = 'PENDING' AND payment_order_id IS NOT NULL " +
+                    "AND (order_created_at IS NULL OR order_created_at < ?) AND id > ? ORDER BY id LIMIT ?",
+                    cutoff, afterId, expiryBatchSize);
+            for (Map<String, Object> row : stale) {
+                Long id = ((Number) row.get("id")).longValue();
+                int updated = jdbcTemplate.update(
+                        "UPDATE subscription s LEFT JOIN project p ON p.id = s.project_id " +
+                        "SET s.payment_status = 'EXPIRED', s.pending_order_key = NULL, " +
+                        "    p.reserved_capacity = GREATEST(p.reserved_capacity - COALESCE(s.reserved_capacity, 0), 0) " +
+                        "WHERE s.id = ? AND s.payment_status = 'PENDING'",
+                        id);
+                if (updated > 0) {
+                    BigDecimal watts = (BigDecimal) row.get("reserved_capacity");
+                    if (row.get("project_id") != null && watts != null && watts.signum() > 0) {
+                        giveBackLocally(((Number) row.get("project_id")).longValue(), watts);
+                    }
+                    expired++;
+                }
+                afterId = id;
+            }
+            if (stale.size() < expiryBatchSize) {
+                break;
+            }
+        }
+        if (expired > 0) {
+            logger.info("Expired {} unpaid gateway orders and released their capacity", expired);
+        }
+    }
+
+    private AtomicLong counter(Long projectId) {
+        return remaining.computeIfAbsent(projectId, this::load);
+    }
+
+    private AtomicLong load(Long projectId) {
+        // Projects created before reservations were tracked start from their live subscriptions
+        int initialised = jdbcTemplate.update(
+                "UPDATE project p SET reserved_capacity = (SELECT COALESCE(SUM(s.reserved_capacity), 0) FROM subscription s " +
+                "WHERE s.project_id = p.id AND s.payment_status IN ('SUCCESS', 'PENDING')) " +
+                "WHERE p.id = ? AND p.reserved_capacity IS NULL",
+                projectId);
+        if (initialised > 0) {
+            logger.info("Initialised reserved capacity of project {} from its subscriptions", projectId);
+        }
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT energy_capacity * ? - reserved_capacity AS remaining_watts, energy_capacity IS NULL AS unlimited " +
+                "FROM project WHERE id = ?",
+                wattsPerUnit, projectId);
+        if (rows.isEmpty() || ((Number) rows.get(0).get("unlimited")).intValue() == 1) {
+            return new AtomicLong(UNLIMITED);
+        }
+        Object value = rows.get(0).get("remaining_watts");
+        return new AtomicLong(toHundredths(new BigDecimal(value.toString())));
+    }
+
+    private static long toHundredths(BigDecimal watts) {
+        return watts.setScale(2, RoundingMode.CEILING).unscaledValue().longValueExact();
+    }
+}
@@ -0,0 +1,273 @@
+package com.sunyield.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Proves wallet_account matches the ledger. Users are split into id ranges of audit.partition-size;
+// each partition recomputes its balances with three range-scoped GROUP BY queries
+// (WalletBalanceService.balancesForRange), reads the stored balances for the same range and diffs
+// them. Partitions run in parallel on a pool of audit.parallelism threads.
+//
+// Repair locks the drifted wallet_account rows, recomputes those users inside the same transaction
+// and upserts the result, so a wallet write racing the audit is never overwritten with a stale sum.
+// The first repair pass also serves as the backfill of wallet_account.
+@Service
+public class WalletAuditService {
+    private static final Logger logger = LoggerFactory.getLogger(WalletAuditService.class);
+
+    public static final String MISSING_ACCOUNT = "MISSING_ACCOUNT";
+    public static final String BALANCE_DRIFT = "BALANCE_DRIFT";
+    public static final String ORPHAN_ACCOUNT = "ORPHAN_ACCOUNT";
+
+    @Autowired
+    private WalletBalanceService walletBalanceService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${audit.partition-size:5000}")
+    private int partitionSize;
+
+    @Value("${audit.parallelism:4}")
+    private int parallelism;
+
+    @Value("${audit.auto-repair:false}")
+    private boolean scheduledRepair;
+
+    @Value("${audit.max-samples:200}")
+    private int maxSamples;
+
+    private ExecutorService partitionPool;
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "wallet-audit");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile Map<String, Object> lastReport;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        partitionPool = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "wallet-audit-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coordinator.shutdownNow();
+        partitionPool.shutdownNow();
+    }
+
+    @Scheduled(cron = "${audit.cron:0 0 4 * * *}")
+    public void scheduledRun() {
+        start(scheduledRepair);
+    }
+
+    // Starts an audit in the background; false if one is already running
+    public boolean start(boolean repair) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        coordinator.submit(() -> {
+            try {
+                run(repair);
+            } catch (Exception e) {
+                logger.error("Wallet audit failed: {}", e.getMessage(), e);
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public Map<String, Object> getLastReport() {
+        return lastReport;
+    }
+
+    public Map<String, Object> run(boolean repair) throws InterruptedException, ExecutionException {
+        long started = System.currentTimeMillis();
+        Report report = new Report(repair, maxSamples);
+
+        Map<String, Object> bounds = jdbcTemplate.queryForMap(
+                "SELECT LEAST(COALESCE((SELECT MIN(id) FROM user), 0), COALESCE((SELECT MIN(user_id) FROM wallet_account), 0)) AS lo, " +
+                "GREATEST(COALESCE((SELECT MAX(id) FROM user), 0), COALESCE((SELECT MAX(user_id) FROM wallet_account), 0)) AS hi");
+        long lo = ((Number) bounds.get("lo")).longValue();
+        long hi = ((Number) bounds.get("hi")).longValue();
+
+        List<Callable<Void>> partitions = new ArrayList<>();
+        for (long from = lo; from <= hi; from += partitionSize) {
+            long fromId = from;
+            long toId = from + partitionSize;
+            partitions.add(() -> {
+                auditPartition(fromId, toId, report);
+                return null;
+            });
+        }
+        for (Future<Void> partition : partitionPool.invokeAll(partitions)) {
+            partition.get();
+        }
+
+        Map<String, Object> result = report.toMap();
+        result.put("partitions", partitions.size());
+        result.put("startedAt", new Timestamp(started).toLocalDateTime());
+        result.put("elapsedMs", System.currentTimeMillis() - started);
+        lastReport = result;
+        logger.info("Wallet audit: {} users in {} partitions, {} drifted by {} in total, {} repaired, {} ms",
+                report.usersChecked.get(), partitions.size(), report.drifted.get(), report.totalDrift(),
+                report.repaired.get(), System.currentTimeMillis() - started);
+        return result;
+    }
+
+    private void auditPartition(long fromId, long toId, Report report) {
+        Map<Long, BigDecimal> expected = walletBalanceService.balancesForRange(fromId, toId);
+        Map<Long, BigDecimal> stored = new HashMap<>();
+        jdbcTemplate.query("SELECT user_id, balance FROM wallet_account WHERE user_id >= ? AND user_id < ?",
+                rs -> { stored.put(rs.getLong(1), rs.getBigDecimal(2)); }, fromId, toId);
+        report.usersChecked.addAndGet(expected.size());
+
+        List<Long> drifted = new ArrayList<>();
+        List<Long> orphans = new ArrayList<>();
+        for (Map.Entry<Long, BigDecimal> entry : expected.entrySet()) {
+            BigDecimal actual = stored.get(entry.getKey());
+            if (actual == null) {
+                report.record(MISSING_ACCOUNT, entry.getKey(), null, entry.getValue());
+                drifted.add(entry.getKey());
+            } else if (actual.compareTo(entry.getValue()) != 0) {
+                report.record(BALANCE_DRIFT, entry.getKey(), actual, entry.getValue());
+                drifted.add(entry.getKey());
+            }
+        }
+        for (Map.Entry<Long, BigDecimal> entry : stored.entrySet()) {
+            if (!expected.containsKey(entry.getKey())) {
+                report.record(ORPHAN_ACCOUNT, entry.getKey(), entry.getValue(), null);
+                orphans.add(entry.getKey());
+            }
+        }
+
+        if (report.repair && (!drifted.isEmpty() || !orphans.isEmpty())) {
+            transactionTemplate.executeWithoutResult(status -> repair(drifted, orphans, report));
+        }
+    }
+
+    private void repair(List<Long> drifted, List<Long> orphans, Report report) {
+        if (!orphans.isEmpty()) {
+            // Accounts of users that no longer exist
+            namedJdbcTemplate.update("DELETE FROM wallet_account WHERE user_id IN (:ids)",
+                    new MapSqlParameterSource("ids", orphans));
+            report.repaired.addAndGet(orphans.size());
+        }
+        if (drifted.isEmpty()) {
+            return;
+        }
+        namedJdbcTemplate.queryForList("SELECT user_id FROM wallet_account WHERE user_id IN (:ids) FOR UPDATE",
+                new MapSqlParameterSource("ids", drifted), Long.class);
+        // Recomputed after taking the locks, so the sum includes every committed wallet write
+        Map<Long, BigDecimal> balances = walletBalanceService.balancesFor(drifted);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(balances.size());
+        for (Map.Entry<Long, BigDecimal> entry : balances.entrySet()) {
+            rows.add(new Object[] { entry.getKey(), entry.getValue(), now });
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO wallet_account (user_id, balance, updated_at) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE balance = VALUES(balance), updated_at = VALUES(updated_at)",
+                rows);
+        report.repaired.addAndGet(rows.size());
+    }
+
+    // Shared by all partition threads
+    private static final class Report {
+        final boolean repair;
+        final int maxSamples;
+        final AtomicLong usersChecked = new AtomicLong();
+        final AtomicLong drifted = new AtomicLong();
+        final AtomicLong repaired = new AtomicLong();
+        final Map<String, AtomicLong> counts = new LinkedHashMap<>();
+        private BigDecimal totalDrift = BigDecimal.ZERO;
+        private final List<Map<String, Object>> samples = new ArrayList<>();
+
+        Report(boolean repair, int maxSamples) {
+            this.repair = repair;
+            this.maxSamples = maxSamples;
+            counts.put(MISSING_ACCOUNT, new AtomicLong());
+            counts.put(BALANCE_DRIFT, new AtomicLong());
+            counts.put(ORPHAN_ACCOUNT, new AtomicLong());
+        }
+
+        void record(String kind, Long userId, BigDecimal stored, BigDecimal expected) {
+            counts.get(kind).incrementAndGet();
+            drifted.incrementAndGet();
+            BigDecimal drift = (stored != null ? stored : BigDecimal.ZERO).subtract(expected != null ? expected : BigDecimal.ZERO);
+            synchronized (this) {
+                totalDrift = totalDrift.add(drift.abs());
+                if (samples.size() < maxSamples) {
+                    Map<String, Object> sample = new LinkedHashMap<>();
+                    sample.put("kind", kind);
+                    sample.put("userId", userId);
+                    sample.put("stored", stored);
+                    sample.put("expected", expected);
+                    sample.put("drift", drift);
+                    samples.add(sample);
+                }
+            }
+        }
+
+        synchronized BigDecimal totalDrift() {
+            return totalDrift;
+        }
+
+        synchronized Map<String, Object> toMap() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("repair", repair);
+            result.put("usersChecked", usersChecked.get());
+            Map<String, Long> byKind = new LinkedHashMap<>();
+            counts.forEach((kind, count) -> byKind.put(kind, count.get()));
+            result.put("discrepancies", byKind);
+            result.put("totalAbsoluteDrift", totalDrift);
+            result.put("repaired", repaired.get());
+            result.put("samples", new ArrayList<>(samples));
+            return result;
+        }
+    }
+}
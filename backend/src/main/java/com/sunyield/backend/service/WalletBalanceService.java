@@ -0,0 +1,83 @@
+package com.sunyield.backend.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Set-based wallet balances: the same rules as the per-controller balance helpers
+// (SUCCESS rewards + inflows - outflows), computed for many users with three GROUP BY queries.
+//
+// Only refunds written by PayoutDispatcher (external_reference WITHDRAWAL_REFUND:<id>) count as an
+// inflow. Older refund rows were written for payouts that never had a WITHDRAWAL debit and were never
+// part of any balance, so counting them would hand out money twice.
+@Service
+public class WalletBalanceService {
+
+    public static final List<String> INFLOW_TYPES = List.of("ADMIN_CREDIT", "ADD_FUNDS", "GIFT", "WITHDRAWAL_REFUND");
+    private static final String REFUND_FILTER =
+            "(type <> 'WITHDRAWAL_REFUND' OR external_reference LIKE 'WITHDRAWAL\\_REFUND:%')";
+    public static final List<String> OUTFLOW_TYPES = List.of("INVESTMENT", "SUBSCRIPTION", "WITHDRAWAL", "REINVEST", "DONATE", "GIFT");
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public Map<Long, BigDecimal> balancesFor(Collection<Long> userIds) {
+        Map<Long, BigDecimal> balances = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return balances;
+        }
+        for (Long userId : userIds) {
+            balances.put(userId, BigDecimal.ZERO);
+        }
+        aggregate(balances, "%s IN (:ids)", new MapSqlParameterSource("ids", userIds));
+        return balances;
+    }
+
+    // Every user with fromId <= id < toId, including those with no activity (balance zero).
+    // Range predicates on the user id columns are index range scans, which is what makes a
+    // partitioned pass over all users cheap.
+    public Map<Long, BigDecimal> balancesForRange(long fromId, long toId) {
+        Map<Long, BigDecimal> balances = new HashMap<>();
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("fromId", fromId)
+                .addValue("toId", toId);
+        jdbcTemplate.query("SELECT id FROM user WHERE id >= :fromId AND id < :toId", params,
+                rs -> { balances.put(rs.getLong(1), BigDecimal.ZERO); });
+        aggregate(balances, "%s >= :fromId AND %<s < :toId", params);
+        return balances;
+    }
+
+    // userFilter is a predicate with %s standing for the user id column of each table
+    private void aggregate(Map<Long, BigDecimal> balances, String userFilter, MapSqlParameterSource params) {
+        params.addValue("inflows", INFLOW_TYPES)
+              .addValue("outflows", OUTFLOW_TYPES);
+
+        jdbcTemplate.query(
+                "SELECT user_id, SUM(reward_amount) FROM reward_history " +
+                "WHERE status = 'SUCCESS' AND " + String.format(userFilter, "user_id") + " GROUP BY user_id",
+                params, rs -> { balances.merge(rs.getLong(1), nonNull(rs.getBigDecimal(2)), BigDecimal::add); });
+        jdbcTemplate.query(
+                "SELECT to_user_id, SUM(amount) FROM credit_transfer_log " +
+                "WHERE type IN (:inflows) AND " + REFUND_FILTER + " AND " + String.format(userFilter, "to_user_id") + " GROUP BY to_user_id",
+                params, rs -> { balances.merge(rs.getLong(1), nonNull(rs.getBigDecimal(2)), BigDecimal::add); });
+        jdbcTemplate.query(
+                "SELECT from_user_id, SUM(amount) FROM credit_transfer_log " +
+                "WHERE type IN (:outflows) AND " + String.format(userFilter, "from_user_id") + " GROUP BY from_user_id",
+                params, rs -> { balances.merge(rs.getLong(1), nonNull(rs.getBigDecimal(2)).negate(), BigDecimal::add); });
+    }
+
+    public BigDecimal balanceOf(Long userId) {
+        return balancesFor(List.of(userId)).get(userId);
+    }
+
+    private static BigDecimal nonNull(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+}
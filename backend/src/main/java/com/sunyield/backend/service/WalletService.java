@@ -0,0 +1,339 @@
+package com.sunyield.backend.service;
+
+import com.sunyield.backend.entity.CreditTransferLog;
+import com.sunyield.backend.entity.Project;
+import com.sunyield.backend.entity.RewardHistory;
+import com.sunyield.backend.entity.Subscription;
+import com.sunyield.backend.entity.User;
+import com.sunyield.backend.entity.WithdrawalRequest;
+import com.sunyield.backend.repository.CreditTransferLogRepository;
+import com.sunyield.backend.repository.RewardHistoryRepository;
+import com.sunyield.backend.repository.SubscriptionRepository;
+import com.sunyield.backend.repository.WithdrawalRequestRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// Every change to a wallet goes through here. Each operation is one short transaction that locks
+// the wallet_account rows involved (always in user id order, so concurrent transfers cannot
+// deadlock), checks funds against the locked balance, writes the ledger rows and moves the
+// materialized balance by the same amount. Nothing in here sends email or calls the gateway;
+// callers do that after the operation returns, so no connection is held across external I/O.
+//
+// Batch writers that build their own ledger rows (auto-reinvest, payouts, reconciliation) call
+// lockAccounts and applyDeltas inside their own transaction instead.
+@Service
+public class WalletService {
+
+    @Autowired
+    private CreditTransferLogRepository creditTransferLogRepository;
+
+    @Autowired
+    private RewardHistoryRepository rewardHistoryRepository;
+
+    @Autowired
+    private SubscriptionRepository subscriptionRepository;
+
+    @Autowired
+    private WithdrawalRequestRepository withdrawalRequestRepository;
+
+    @Autowired
+    private WalletBalanceService walletBalanceService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    public static class InsufficientFundsException extends RuntimeException {
+        private final BigDecimal available;
+        private final BigDecimal required;
+
+        public InsufficientFundsException(BigDecimal available, BigDecimal required) {
+            super("Insufficient wallet balance. Available: ₹" + available + ", Required: ₹" + required);
+            this.available = available;
+            this.required = required;
+        }
+
+        public BigDecimal getAvailable() { return available; }
+        public BigDecimal getRequired() { return required; }
+    }
+
+    public static class MonthlyCapExceededException extends RuntimeException {
+        private final BigDecimal withdrawnThisMonth;
+        private final BigDecimal cap;
+
+        public MonthlyCapExceededException(BigDecimal withdrawnThisMonth, BigDecimal cap) {
+            super("Monthly withdrawal cap exceeded. Monthly limit: ₹" + cap + ", Already withdrawn: ₹" + withdrawnThisMonth);
+            this.withdrawnThisMonth = withdrawnThisMonth;
+            this.cap = cap;
+        }
+
+        public BigDecimal getWithdrawnThisMonth() { return withdrawnThisMonth; }
+        public BigDecimal getCap() { return cap; }
+    }
+
+    // Queued, in-flight and under-review payouts count towards the monthly cap as well as paid ones
+    public static final List<String> CAP_STATUSES = List.of("PAID", "QUEUED", "PROCESSING", "REVIEW");
+
+    // Current balance, without locking; users without a wallet row yet are summed from the ledger
+    public BigDecimal balanceOf(Long userId) {
+        List<BigDecimal> rows = jdbcTemplate.queryForList(
+                "SELECT balance FROM wallet_account WHERE user_id = ?", BigDecimal.class, userId);
+        return rows.isEmpty() ? walletBalanceService.balanceOf(userId) : rows.get(0);
+    }
+
+    // Inflow to a user (ADMIN_CREDIT, ADD_FUNDS, ...)
+    public CreditTransferLog credit(User to, BigDecimal amount, String type, String notes, String externalReference) {
+        return transactionTemplate.execute(status -> {
+            lockAccounts(List.of(to.getId()));
+            CreditTransferLog log = newLog(null, to, null, amount, type, notes, externalReference);
+            creditTransferLogRepository.save(log);
+            applyDeltas(Map.of(to.getId(), amount));
+            return log;
+        });
+    }
+
+    // Outflow from a user (REINVEST, DONATE, ...). With requireFunds the balance may not go negative;
+    // without it the debit is recorded regardless (money already collected elsewhere, e.g. by the gateway).
+    public CreditTransferLog debit(User from, BigDecimal amount, String type, Project project, String notes,
+                                   String externalReference, boolean requireFunds) {
+        return transactionTemplate.execute(status -> {
+            BigDecimal balance = lockAccounts(List.of(from.getId())).get(from.getId());
+            if (requireFunds && balance.compareTo(amount) < 0) {
+                throw new InsufficientFundsException(balance, amount);
+            }
+            CreditTransferLog log = newLog(from, null, project, amount, type, notes, externalReference);
+            creditTransferLogRepository.save(log);
+            applyDeltas(Map.of(from.getId(), amount.negate()));
+            return log;
+        });
+    }
+
+    // One ledger row moving amount from one user to another (GIFT)
+    public CreditTransferLog transfer(User from, User to, BigDecimal amount, String type, String notes) {
+        if (from.getId().equals(to.getId())) {
+            throw new IllegalArgumentException("Cannot transfer to the same wallet");
+        }
+        return transactionTemplate.execute(status -> {
+            BigDecimal balance = lockAccounts(List.of(from.getId(), to.getId())).get(from.getId());
+            if (balance.compareTo(amount) < 0) {
+                throw new InsufficientFundsException(balance, amount);
+            }
+            CreditTransferLog log = newLog(from, to, null, amount, type, notes, null);
+            creditTransferLogRepository.save(log);
+            Map<Long, BigDecimal> deltas = new HashMap<>();
+            deltas.put(from.getId(), amount.negate());
+            deltas.put(to.getId(), amount);
+            applyDeltas(deltas);
+            return log;
+        });
+    }
+
+    // One sender to many recipients: all rows are written in one batch and the sender's balance must
+    // cover the total, otherwise nothing is written. Returns the total moved.
+    public BigDecimal transferToMany(User from, Map<User, BigDecimal> amounts, String type, String notes, String batchReference) {
+        List<Long> ids = new ArrayList<>(amounts.size() + 1);
+        ids.add(from.getId());
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<User, BigDecimal> entry : amounts.entrySet()) {
+            if (from.getId().equals(entry.getKey().getId())) {
+                throw new IllegalArgumentException("Cannot transfer to the same wallet");
+            }
+            ids.add(entry.getKey().getId());
+            total = total.add(entry.getValue());
+        }
+        BigDecimal required = total;
+        return transactionTemplate.execute(status -> {
+            BigDecimal balance = lockAccounts(ids).get(from.getId());
+            if (balance.compareTo(required) < 0) {
+                throw new InsufficientFundsException(balance, required);
+            }
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            List<Object[]> rows = new ArrayList<>(amounts.size());
+            Map<Long, BigDecimal> deltas = new HashMap<>();
+            deltas.put(from.getId(), required.negate());
+            for (Map.Entry<User, BigDecimal> entry : amounts.entrySet()) {
+                Long toId = entry.getKey().getId();
+                rows.add(new Object[] { from.getId(), toId, entry.getValue(), type, now, notes,
+                        batchReference + ":" + toId });
+                deltas.merge(toId, entry.getValue(), BigDecimal::add);
+            }
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO credit_transfer_log (from_user_id, to_user_id, amount, type, date, notes, external_reference) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                    rows);
+            applyDeltas(deltas);
+            return required;
+        });
+    }
+
+    // Saves a paid-from-wallet subscription together with its SUBSCRIPTION debit. A concurrent
+    // duplicate surfaces as DataIntegrityViolationException and nothing is written.
+    public Subscription subscribe(Subscription subscription, String notes) {
+        return transactionTemplate.execute(status -> {
+            User user = subscription.getUser();
+            BigDecimal amount = subscription.getContributionAmount();
+            BigDecimal balance = lockAccounts(List.of(user.getId())).get(user.getId());
+            if (balance.compareTo(amount) < 0) {
+                throw new InsufficientFundsException(balance, amount);
+            }
+            Subscription saved = subscriptionRepository.saveAndFlush(subscription);
+            CreditTransferLog log = newLog(user, null, saved.getProject(), amount, "SUBSCRIPTION", notes,
+                    CreditTransferLog.reference("SUBSCRIPTION", saved.getPaymentOrderId()));
+            creditTransferLogRepository.save(log);
+            applyDeltas(Map.of(user.getId(), amount.negate()));
+            return saved;
+        });
+    }
+
+    // Reserves the amount (WITHDRAWAL row) and queues the payout for PayoutDispatcher. The monthly cap
+    // is checked under the wallet lock, so concurrent requests from one user cannot both pass it.
+    public WithdrawalRequest withdraw(User user, BigDecimal amount, BigDecimal monthlyCap, String payoutMethod, String upiId) {
+        return transactionTemplate.execute(status -> {
+            BigDecimal balance = lockAccounts(List.of(user.getId())).get(user.getId());
+            BigDecimal withdrawn = withdrawnThisMonth(user.getId());
+            if (withdrawn.add(amount).compareTo(monthlyCap) > 0) {
+                throw new MonthlyCapExceededException(withdrawn, monthlyCap);
+            }
+            if (balance.compareTo(amount) < 0) {
+                throw new InsufficientFundsException(balance, amount);
+            }
+            WithdrawalRequest req = new WithdrawalRequest();
+            req.setUser(user);
+            req.setAmount(amount);
+            req.setRequestDate(LocalDateTime.now());
+            req.setStatus("QUEUED");
+            req.setPayoutMethod(payoutMethod);
+            req.setUpiId(upiId);
+            WithdrawalRequest saved = withdrawalRequestRepository.save(req);
+
+            CreditTransferLog log = newLog(user, null, null, amount, "WITHDRAWAL",
+                    "Withdrawal #" + saved.getId() + " queued for payout",
+                    CreditTransferLog.reference("WITHDRAWAL", saved.getId()));
+            creditTransferLogRepository.save(log);
+            applyDeltas(Map.of(user.getId(), amount.negate()));
+            return saved;
+        });
+    }
+
+    // Sum of this month's withdrawals that count towards the cap
+    public BigDecimal withdrawnThisMonth(Long userId) {
+        YearMonth month = YearMonth.now();
+        return withdrawalRequestRepository.findByUserIdAndStatusInAndRequestDateBetween(
+                        userId, CAP_STATUSES, month.atDay(1).atStartOfDay(), month.atEndOfMonth().atTime(23, 59, 59))
+                .stream().map(WithdrawalRequest::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    // Saves reward rows; SUCCESS rewards are credited to the wallets
+    public List<RewardHistory> recordRewards(List<RewardHistory> rewards) {
+        if (rewards.isEmpty()) {
+            return rewards;
+        }
+        return transactionTemplate.execute(status -> {
+            Map<Long, BigDecimal> deltas = new HashMap<>();
+            for (RewardHistory reward : rewards) {
+                if ("SUCCESS".equals(reward.getStatus()) && reward.getRewardAmount() != null) {
+                    deltas.merge(reward.getUser().getId(), reward.getRewardAmount(), BigDecimal::add);
+                }
+            }
+            lockAccounts(deltas.keySet());
+            List<RewardHistory> saved = rewardHistoryRepository.saveAll(rewards);
+            applyDeltas(deltas);
+            return saved;
+        });
+    }
+
+    // Locks the wallet rows of these users in id order and returns their balances. Wallets that do
+    // not exist yet are created from the ledger first. Must run inside the caller's transaction.
+    public Map<Long, BigDecimal> lockAccounts(Collection<Long> userIds) {
+        requireTransaction();
+        Map<Long, BigDecimal> balances = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return balances;
+        }
+        TreeSet<Long> ids = new TreeSet<>(userIds);
+        selectForUpdate(ids, balances);
+
+        if (balances.size() < ids.size()) {
+            List<Long> missing = new ArrayList<>();
+            for (Long id : ids) {
+                if (!balances.containsKey(id)) {
+                    missing.add(id);
+                }
+            }
+            Map<Long, BigDecimal> initial = walletBalanceService.balancesFor(missing);
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            List<Object[]> rows = new ArrayList<>(missing.size());
+            for (Long id : missing) {
+                rows.add(new Object[] { id, initial.get(id), now });
+            }
+            // A concurrent first write for the same user may have created the row meanwhile
+            jdbcTemplate.batchUpdate(
+                    "INSERT IGNORE INTO wallet_account (user_id, balance, updated_at) VALUES (?, ?, ?)", rows);
+            selectForUpdate(missing, balances);
+        }
+        return balances;
+    }
+
+    // Moves locked balances by the given amounts. Must run inside the transaction that locked them.
+    public void applyDeltas(Map<Long, BigDecimal> deltas) {
+        requireTransaction();
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(deltas.size());
+        for (Map.Entry<Long, BigDecimal> delta : deltas.entrySet()) {
+            rows.add(new Object[] { delta.getValue(), now, delta.getKey() });
+        }
+        jdbcTemplate.batchUpdate(
+                "UPDATE wallet_account SET balance = balance + ?, updated_at = ? WHERE user_id = ?", rows);
+    }
+
+    private void selectForUpdate(Collection<Long> ids, Map<Long, BigDecimal> balances) {
+        namedJdbcTemplate.query(
+                "SELECT user_id, balance FROM wallet_account WHERE user_id IN (:ids) ORDER BY user_id FOR UPDATE",
+                new MapSqlParameterSource("ids", ids),
+                rs -> { balances.put(rs.getLong(1), rs.getBigDecimal(2)); });
+    }
+
+    private static void requireTransaction() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Wallet rows can only be locked inside a transaction");
+        }
+    }
+
+    private static CreditTransferLog newLog(User from, User to, Project project, BigDecimal amount, String type,
+                                            String notes, String externalReference) {
+        CreditTransferLog log = new CreditTransferLog();
+        log.setFromUser(from);
+        log.setToUser(to);
+        log.setProject(project);
+        log.setAmount(amount);
+        log.setType(type);
+        log.setDate(LocalDateTime.now());
+        log.setNotes(notes);
+        log.setExternalReference(externalReference);
+        return log;
+    }
+}
@@ -0,0 +1,87 @@
+package com.sunyield.backend.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Snowflake-style 63-bit ids: 41 bits of milliseconds since 2024-01-01, 10 bits of node id and a
+// 12-bit per-millisecond sequence. The last issued (timestamp, sequence) pair lives in one
+// AtomicLong and each id is a single CAS, so there is no lock. Ids are strictly increasing per
+// node: if the clock stalls or steps back, or more than 4096 ids are needed in one millisecond,
+// the generator keeps counting forward from the last id instead of waiting.
+@Component
+public class BusinessIdGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(BusinessIdGenerator.class);
+
+    public static final long EPOCH_MILLIS = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeId;
+    // (millis since epoch << SEQUENCE_BITS) | sequence of the last issued id
+    private final AtomicLong last = new AtomicLong();
+
+    // app.node-id must differ per instance when several run against the same database. Left unset,
+    // it is derived from the host name, which is only safe for a single instance: two hosts can hash
+    // to the same node id and then issue the same ids.
+    @Autowired
+    public BusinessIdGenerator(@Value("${app.node-id:-1}") long configuredNodeId) {
+        if (configuredNodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("app.node-id must be between 0 and " + MAX_NODE_ID + ", got " + configuredNodeId);
+        }
+        if (configuredNodeId >= 0) {
+            this.nodeId = configuredNodeId;
+            logger.info("Business id generator using node id {}", nodeId);
+        } else {
+            this.nodeId = hostNodeId();
+            logger.error("app.node-id is not set; using node id {} derived from the host name. Ids are only " +
+                    "guaranteed unique with a single instance - set a distinct app.node-id on every instance.", nodeId);
+        }
+    }
+
+    public long nextId() {
+        while (true) {
+            long previous = last.get();
+            long nowState = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+            long next = nowState > previous ? nowState : previous + 1;
+            if (last.compareAndSet(previous, next)) {
+                long millis = next >>> SEQUENCE_BITS;
+                return (millis << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    // PREFIX_<19-digit id>; zero-padded so string order matches creation order
+    public String nextId(String prefix) {
+        String digits = Long.toString(nextId());
+        StringBuilder sb = new StringBuilder(prefix.length() + 20).append(prefix).append('_');
+        for (int i = digits.length(); i < 19; i++) {
+            sb.append('0');
+        }
+        return sb.append(digits).toString();
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    public static Instant timestampOf(long id) {
+        return Instant.ofEpochMilli((id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS);
+    }
+
+    private static long hostNodeId() {
+        try {
+            return InetAddress.getLocalHost().getHostName().hashCode() & MAX_NODE_ID;
+        } catch (Exception e) {
+            return 0L;
+        }
+    }
+}
@@ -1,38 +1,119 @@
 package com.sunyield.backend.util;
 
+import com.sunyield.backend.entity.KYCStatus;
+import com.sunyield.backend.entity.Role;
+import com.sunyield.backend.entity.User;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.Claims;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Component
 public class JwtUtil {
     private final String SECRET_KEY = "sunyield_secret";
     private final long EXPIRATION_TIME = 1000 * 60 * 60 * 10; // 10 hours
 
-    public String generateToken(String email) {
+    // Recently verified tokens, keyed by SHA-256 digest so raw tokens are never held in memory
+    @Value("${jwt.verified-cache-size:10000}")
+    private int verifiedCacheSize;
+
+    private Map<String, TokenClaims> verifiedTokens;
+
+    // Everything the filter needs to build the principal without a database lookup
+    public static class TokenClaims {
+        private final Long userId;
+        private final String email;
+        private final Role role;
+        private final KYCStatus kycStatus;
+        private final int tokenVersion;
+        private final String fullName;
+        private final String contact;
+        private final long expiresAt;
+
+        TokenClaims(Claims claims) {
+            Object uid = claims.get("uid");
+            Object ver = claims.get("ver");
+            this.userId = uid != null ? ((Number) uid).longValue() : null;
+            this.email = claims.getSubject();
+            this.role = claims.get("role") != null ? Role.valueOf(claims.get("role", String.class)) : Role.USER;
+            this.kycStatus = claims.get("kyc") != null ? KYCStatus.valueOf(claims.get("kyc", String.class)) : KYCStatus.PENDING;
+            this.tokenVersion = ver != null ? ((Number) ver).intValue() : 0;
+            this.fullName = claims.get("name", String.class);
+            this.contact = claims.get("phone", String.class);
+            this.expiresAt = claims.getExpiration() != null ? claims.getExpiration().getTime() : Long.MAX_VALUE;
+        }
+
+        public Long getUserId() { return userId; }
+        public String getEmail() { return email; }
+        public Role getRole() { return role; }
+        public KYCStatus getKycStatus() { return kycStatus; }
+        public int getTokenVersion() { return tokenVersion; }
+        public String getFullName() { return fullName; }
+        public String getContact() { return contact; }
+        public boolean isExpired() { return System.currentTimeMillis() >= expiresAt; }
+
+        // Tokens issued before claims were embedded only carry the email
+        public boolean isLegacy() { return userId == null; }
+
+        // Detached principal built from the claims; not managed by JPA
+        public User toPrincipal() {
+            User user = new User();
+            user.setId(userId);
+            user.setEmail(email);
+            user.setFullName(fullName);
+            user.setContact(contact);
+            user.setRole(role);
+            user.setKycStatus(kycStatus);
+            user.setVerified(true);
+            user.setTokenVersion(tokenVersion);
+            return user;
+        }
+    }
+
+    public String generateToken(User user) {
         return Jwts.builder()
-                .setSubject(email)
+                .setSubject(user.getEmail())
+                .claim("uid", user.getId())
+                .claim("role", user.getRole() != null ? user.getRole().name() : Role.USER.name())
+                .claim("kyc", user.getKycStatus() != null ? user.getKycStatus().name() : KYCStatus.PENDING.name())
+                .claim("ver", user.getTokenVersion())
+                .claim("name", user.getFullName())
+                .claim("phone", user.getContact())
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
                 .signWith(SignatureAlgorithm.HS256, SECRET_KEY)
                 .compact();
     }
 
-    public String extractEmail(String token) {
-        return getClaims(token).getSubject();
-    }
-
-    public boolean validateToken(String token) {
+    // Verifies the signature and expiry once and returns the claims; repeat requests with the
+    // same token are served from the LRU. Returns null for invalid or expired tokens.
+    public TokenClaims verify(String token) {
+        String digest = digest(token);
+        TokenClaims cached;
+        synchronized (this) {
+            cached = verifiedTokens().get(digest);
+        }
+        if (cached != null) {
+            return cached.isExpired() ? null : cached;
+        }
         try {
-            getClaims(token);
-            System.out.println("[DEBUG] JWT token validation successful for token: " + token.substring(0, Math.min(20, token.length())) + "...");
-            return true;
+            TokenClaims claims = new TokenClaims(getClaims(token));
+            synchronized (this) {
+                verifiedTokens().put(digest, claims);
+            }
+            return claims;
         } catch (Exception e) {
             System.err.println("[ERROR] JWT token validation failed: " + e.getMessage());
-            return false;
+            return null;
         }
     }
 
@@ -42,4 +123,27 @@ public class JwtUtil {
                 .parseClaimsJws(token)
                 .getBody();
     }
-} 
\ No newline at end of file
+
+    // Access-ordered LinkedHashMap as a bounded LRU; guarded by this
+    private Map<String, TokenClaims> verifiedTokens() {
+        if (verifiedTokens == null) {
+            final int capacity = verifiedCacheSize;
+            verifiedTokens = new LinkedHashMap<>(Math.min(capacity, 1024), 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, TokenClaims> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+        return verifiedTokens;
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(sha256.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
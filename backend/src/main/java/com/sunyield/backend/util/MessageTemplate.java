@@ -0,0 +1,83 @@
+package com.sunyield.backend.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// A message with {{variable}} placeholders, parsed once into alternating literal and variable
+// parts. Rendering is a single pass appending those parts into a pre-sized StringBuilder, with
+// no regex or re-parsing per recipient. Unknown variables are rejected when compiling, not when
+// the ten-thousandth message is rendered.
+public final class MessageTemplate {
+
+    private final String source;
+    // literals[i] is followed by variables[i]; the last literal has no variable after it
+    private final String[] literals;
+    private final String[] variables;
+    private final int literalLength;
+
+    private MessageTemplate(String source, List<String> literals, List<String> variables) {
+        this.source = source;
+        this.literals = literals.toArray(new String[0]);
+        this.variables = variables.toArray(new String[0]);
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    public static MessageTemplate compile(String source, Set<String> allowedVariables) {
+        if (source == null) {
+            throw new IllegalArgumentException("Template is empty");
+        }
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int open = source.indexOf("{{", position);
+            if (open < 0) {
+                break;
+            }
+            int close = source.indexOf("}}", open + 2);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder at position " + open);
+            }
+            String name = source.substring(open + 2, close).trim();
+            if (!allowedVariables.contains(name)) {
+                throw new IllegalArgumentException("Unknown placeholder {{" + name + "}}; allowed: " + allowedVariables);
+            }
+            literals.add(source.substring(position, open));
+            variables.add(name);
+            position = close + 2;
+        }
+        literals.add(source.substring(position));
+        return new MessageTemplate(source, literals, variables);
+    }
+
+    // Missing values render as empty strings
+    public String render(Map<String, String> values) {
+        StringBuilder sb = new StringBuilder(literalLength + variables.length * 16);
+        for (int i = 0; i < variables.length; i++) {
+            sb.append(literals[i]);
+            String value = values.get(variables[i]);
+            if (value != null) {
+                sb.append(value);
+            }
+        }
+        return sb.append(literals[variables.length]).toString();
+    }
+
+    public Set<String> getVariables() {
+        Set<String> names = new LinkedHashSet<>();
+        Collections.addAll(names, variables);
+        return names;
+    }
+
+    public String getSource() {
+        return source;
+    }
+}
@@ -0,0 +1,114 @@
+package com.sunyield.backend.util;
+
+public class SeriesDownsampler {
+
+    public static class Series {
+        private final long[] timestamps;
+        private final double[] values;
+
+        public Series(long[] timestamps, double[] values) {
+            this.timestamps = timestamps;
+            this.values = values;
+        }
+
+        public long[] getTimestamps() { return timestamps; }
+        public double[] getValues() { return values; }
+        public int size() { return timestamps.length; }
+    }
+
+    // Largest-Triangle-Three-Buckets: keeps the points that preserve the visual shape of the line.
+    // Always keeps the first and last point; returns the input untouched when it already fits.
+    public static Series lttb(long[] x, double[] y, int threshold) {
+        int n = x.length;
+        if (threshold >= n || threshold < 3) {
+            return new Series(x, y);
+        }
+
+        long[] outX = new long[threshold];
+        double[] outY = new double[threshold];
+        outX[0] = x[0];
+        outY[0] = y[0];
+
+        double bucketSize = (double) (n - 2) / (threshold - 2);
+        int selected = 0;
+        int out = 1;
+
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Average of the next bucket is the third corner of the triangle
+            int nextStart = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, n);
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += x[i];
+                avgY += y[i];
+            }
+            int nextCount = Math.max(1, nextEnd - nextStart);
+            avgX /= nextCount;
+            avgY /= nextCount;
+
+            int start = (int) Math.floor(bucket * bucketSize) + 1;
+            int end = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            double maxArea = -1;
+            int maxIndex = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((x[selected] - avgX) * (y[i] - y[selected])
+                                     - (x[selected] - x[i]) * (avgY - y[selected]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = i;
+                }
+            }
+
+            outX[out] = x[maxIndex];
+            outY[out] = y[maxIndex];
+            out++;
+            selected = maxIndex;
+        }
+
+        outX[out] = x[n - 1];
+        outY[out] = y[n - 1];
+        return new Series(outX, outY);
+    }
+
+    // Min/max buckets: each bucket contributes its lowest and highest point (in time order),
+    // so spikes and dips always survive. Produces at most `threshold` points.
+    public static Series minMax(long[] x, double[] y, int threshold) {
+        int n = x.length;
+        if (threshold >= n || threshold < 2) {
+            return new Series(x, y);
+        }
+
+        int buckets = threshold / 2;
+        long[] outX = new long[buckets * 2];
+        double[] outY = new double[buckets * 2];
+        int out = 0;
+        double bucketSize = (double) n / buckets;
+
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int start = (int) Math.floor(bucket * bucketSize);
+            int end = Math.min((int) Math.floor((bucket + 1) * bucketSize), n);
+            if (start >= end) {
+                continue;
+            }
+            int minIndex = start;
+            int maxIndex = start;
+            for (int i = start + 1; i < end; i++) {
+                if (y[i] < y[minIndex]) minIndex = i;
+                if (y[i] > y[maxIndex]) maxIndex = i;
+            }
+            int first = Math.min(minIndex, maxIndex);
+            int second = Math.max(minIndex, maxIndex);
+            outX[out] = x[first];
+            outY[out] = y[first];
+            out++;
+            if (second != first) {
+                outX[out] = x[second];
+                outY[out] = y[second];
+                out++;
+            }
+        }
+
+        return new Series(java.util.Arrays.copyOf(outX, out), java.util.Arrays.copyOf(outY, out));
+    }
+}
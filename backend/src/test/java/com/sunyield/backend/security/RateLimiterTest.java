@@ -0,0 +1,88 @@
+package com.sunyield.backend.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+	private static RateLimiter limiter(boolean enabled) {
+		RateLimiter limiter = new RateLimiter();
+		ReflectionTestUtils.setField(limiter, "enabled", enabled);
+		ReflectionTestUtils.setField(limiter, "authIpPerMinute", 20);
+		ReflectionTestUtils.setField(limiter, "authIpBurst", 10);
+		// One token every ten seconds, three in a burst
+		ReflectionTestUtils.setField(limiter, "otpIpPerMinute", 6);
+		ReflectionTestUtils.setField(limiter, "otpIpBurst", 3);
+		ReflectionTestUtils.setField(limiter, "moneyIpPerMinute", 60);
+		ReflectionTestUtils.setField(limiter, "moneyIpBurst", 20);
+		ReflectionTestUtils.setField(limiter, "moneyUserPerMinute", 20);
+		ReflectionTestUtils.setField(limiter, "moneyUserBurst", 5);
+		ReflectionTestUtils.setField(limiter, "idleEvictMs", 600_000L);
+		limiter.init();
+		return limiter;
+	}
+
+	@Test
+	void admitsExactlyOneBurstThenReportsTheWait() {
+		RateLimiter limiter = limiter(true);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0L, limiter.tryAcquire(RouteRegistry.RateLimitClass.OTP, RateLimiter.Scope.IP, "10.0.0.1"));
+		}
+		long wait = limiter.tryAcquire(RouteRegistry.RateLimitClass.OTP, RateLimiter.Scope.IP, "10.0.0.1");
+		// The fourth request is one emission interval (10s) early, less the time the test took
+		assertTrue(wait > TimeUnit.SECONDS.toNanos(9), "wait " + wait);
+		assertTrue(wait <= TimeUnit.SECONDS.toNanos(10), "wait " + wait);
+	}
+
+	@Test
+	void rejectedRequestsDoNotConsumeTokens() {
+		RateLimiter limiter = limiter(true);
+		for (int i = 0; i < 3; i++) {
+			limiter.tryAcquire(RouteRegistry.RateLimitClass.OTP, RateLimiter.Scope.IP, "10.0.0.1");
+		}
+		long first = limiter.tryAcquire(RouteRegistry.RateLimitClass.OTP, RateLimiter.Scope.IP, "10.0.0.1");
+		long second = limiter.tryAcquire(RouteRegistry.RateLimitClass.OTP, RateLimiter.Scope.IP, "10.0.0.1");
+		assertTrue(second <= first);
+	}
+
+	@Test
+	void bucketsAreKeyedByClassScopeAndKey() {
+		RateLimiter limiter = limiter(true);
+		for (int i = 0; i < 3; i++) {
+			limiter.tryAcquire(RouteRegistry.RateLimitClass.OTP, RateLimiter.Scope.IP, "10.0.0.1");
+		}
+		assertEquals(0L, limiter.tryAcquire(RouteRegistry.RateLimitClass.OTP, RateLimiter.Scope.IP, "10.0.0.2"));
+		assertEquals(0L, limiter.tryAcquire(RouteRegistry.RateLimitClass.AUTH, RateLimiter.Scope.IP, "10.0.0.1"));
+		assertEquals(3, limiter.bucketCount());
+	}
+
+	@Test
+	void unlimitedCombinationsAndDisabledLimiterAlwaysAdmit() {
+		RateLimiter limiter = limiter(true);
+		for (int i = 0; i < 100; i++) {
+			// Only MONEY has a per-user limit
+			assertEquals(0L, limiter.tryAcquire(RouteRegistry.RateLimitClass.OTP, RateLimiter.Scope.USER, "42"));
+			assertEquals(0L, limiter.tryAcquire(RouteRegistry.RateLimitClass.OTP, RateLimiter.Scope.IP, null));
+		}
+		assertEquals(0, limiter.bucketCount());
+
+		RateLimiter disabled = limiter(false);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(0L, disabled.tryAcquire(RouteRegistry.RateLimitClass.OTP, RateLimiter.Scope.IP, "10.0.0.1"));
+		}
+	}
+
+	@Test
+	void idleSweepKeepsBucketsThatAreStillDraining() {
+		RateLimiter limiter = limiter(true);
+		limiter.tryAcquire(RouteRegistry.RateLimitClass.OTP, RateLimiter.Scope.IP, "10.0.0.1");
+		ReflectionTestUtils.setField(limiter, "idleEvictMs", 0L);
+		limiter.evictIdle();
+		assertEquals(1, limiter.bucketCount());
+	}
+}
@@ -0,0 +1,57 @@
+package com.sunyield.backend.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteRegistryTest {
+
+	private final RouteRegistry registry = new RouteRegistry();
+
+	@Test
+	void exactRouteWinsOverItsSubtree() {
+		RouteRegistry.Route login = registry.resolve("/api/auth/login");
+		assertEquals("/api/auth/login", login.getPattern());
+		assertEquals(RouteRegistry.RateLimitClass.AUTH, login.getRateLimit());
+		assertEquals(RouteRegistry.Access.OPTIONAL_AUTH, login.getAccess());
+	}
+
+	@Test
+	void subtreeCoversItsRootAndEverythingBelow() {
+		assertEquals("/api/auth/**", registry.resolve("/api/auth").getPattern());
+		assertEquals("/api/auth/**", registry.resolve("/api/auth/me").getPattern());
+		assertEquals("/api/auth/**", registry.resolve("/api/auth/debug/token/x").getPattern());
+		// An exact route does not extend to paths below it
+		assertEquals("/api/auth/**", registry.resolve("/api/auth/login/extra").getPattern());
+	}
+
+	@Test
+	void deepestSubtreeWins() {
+		RouteRegistry.Route route = registry.resolve("/api/wallet/add-funds/razorpay");
+		assertEquals("/api/wallet/add-funds/**", route.getPattern());
+		assertEquals(RouteRegistry.RateLimitClass.MONEY, route.getRateLimit());
+		assertTrue(route.isIdempotent());
+	}
+
+	@Test
+	void unlistedPathsAreAuthenticated() {
+		assertEquals(RouteRegistry.Access.AUTHENTICATED, registry.classify("/api/projects/17"));
+		assertEquals(RouteRegistry.Access.AUTHENTICATED, registry.classify("/admin/users"));
+		assertEquals(RouteRegistry.Access.AUTHENTICATED, registry.classify("/api/wallet"));
+		assertEquals(RouteRegistry.Access.AUTHENTICATED, registry.classify("/"));
+		assertEquals(RouteRegistry.RateLimitClass.NONE, registry.resolve("/nothing/here").getRateLimit());
+		assertFalse(registry.resolve("/nothing/here").isIdempotent());
+	}
+
+	@Test
+	void siblingsAndSlashesResolveIndependently() {
+		assertEquals(RouteRegistry.Access.PUBLIC, registry.classify("/admin/login"));
+		assertEquals(RouteRegistry.Access.OPTIONAL_AUTH, registry.classify("/admin/test-auth"));
+		assertEquals(RouteRegistry.Access.PUBLIC, registry.classify("/api/projects/active"));
+		assertEquals(RouteRegistry.Access.PUBLIC, registry.classify("/api/projects/images/a.png"));
+		assertEquals("/api/auth/login", registry.resolve("/api/auth/login/").getPattern());
+		assertEquals("/api/auth/login", registry.resolve("/api//auth/login").getPattern());
+	}
+}
@@ -0,0 +1,67 @@
+package com.sunyield.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GatewayFaultInjectorTest {
+
+	private static final int SAMPLES = 10_000;
+
+	@Test
+	void fixedLatencyIsClampedToTheAllowedRange() {
+		assertEquals(250L, GatewayFaultInjector.LatencyDistribution.parse(" FIXED:250 ").sampleMs());
+		assertEquals(120_000L, GatewayFaultInjector.LatencyDistribution.parse("fixed:500000").sampleMs());
+		assertEquals(0L, GatewayFaultInjector.LatencyDistribution.parse("fixed:-5").sampleMs());
+	}
+
+	@Test
+	void uniformSamplesStayWithinTheRange() {
+		GatewayFaultInjector.LatencyDistribution latency = GatewayFaultInjector.LatencyDistribution.parse("uniform:100-200");
+		for (int i = 0; i < SAMPLES; i++) {
+			long sample = latency.sampleMs();
+			assertTrue(sample >= 100 && sample <= 200, "sample " + sample);
+		}
+	}
+
+	@Test
+	void lognormalMedianIsNearItsScale() {
+		GatewayFaultInjector.LatencyDistribution latency = GatewayFaultInjector.LatencyDistribution.parse("lognormal:300,0.5");
+		int below = 0;
+		for (int i = 0; i < SAMPLES; i++) {
+			if (latency.sampleMs() < 300) {
+				below++;
+			}
+		}
+		assertTrue(below > SAMPLES * 0.45 && below < SAMPLES * 0.55, "below median " + below);
+	}
+
+	@Test
+	void histogramOnlyPicksWeightedBuckets() {
+		GatewayFaultInjector.LatencyDistribution first = GatewayFaultInjector.LatencyDistribution.parse("histogram:10=1,20=0");
+		GatewayFaultInjector.LatencyDistribution last = GatewayFaultInjector.LatencyDistribution.parse("histogram:50=0, 80=1");
+		GatewayFaultInjector.LatencyDistribution mixed = GatewayFaultInjector.LatencyDistribution.parse("histogram:50=3,900=1");
+		int slow = 0;
+		for (int i = 0; i < SAMPLES; i++) {
+			assertEquals(10L, first.sampleMs());
+			assertEquals(80L, last.sampleMs());
+			long sample = mixed.sampleMs();
+			assertTrue(sample == 50L || sample == 900L, "sample " + sample);
+			if (sample == 900L) {
+				slow++;
+			}
+		}
+		assertTrue(slow > SAMPLES * 0.2 && slow < SAMPLES * 0.3, "slow samples " + slow);
+	}
+
+	@Test
+	void malformedSpecsAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> GatewayFaultInjector.LatencyDistribution.parse("gamma:1,2"));
+		assertThrows(IllegalArgumentException.class, () -> GatewayFaultInjector.LatencyDistribution.parse("uniform:100"));
+		assertThrows(IllegalArgumentException.class, () -> GatewayFaultInjector.LatencyDistribution.parse("fixed:abc"));
+		assertThrows(IllegalArgumentException.class, () -> GatewayFaultInjector.LatencyDistribution.parse("histogram:10"));
+		assertEquals("uniform:1-2", GatewayFaultInjector.LatencyDistribution.parse("uniform:1-2").toString());
+	}
+}
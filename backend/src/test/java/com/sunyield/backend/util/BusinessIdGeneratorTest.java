@@ -0,0 +1,74 @@
+package com.sunyield.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BusinessIdGeneratorTest {
+
+	private static final int THREADS = 8;
+	private static final int IDS_PER_THREAD = 250_000;
+
+	@Test
+	void idsAreUniqueAndIncreasingUnderContention() throws Exception {
+		BusinessIdGenerator generator = new BusinessIdGenerator(7);
+		long[][] perThread = new long[THREADS][IDS_PER_THREAD];
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(THREADS);
+
+		for (int t = 0; t < THREADS; t++) {
+			long[] ids = perThread[t];
+			pool.submit(() -> {
+				try {
+					start.await();
+					for (int i = 0; i < IDS_PER_THREAD; i++) {
+						ids[i] = generator.nextId();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					done.countDown();
+				}
+			});
+		}
+
+		start.countDown();
+		assertTrue(done.await(60, TimeUnit.SECONDS));
+		pool.shutdown();
+
+		long total = (long) THREADS * IDS_PER_THREAD;
+
+		long[] all = new long[(int) total];
+		for (int t = 0; t < THREADS; t++) {
+			// Each thread must observe strictly increasing ids
+			for (int i = 1; i < IDS_PER_THREAD; i++) {
+				assertTrue(perThread[t][i] > perThread[t][i - 1]);
+			}
+			System.arraycopy(perThread[t], 0, all, t * IDS_PER_THREAD, IDS_PER_THREAD);
+		}
+		Arrays.sort(all);
+		for (int i = 1; i < all.length; i++) {
+			assertTrue(all[i] != all[i - 1], "duplicate id " + all[i]);
+		}
+		assertEquals(7, (all[0] >>> 12) & BusinessIdGenerator.MAX_NODE_ID);
+	}
+
+	@Test
+	void prefixedIdsSortInCreationOrder() {
+		BusinessIdGenerator generator = new BusinessIdGenerator(1);
+		String previous = generator.nextId("SOLAR");
+		for (int i = 0; i < 100_000; i++) {
+			String next = generator.nextId("SOLAR");
+			assertTrue(next.compareTo(previous) > 0);
+			previous = next;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package com.sunyield.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MessageTemplateTest {
+
+	private static final Set<String> ALLOWED = Set.of("name", "project", "amount");
+
+	@Test
+	void rendersEveryPlaceholder() {
+		MessageTemplate template = MessageTemplate.compile("Hi {{name}}, {{ project }} paid {{amount}}. Thanks {{name}}!", ALLOWED);
+		String text = template.render(Map.of("name", "Asha", "project", "Rooftop 7", "amount", "₹120"));
+		assertEquals("Hi Asha, Rooftop 7 paid ₹120. Thanks Asha!", text);
+		assertEquals(List.of("name", "project", "amount"), List.copyOf(template.getVariables()));
+	}
+
+	@Test
+	void placeholdersAtTheEdgesAndBackToBack() {
+		MessageTemplate template = MessageTemplate.compile("{{name}}{{amount}}", ALLOWED);
+		assertEquals("Asha5", template.render(Map.of("name", "Asha", "amount", "5")));
+	}
+
+	@Test
+	void missingValuesRenderEmpty() {
+		MessageTemplate template = MessageTemplate.compile("[{{name}}]", ALLOWED);
+		assertEquals("[]", template.render(Map.of()));
+	}
+
+	@Test
+	void plainTextPassesThrough() {
+		MessageTemplate template = MessageTemplate.compile("No placeholders } { here", ALLOWED);
+		assertEquals("No placeholders } { here", template.render(Map.of("name", "x")));
+		assertEquals(Set.of(), template.getVariables());
+	}
+
+	@Test
+	void invalidTemplatesAreRejectedWhenCompiling() {
+		assertThrows(IllegalArgumentException.class, () -> MessageTemplate.compile("Hi {{email}}", ALLOWED));
+		assertThrows(IllegalArgumentException.class, () -> MessageTemplate.compile("Hi {{name", ALLOWED));
+		assertThrows(IllegalArgumentException.class, () -> MessageTemplate.compile(null, ALLOWED));
+	}
+}
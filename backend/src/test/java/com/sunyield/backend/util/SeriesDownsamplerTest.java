@@ -0,0 +1,99 @@
+package com.sunyield.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeriesDownsamplerTest {
+
+	private static long[] timestamps(int n) {
+		long[] x = new long[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = 1_000L * i;
+		}
+		return x;
+	}
+
+	private static void assertIncreasing(long[] x) {
+		for (int i = 1; i < x.length; i++) {
+			assertTrue(x[i] > x[i - 1], "timestamps out of order at " + i);
+		}
+	}
+
+	@Test
+	void seriesThatAlreadyFitsIsReturnedUntouched() {
+		long[] x = timestamps(10);
+		double[] y = new double[10];
+		assertSame(x, SeriesDownsampler.lttb(x, y, 10).getTimestamps());
+		assertSame(x, SeriesDownsampler.lttb(x, y, 2).getTimestamps());
+		assertSame(x, SeriesDownsampler.minMax(x, y, 20).getTimestamps());
+		assertSame(y, SeriesDownsampler.minMax(x, y, 1).getValues());
+	}
+
+	@Test
+	void lttbKeepsEndpointsAndTheSpike() {
+		int n = 1_000;
+		long[] x = timestamps(n);
+		double[] y = new double[n];
+		for (int i = 0; i < n; i++) {
+			y[i] = Math.sin(i / 50.0);
+		}
+		y[437] = 25.0;
+
+		SeriesDownsampler.Series series = SeriesDownsampler.lttb(x, y, 50);
+
+		assertEquals(50, series.size());
+		assertEquals(x[0], series.getTimestamps()[0]);
+		assertEquals(x[n - 1], series.getTimestamps()[49]);
+		assertIncreasing(series.getTimestamps());
+		assertTrue(Arrays.stream(series.getValues()).anyMatch(v -> v == 25.0));
+	}
+
+	@Test
+	void lttbOfAStraightLineStaysOnTheLine() {
+		long[] x = timestamps(100);
+		double[] y = new double[100];
+		for (int i = 0; i < 100; i++) {
+			y[i] = 2.0 * i;
+		}
+		SeriesDownsampler.Series series = SeriesDownsampler.lttb(x, y, 7);
+		for (int i = 0; i < series.size(); i++) {
+			assertEquals(series.getTimestamps()[i] / 1_000.0 * 2.0, series.getValues()[i], 1e-9);
+		}
+	}
+
+	@Test
+	void minMaxKeepsPeaksAndDipsInTimeOrder() {
+		int n = 1_000;
+		long[] x = timestamps(n);
+		double[] y = new double[n];
+		Arrays.fill(y, 5.0);
+		y[123] = 99.0;
+		y[124] = -99.0;
+		y[901] = -50.0;
+
+		SeriesDownsampler.Series series = SeriesDownsampler.minMax(x, y, 20);
+
+		assertTrue(series.size() <= 20);
+		assertIncreasing(series.getTimestamps());
+		double[] values = series.getValues();
+		assertTrue(Arrays.stream(values).anyMatch(v -> v == 99.0));
+		assertTrue(Arrays.stream(values).anyMatch(v -> v == -99.0));
+		assertTrue(Arrays.stream(values).anyMatch(v -> v == -50.0));
+	}
+
+	@Test
+	void minMaxOfAFlatBucketEmitsOnePoint() {
+		long[] x = timestamps(8);
+		double[] y = { 1, 1, 1, 1, 3, 1, 1, 1 };
+		SeriesDownsampler.Series series = SeriesDownsampler.minMax(x, y, 4);
+		// Two buckets: the flat one contributes one point, the other its low and high
+		assertArrayEquals(new long[] { 0L, 4_000L, 5_000L }, series.getTimestamps());
+		assertArrayEquals(new double[] { 1, 3, 1 }, series.getValues());
+	}
+}